@@ -1,16 +1,15 @@
 package com.outbrain.aletheia.tutorial;
 
 import com.outbrain.aletheia.datum.DatumType;
-import org.joda.time.DateTime;
 import org.joda.time.Instant;
 
-@DatumType(datumTypeId = "my_datum_id", timestampExtractor = MyDatum.TimeExtractor.class)
+@DatumType(datumTypeId = "my_datum_id", timestampMillisExtractor = MyDatum.TimeExtractor.class)
 public class MyDatum {
 
-  public static class TimeExtractor implements DatumType.TimestampExtractor<MyDatum> {
+  public static class TimeExtractor implements DatumType.TimestampMillisExtractor<MyDatum> {
     @Override
-    public DateTime extractDatumDateTime(final MyDatum domainObject) {
-      return domainObject.getTimestamp().toDateTime();
+    public long extractDatumTimestampMillis(final MyDatum domainObject) {
+      return domainObject.getTimestamp().getMillis();
     }
   }
 
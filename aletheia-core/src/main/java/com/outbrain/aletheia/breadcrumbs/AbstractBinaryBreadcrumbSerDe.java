@@ -0,0 +1,128 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.collect.Maps;
+import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.datum.serialization.DatumSerDe;
+import com.outbrain.aletheia.datum.serialization.DatumTypeVersion;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.serialization.SerializedDatum;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A base class for compact, Avro based, binary breadcrumb serialization.
+ * <p/>
+ * Binary breadcrumbs are marked with a datum type version of their own, so that breadcrumbs serialized by a
+ * {@code JsonDatumSerDe} can be deserialized as well, which allows consumers to switch to binary breadcrumbs
+ * before producers do.
+ * <p/>
+ * The version is bumped whenever the breadcrumb schemas change, and the schemas of previous versions are kept as
+ * resources named {@code breadcrumbs.v<version>.avsc}, so that binary breadcrumbs of any version are resolved against
+ * the schema they were written with, and consumers can be upgraded independently of producers.
+ *
+ * @param <TBreadcrumb> The type of the breadcrumb datum, either {@code Breadcrumb} or {@code BreadcrumbBatch}.
+ * @param <TRecord>     The Avro record type the breadcrumb datum is projected to.
+ */
+abstract class AbstractBinaryBreadcrumbSerDe<TBreadcrumb, TRecord extends SpecificRecord>
+        implements DatumSerDe<TBreadcrumb> {
+
+  /**
+   * 2: the initial schema, 3: payload byte counts and sizes, 4: latency sketches.
+   */
+  public static final int VERSION = 4;
+
+  private static final int FIRST_VERSION = 2;
+
+  private final DatumTypeVersion datumTypeVersion;
+  private final SpecificDatumWriter<TRecord> datumWriter;
+  private final Map<Integer, SpecificDatumReader<TRecord>> version2datumReader = Maps.newHashMap();
+  private final JsonDatumSerDe<TBreadcrumb> jsonDatumSerDe;
+
+  protected AbstractBinaryBreadcrumbSerDe(final Class<TBreadcrumb> breadcrumbClass, final Schema schema) {
+    datumTypeVersion = new DatumTypeVersion(DatumUtils.getDatumTypeId(breadcrumbClass), VERSION);
+    datumWriter = new SpecificDatumWriter<>(schema);
+    for (int version = FIRST_VERSION; version < VERSION; version++) {
+      version2datumReader.put(version, new SpecificDatumReader<TRecord>(writerSchema(version, schema), schema));
+    }
+    version2datumReader.put(VERSION, new SpecificDatumReader<TRecord>(schema));
+    jsonDatumSerDe = new JsonDatumSerDe<>(breadcrumbClass);
+  }
+
+  /**
+   * @return the schema a record of the given schema was written with in a previous version.
+   */
+  private static Schema writerSchema(final int version, final Schema schema) {
+
+    final String resource = String.format("breadcrumbs.v%d.avsc", version);
+
+    try (final InputStream schemaStream = AbstractBinaryBreadcrumbSerDe.class.getResourceAsStream(resource)) {
+      if (schemaStream == null) {
+        throw new IllegalStateException("Missing breadcrumb schema resource " + resource);
+      }
+      for (final Schema writerSchema : new Schema.Parser().parse(schemaStream).getTypes()) {
+        if (writerSchema.getFullName().equals(schema.getFullName())) {
+          return writerSchema;
+        }
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException("Could not read breadcrumb schema resource " + resource, e);
+    }
+
+    throw new IllegalStateException(String.format("No %s schema in %s", schema.getFullName(), resource));
+  }
+
+  protected abstract TRecord toAvro(TBreadcrumb breadcrumb);
+
+  protected abstract TBreadcrumb fromAvro(TRecord record);
+
+  @Override
+  public SerializedDatum serializeDatum(final TBreadcrumb breadcrumb) {
+    try {
+      final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+      final BinaryEncoder binaryEncoder = EncoderFactory.get().directBinaryEncoder(byteStream, null);
+
+      datumWriter.write(toAvro(breadcrumb), binaryEncoder);
+      binaryEncoder.flush();
+
+      return new SerializedDatum(ByteBuffer.wrap(byteStream.toByteArray()), datumTypeVersion);
+    } catch (final IOException e) {
+      throw new RuntimeException("Could not serialize breadcrumb", e);
+    }
+  }
+
+  @Override
+  public TBreadcrumb deserializeDatum(final SerializedDatum serializedDatum) {
+
+    final SpecificDatumReader<TRecord> datumReader =
+            version2datumReader.get(serializedDatum.getDatumTypeVersion().getVersion());
+
+    if (datumReader == null) {
+      return jsonDatumSerDe.deserializeDatum(serializedDatum);
+    }
+
+    try {
+      final BinaryDecoder decoder =
+              DecoderFactory.get().directBinaryDecoder(
+                      new ByteBufferInputStream(Collections.singletonList(serializedDatum.getPayload())),
+                      null);
+
+      return fromAvro(datumReader.read(null, decoder));
+    } catch (final IOException e) {
+      throw new RuntimeException("Could not deserialize breadcrumb", e);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+import java.util.Map;
+
+/**
+ * A {@code FlushableBreadcrumbHandler} meant to be shared by many {@code BucketBasedBreadcrumbDispatcher}s, that
+ * merges breadcrumbs with identical type, source, destination, tier, datacenter, application and bucket, and hands
+ * the merged breadcrumbs over to an underlying {@code BreadcrumbHandler}.
+ * <p/>
+ * Since every dispatcher flushes its handler at the end of each dispatch, flushes are only honored once every
+ * {@code durationBetweenShipments}, giving all dispatchers sharing this handler a chance to contribute their
+ * breadcrumbs before the merged ones are shipped. A dispatcher's final dispatch calls {@link #flushAll()} instead,
+ * which ships whatever has been merged so far right away, so that nothing is left behind upon shutdown.
+ */
+public class AggregatingBreadcrumbHandler implements FlushableBreadcrumbHandler {
+
+  private static class BreadcrumbKey {
+
+    private final String type;
+    private final String source;
+    private final String destination;
+    private final String tier;
+    private final String datacenter;
+    private final String application;
+    private final Instant bucketStartTime;
+    private final Instant bucketEndTime;
+
+    private BreadcrumbKey(final Breadcrumb breadcrumb) {
+      type = breadcrumb.getType();
+      source = breadcrumb.getSource();
+      destination = breadcrumb.getDestination();
+      tier = breadcrumb.getTier();
+      datacenter = breadcrumb.getDatacenter();
+      application = breadcrumb.getApplication();
+      bucketStartTime = breadcrumb.getBucketStartTime();
+      bucketEndTime = breadcrumb.getBucketEndTime();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      final BreadcrumbKey that = (BreadcrumbKey) o;
+
+      return Objects.equal(type, that.type) &&
+             Objects.equal(source, that.source) &&
+             Objects.equal(destination, that.destination) &&
+             Objects.equal(tier, that.tier) &&
+             Objects.equal(datacenter, that.datacenter) &&
+             Objects.equal(application, that.application) &&
+             Objects.equal(bucketStartTime, that.bucketStartTime) &&
+             Objects.equal(bucketEndTime, that.bucketEndTime);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(type,
+                              source,
+                              destination,
+                              tier,
+                              datacenter,
+                              application,
+                              bucketStartTime,
+                              bucketEndTime);
+    }
+  }
+
+  private final BreadcrumbHandler breadcrumbHandler;
+  private final long millisBetweenShipments;
+
+  private Map<BreadcrumbKey, Breadcrumb> pendingBreadcrumbs = Maps.newHashMap();
+  private long lastShipmentMillis = System.currentTimeMillis();
+
+  public AggregatingBreadcrumbHandler(final BreadcrumbHandler breadcrumbHandler,
+                                      final Duration durationBetweenShipments) {
+    this.breadcrumbHandler = breadcrumbHandler;
+    this.millisBetweenShipments = durationBetweenShipments.getMillis();
+  }
+
+  private static LatencySketch merge(final LatencySketch sketch, final LatencySketch otherSketch) {
+    if (sketch == null) {
+      return otherSketch;
+    }
+    return otherSketch != null ? sketch.merge(otherSketch) : sketch;
+  }
+
+  private static long mergeMinPayloadSize(final Breadcrumb breadcrumb, final Breadcrumb otherBreadcrumb) {
+    // a breadcrumb whose max payload size is 0 has no payload sizes to contribute.
+    if (breadcrumb.getMaxPayloadSize() == 0) {
+      return otherBreadcrumb.getMinPayloadSize();
+    }
+    if (otherBreadcrumb.getMaxPayloadSize() == 0) {
+      return breadcrumb.getMinPayloadSize();
+    }
+    return Math.min(breadcrumb.getMinPayloadSize(), otherBreadcrumb.getMinPayloadSize());
+  }
+
+  static Breadcrumb merge(final Breadcrumb breadcrumb, final Breadcrumb otherBreadcrumb) {
+    return new Breadcrumb(breadcrumb.getType(),
+                          breadcrumb.getSource(),
+                          breadcrumb.getDestination(),
+                          breadcrumb.getBucketStartTime(),
+                          breadcrumb.getBucketEndTime(),
+                          breadcrumb.getProcessingTimestamp().isAfter(otherBreadcrumb.getProcessingTimestamp()) ?
+                          breadcrumb.getProcessingTimestamp() :
+                          otherBreadcrumb.getProcessingTimestamp(),
+                          breadcrumb.getCount() + otherBreadcrumb.getCount(),
+                          breadcrumb.getDatacenter(),
+                          breadcrumb.getApplication(),
+                          breadcrumb.getTier(),
+                          breadcrumb.getByteCount() + otherBreadcrumb.getByteCount(),
+                          mergeMinPayloadSize(breadcrumb, otherBreadcrumb),
+                          Math.max(breadcrumb.getMaxPayloadSize(), otherBreadcrumb.getMaxPayloadSize()),
+                          merge(breadcrumb.getLogicalTimestampLatency(), otherBreadcrumb.getLogicalTimestampLatency()),
+                          merge(breadcrumb.getCreationTimestampLatency(),
+                                otherBreadcrumb.getCreationTimestampLatency()));
+  }
+
+  @Override
+  public synchronized void handle(final Breadcrumb breadcrumb) {
+    final BreadcrumbKey breadcrumbKey = new BreadcrumbKey(breadcrumb);
+    final Breadcrumb pendingBreadcrumb = pendingBreadcrumbs.get(breadcrumbKey);
+    pendingBreadcrumbs.put(breadcrumbKey, pendingBreadcrumb != null ? merge(pendingBreadcrumb, breadcrumb) : breadcrumb);
+  }
+
+  private void ship(final boolean force) {
+
+    final Map<BreadcrumbKey, Breadcrumb> breadcrumbsToShip;
+
+    synchronized (this) {
+      final long now = System.currentTimeMillis();
+      if (!force && now - lastShipmentMillis < millisBetweenShipments) {
+        return;
+      }
+      lastShipmentMillis = now;
+      breadcrumbsToShip = pendingBreadcrumbs;
+      pendingBreadcrumbs = Maps.newHashMap();
+    }
+
+    for (final Breadcrumb breadcrumb : breadcrumbsToShip.values()) {
+      breadcrumbHandler.handle(breadcrumb);
+    }
+
+    if (breadcrumbHandler instanceof FlushableBreadcrumbHandler) {
+      if (force) {
+        ((FlushableBreadcrumbHandler) breadcrumbHandler).flushAll();
+      } else {
+        ((FlushableBreadcrumbHandler) breadcrumbHandler).flush();
+      }
+    }
+  }
+
+  @Override
+  public void flush() {
+    ship(false);
+  }
+
+  @Override
+  public void flushAll() {
+    ship(true);
+  }
+}
@@ -0,0 +1,114 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.breadcrumbs.avro.AvroBreadcrumb;
+import com.outbrain.aletheia.breadcrumbs.avro.AvroBreadcrumbBatch;
+import com.outbrain.aletheia.breadcrumbs.avro.AvroLatencySketch;
+import org.joda.time.Instant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts breadcrumbs to and from their compact Avro representation, where instants are kept as epoch millis.
+ */
+class AvroBreadcrumbProjector {
+
+  private AvroBreadcrumbProjector() {
+  }
+
+  private static String toString(final CharSequence charSequence) {
+    return charSequence != null ? charSequence.toString() : null;
+  }
+
+  private static AvroLatencySketch toAvro(final LatencySketch latencySketch) {
+
+    if (latencySketch == null) {
+      return null;
+    }
+
+    final List<Integer> bucketIndices = new ArrayList<>(latencySketch.getBucketIndices().length);
+    final List<Long> bucketCounts = new ArrayList<>(latencySketch.getBucketCounts().length);
+
+    for (int i = 0; i < latencySketch.getBucketIndices().length; i++) {
+      bucketIndices.add(latencySketch.getBucketIndices()[i]);
+      bucketCounts.add(latencySketch.getBucketCounts()[i]);
+    }
+
+    return new AvroLatencySketch(bucketIndices, bucketCounts);
+  }
+
+  private static LatencySketch fromAvro(final AvroLatencySketch avroLatencySketch) {
+
+    if (avroLatencySketch == null) {
+      return null;
+    }
+
+    final int[] bucketIndices = new int[avroLatencySketch.getBucketIndices().size()];
+    final long[] bucketCounts = new long[avroLatencySketch.getBucketCounts().size()];
+
+    for (int i = 0; i < bucketIndices.length; i++) {
+      bucketIndices[i] = avroLatencySketch.getBucketIndices().get(i);
+      bucketCounts[i] = avroLatencySketch.getBucketCounts().get(i);
+    }
+
+    return new LatencySketch(bucketIndices, bucketCounts);
+  }
+
+  public static AvroBreadcrumb toAvro(final Breadcrumb breadcrumb) {
+    return new AvroBreadcrumb(breadcrumb.getType(),
+                              breadcrumb.getSource(),
+                              breadcrumb.getDestination(),
+                              breadcrumb.getBucketStartTime().getMillis(),
+                              breadcrumb.getBucketEndTime().getMillis(),
+                              breadcrumb.getProcessingTimestamp().getMillis(),
+                              breadcrumb.getCount(),
+                              breadcrumb.getDatacenter(),
+                              breadcrumb.getApplication(),
+                              breadcrumb.getTier(),
+                              breadcrumb.getByteCount(),
+                              breadcrumb.getMinPayloadSize(),
+                              breadcrumb.getMaxPayloadSize(),
+                              toAvro(breadcrumb.getLogicalTimestampLatency()),
+                              toAvro(breadcrumb.getCreationTimestampLatency()));
+  }
+
+  public static Breadcrumb fromAvro(final AvroBreadcrumb avroBreadcrumb) {
+    return new Breadcrumb(toString(avroBreadcrumb.getType()),
+                          toString(avroBreadcrumb.getSource()),
+                          toString(avroBreadcrumb.getDestination()),
+                          new Instant(avroBreadcrumb.getBucketStartTime().longValue()),
+                          new Instant(avroBreadcrumb.getBucketEndTime().longValue()),
+                          new Instant(avroBreadcrumb.getProcessingTimestamp().longValue()),
+                          avroBreadcrumb.getCount(),
+                          toString(avroBreadcrumb.getDatacenter()),
+                          toString(avroBreadcrumb.getApplication()),
+                          toString(avroBreadcrumb.getTier()),
+                          avroBreadcrumb.getByteCount(),
+                          avroBreadcrumb.getMinPayloadSize(),
+                          avroBreadcrumb.getMaxPayloadSize(),
+                          fromAvro(avroBreadcrumb.getLogicalTimestampLatency()),
+                          fromAvro(avroBreadcrumb.getCreationTimestampLatency()));
+  }
+
+  public static AvroBreadcrumbBatch toAvro(final BreadcrumbBatch breadcrumbBatch) {
+
+    final List<AvroBreadcrumb> avroBreadcrumbs = new ArrayList<>(breadcrumbBatch.getBreadcrumbs().size());
+
+    for (final Breadcrumb breadcrumb : breadcrumbBatch.getBreadcrumbs()) {
+      avroBreadcrumbs.add(toAvro(breadcrumb));
+    }
+
+    return new AvroBreadcrumbBatch(breadcrumbBatch.getProcessingTimestamp().getMillis(), avroBreadcrumbs);
+  }
+
+  public static BreadcrumbBatch fromAvro(final AvroBreadcrumbBatch avroBreadcrumbBatch) {
+
+    final List<Breadcrumb> breadcrumbs = new ArrayList<>(avroBreadcrumbBatch.getBreadcrumbs().size());
+
+    for (final AvroBreadcrumb avroBreadcrumb : avroBreadcrumbBatch.getBreadcrumbs()) {
+      breadcrumbs.add(fromAvro(avroBreadcrumb));
+    }
+
+    return new BreadcrumbBatch(new Instant(avroBreadcrumbBatch.getProcessingTimestamp().longValue()), breadcrumbs);
+  }
+}
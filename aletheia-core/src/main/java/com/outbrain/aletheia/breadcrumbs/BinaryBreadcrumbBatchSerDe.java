@@ -0,0 +1,23 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.breadcrumbs.avro.AvroBreadcrumbBatch;
+
+/**
+ * A compact, Avro based, binary serialization for {@code BreadcrumbBatch}es.
+ */
+public class BinaryBreadcrumbBatchSerDe extends AbstractBinaryBreadcrumbSerDe<BreadcrumbBatch, AvroBreadcrumbBatch> {
+
+  public BinaryBreadcrumbBatchSerDe() {
+    super(BreadcrumbBatch.class, AvroBreadcrumbBatch.getClassSchema());
+  }
+
+  @Override
+  protected AvroBreadcrumbBatch toAvro(final BreadcrumbBatch breadcrumbBatch) {
+    return AvroBreadcrumbProjector.toAvro(breadcrumbBatch);
+  }
+
+  @Override
+  protected BreadcrumbBatch fromAvro(final AvroBreadcrumbBatch avroBreadcrumbBatch) {
+    return AvroBreadcrumbProjector.fromAvro(avroBreadcrumbBatch);
+  }
+}
@@ -0,0 +1,23 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.breadcrumbs.avro.AvroBreadcrumb;
+
+/**
+ * A compact, Avro based, binary serialization for {@code Breadcrumb}s.
+ */
+public class BinaryBreadcrumbSerDe extends AbstractBinaryBreadcrumbSerDe<Breadcrumb, AvroBreadcrumb> {
+
+  public BinaryBreadcrumbSerDe() {
+    super(Breadcrumb.class, AvroBreadcrumb.getClassSchema());
+  }
+
+  @Override
+  protected AvroBreadcrumb toAvro(final Breadcrumb breadcrumb) {
+    return AvroBreadcrumbProjector.toAvro(breadcrumb);
+  }
+
+  @Override
+  protected Breadcrumb fromAvro(final AvroBreadcrumb avroBreadcrumb) {
+    return AvroBreadcrumbProjector.fromAvro(avroBreadcrumb);
+  }
+}
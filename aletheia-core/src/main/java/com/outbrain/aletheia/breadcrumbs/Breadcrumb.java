@@ -1,22 +1,22 @@
 package com.outbrain.aletheia.breadcrumbs;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.outbrain.aletheia.datum.DatumType;
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.joda.time.DateTime;
 import org.joda.time.Instant;
 
 /**
- * Metadata containing information (source, destination, time frame, count ) about a particular datum type's
+ * Metadata containing information (source, destination, time frame, count, bytes) about a particular datum type's
  * transportation from one point to another. Breadcrumbs are aimed to assist at monitor data flow along the pipeline
  * by comparing outgoing and incoming numbers.
  */
-@DatumType(datumTypeId = "Breadcrumb", timestampExtractor = Breadcrumb.BreadcrumbTimestampExtractor.class)
+@DatumType(datumTypeId = "Breadcrumb", timestampMillisExtractor = Breadcrumb.BreadcrumbTimestampExtractor.class)
 public class Breadcrumb {
 
-  public static class BreadcrumbTimestampExtractor implements DatumType.TimestampExtractor<Breadcrumb> {
+  public static class BreadcrumbTimestampExtractor implements DatumType.TimestampMillisExtractor<Breadcrumb> {
     @Override
-    public DateTime extractDatumDateTime(final Breadcrumb domainObject) {
-      return domainObject.getProcessingTimestamp().toDateTime();
+    public long extractDatumTimestampMillis(final Breadcrumb domainObject) {
+      return domainObject.getProcessingTimestamp().getMillis();
     }
   }
 
@@ -29,6 +29,11 @@ public class Breadcrumb {
   private Instant bucketEndTime;
   private Instant processingTimestamp;
   private long count;
+  private long byteCount;
+  private long minPayloadSize;
+  private long maxPayloadSize;
+  private LatencySketch logicalTimestampLatency;
+  private LatencySketch creationTimestampLatency;
 
   private String application;
 
@@ -45,6 +50,38 @@ public class Breadcrumb {
                     final String datacenter,
                     final String application,
                     final String tier) {
+    this(type,
+         source,
+         destination,
+         bucketStartTime,
+         bucketEndTime,
+         processingTimestamp,
+         count,
+         datacenter,
+         application,
+         tier,
+         0,
+         0,
+         0,
+         null,
+         null);
+  }
+
+  public Breadcrumb(final String type,
+                    final String source,
+                    final String destination,
+                    final Instant bucketStartTime,
+                    final Instant bucketEndTime,
+                    final Instant processingTimestamp,
+                    final long count,
+                    final String datacenter,
+                    final String application,
+                    final String tier,
+                    final long byteCount,
+                    final long minPayloadSize,
+                    final long maxPayloadSize,
+                    final LatencySketch logicalTimestampLatency,
+                    final LatencySketch creationTimestampLatency) {
 
     this.source = source;
     this.destination = destination;
@@ -56,6 +93,11 @@ public class Breadcrumb {
     this.bucketEndTime = bucketEndTime;
     this.processingTimestamp = processingTimestamp;
     this.count = count;
+    this.byteCount = byteCount;
+    this.minPayloadSize = minPayloadSize;
+    this.maxPayloadSize = maxPayloadSize;
+    this.logicalTimestampLatency = logicalTimestampLatency;
+    this.creationTimestampLatency = creationTimestampLatency;
   }
 
   public Instant getProcessingTimestamp() {
@@ -66,6 +108,39 @@ public class Breadcrumb {
     return count;
   }
 
+  /**
+   * @return the total size of the serialized payloads counted, or 0 if their sizes were not reported.
+   */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  public long getMinPayloadSize() {
+    return minPayloadSize;
+  }
+
+  public long getMaxPayloadSize() {
+    return maxPayloadSize;
+  }
+
+  /**
+   * @return the sketch of the time from the datums' logical timestamps until they were received, or null if
+   * latencies were not sketched.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public LatencySketch getLogicalTimestampLatency() {
+    return logicalTimestampLatency;
+  }
+
+  /**
+   * @return the sketch of the time from the datums' creation until they were received, or null if latencies were
+   * not sketched.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public LatencySketch getCreationTimestampLatency() {
+    return creationTimestampLatency;
+  }
+
   public Instant getBucketStartTime() {
     return bucketStartTime;
   }
@@ -106,6 +181,15 @@ public class Breadcrumb {
     final Breadcrumb that = (Breadcrumb) o;
 
     if (count != that.count) return false;
+    if (byteCount != that.byteCount) return false;
+    if (minPayloadSize != that.minPayloadSize) return false;
+    if (maxPayloadSize != that.maxPayloadSize) return false;
+    if (logicalTimestampLatency != null ?
+        !logicalTimestampLatency.equals(that.logicalTimestampLatency) :
+        that.logicalTimestampLatency != null) return false;
+    if (creationTimestampLatency != null ?
+        !creationTimestampLatency.equals(that.creationTimestampLatency) :
+        that.creationTimestampLatency != null) return false;
     if (!application.equals(that.application)) return false;
     if (!bucketEndTime.equals(that.bucketEndTime)) return false;
     if (!bucketStartTime.equals(that.bucketStartTime)) return false;
@@ -130,6 +214,11 @@ public class Breadcrumb {
     result = 31 * result + bucketEndTime.hashCode();
     result = 31 * result + processingTimestamp.hashCode();
     result = 31 * result + (int) (count ^ (count >>> 32));
+    result = 31 * result + (int) (byteCount ^ (byteCount >>> 32));
+    result = 31 * result + (int) (minPayloadSize ^ (minPayloadSize >>> 32));
+    result = 31 * result + (int) (maxPayloadSize ^ (maxPayloadSize >>> 32));
+    result = 31 * result + (logicalTimestampLatency != null ? logicalTimestampLatency.hashCode() : 0);
+    result = 31 * result + (creationTimestampLatency != null ? creationTimestampLatency.hashCode() : 0);
     result = 31 * result + application.hashCode();
     return result;
   }
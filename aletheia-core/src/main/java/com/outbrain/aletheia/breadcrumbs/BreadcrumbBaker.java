@@ -4,11 +4,17 @@ import org.joda.time.Instant;
 
 /**
  * A base interface for generating {@code Breadcrumb} instances according to a bucketKey, processingTimestamp and
- * a bucketHitCount provided by the {@code BucketBasedBreadcrumbDispatcher}.
+ * the bucket's totals provided by the {@code BucketBasedBreadcrumbDispatcher}.
  *
  * @param <TBucketKey> The type of the bucket key used by the {@code BucketBasedBreadcrumbDispatcher} that
  *                     requested to bake a breadcrumb.
  */
 public interface BreadcrumbBaker<TBucketKey> {
-  Breadcrumb bakeBreadcrumb(TBucketKey bucketKey, Instant processingTimestamp, long bucketHitCount);
+  /**
+   * @param bucketKey           the key of the bucket to bake a breadcrumb for.
+   * @param processingTimestamp the time the breadcrumb is baked at.
+   * @param bucketTotals        the hit count, payload sizes and latencies accumulated for the bucket.
+   * @return a breadcrumb describing the bucket.
+   */
+  Breadcrumb bakeBreadcrumb(TBucketKey bucketKey, Instant processingTimestamp, BucketTotals bucketTotals);
 }
@@ -0,0 +1,67 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.datum.DatumType;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Instant;
+
+import java.util.List;
+
+/**
+ * A number of breadcrumbs dispatched together, delivered as a single datum in order to save the per message
+ * overhead of delivering each breadcrumb on its own.
+ */
+@DatumType(datumTypeId = "BreadcrumbBatch",
+           timestampMillisExtractor = BreadcrumbBatch.BreadcrumbBatchTimestampExtractor.class)
+public class BreadcrumbBatch {
+
+  public static class BreadcrumbBatchTimestampExtractor implements DatumType.TimestampMillisExtractor<BreadcrumbBatch> {
+    @Override
+    public long extractDatumTimestampMillis(final BreadcrumbBatch domainObject) {
+      return domainObject.getProcessingTimestamp().getMillis();
+    }
+  }
+
+  private Instant processingTimestamp;
+  private List<Breadcrumb> breadcrumbs;
+
+  private BreadcrumbBatch() {
+  }
+
+  public BreadcrumbBatch(final Instant processingTimestamp, final List<Breadcrumb> breadcrumbs) {
+    this.processingTimestamp = processingTimestamp;
+    this.breadcrumbs = breadcrumbs;
+  }
+
+  public Instant getProcessingTimestamp() {
+    return processingTimestamp;
+  }
+
+  public List<Breadcrumb> getBreadcrumbs() {
+    return breadcrumbs;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final BreadcrumbBatch that = (BreadcrumbBatch) o;
+
+    if (!breadcrumbs.equals(that.breadcrumbs)) return false;
+    if (!processingTimestamp.equals(that.processingTimestamp)) return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = processingTimestamp.hashCode();
+    result = 31 * result + breadcrumbs.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
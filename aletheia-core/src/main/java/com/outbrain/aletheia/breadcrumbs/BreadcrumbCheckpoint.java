@@ -0,0 +1,86 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A persistent mirror of the hits a {@code BucketBasedBreadcrumbDispatcher} has counted but not dispatched yet,
+ * allowing them to be recovered, and dispatched, after the process has died.
+ */
+public interface BreadcrumbCheckpoint {
+
+  public static BreadcrumbCheckpoint NULL = new BreadcrumbCheckpoint() {
+    @Override
+    public List<PendingHits> read() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public void write(final List<PendingHits> pendingHits) {
+
+    }
+  };
+
+  /**
+   * The hits pending for a single bucket.
+   */
+  public static class PendingHits {
+
+    private final long bucketDurationMillis;
+    private final long bucketStart;
+    private final long hitCount;
+    private final long byteCount;
+    private final long minPayloadSize;
+    private final long maxPayloadSize;
+
+    public PendingHits(final long bucketDurationMillis,
+                       final long bucketStart,
+                       final long hitCount,
+                       final long byteCount,
+                       final long minPayloadSize,
+                       final long maxPayloadSize) {
+      this.bucketDurationMillis = bucketDurationMillis;
+      this.bucketStart = bucketStart;
+      this.hitCount = hitCount;
+      this.byteCount = byteCount;
+      this.minPayloadSize = minPayloadSize;
+      this.maxPayloadSize = maxPayloadSize;
+    }
+
+    public long getBucketDurationMillis() {
+      return bucketDurationMillis;
+    }
+
+    public long getBucketStart() {
+      return bucketStart;
+    }
+
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    public long getByteCount() {
+      return byteCount;
+    }
+
+    public long getMinPayloadSize() {
+      return minPayloadSize;
+    }
+
+    public long getMaxPayloadSize() {
+      return maxPayloadSize;
+    }
+  }
+
+  /**
+   * @return the pending hits as of the last successful write, or an empty list if there are none.
+   */
+  List<PendingHits> read();
+
+  /**
+   * Replaces the pending hits previously written.
+   *
+   * @param pendingHits the hits currently pending.
+   */
+  void write(List<PendingHits> pendingHits);
+}
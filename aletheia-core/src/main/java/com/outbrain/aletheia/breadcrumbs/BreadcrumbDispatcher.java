@@ -15,6 +15,19 @@ public interface BreadcrumbDispatcher<TElement> extends Serializable {
 
     }
 
+    @Override
+    public void report(final Object domainClass, final int payloadSizeBytes) {
+
+    }
+
+    @Override
+    public void report(final Object domainClass,
+                       final int payloadSizeBytes,
+                       final long logicalTimestampLatencyMillis,
+                       final long creationTimestampLatencyMillis) {
+
+    }
+
     @Override
     public void dispatchBreadcrumbs() {
 
@@ -22,6 +35,16 @@ public interface BreadcrumbDispatcher<TElement> extends Serializable {
   };
 
 
+  /**
+   * Indicates that the size of a hit's payload is not known.
+   */
+  public static final int UNKNOWN_PAYLOAD_SIZE = -1;
+
+  /**
+   * Indicates that a hit's latency is not known.
+   */
+  public static final long UNKNOWN_LATENCY = -1;
+
   /**
    * Reports a single hit.
    *
@@ -29,6 +52,29 @@ public interface BreadcrumbDispatcher<TElement> extends Serializable {
    */
   void report(TElement element);
 
+  /**
+   * Reports a single hit, along with the size of the item's serialized payload.
+   *
+   * @param element          the item which the hit is reported on.
+   * @param payloadSizeBytes the size of the item's serialized payload, or {@link #UNKNOWN_PAYLOAD_SIZE}.
+   */
+  void report(TElement element, int payloadSizeBytes);
+
+  /**
+   * Reports a single received hit, along with the size of the item's serialized payload, and its latencies.
+   *
+   * @param element                        the item which the hit is reported on.
+   * @param payloadSizeBytes               the size of the item's serialized payload, or {@link #UNKNOWN_PAYLOAD_SIZE}.
+   * @param logicalTimestampLatencyMillis  the time from the item's logical timestamp until it was received,
+   *                                       or {@link #UNKNOWN_LATENCY}.
+   * @param creationTimestampLatencyMillis the time from the item's creation until it was received,
+   *                                       or {@link #UNKNOWN_LATENCY}.
+   */
+  void report(TElement element,
+              int payloadSizeBytes,
+              long logicalTimestampLatencyMillis,
+              long creationTimestampLatencyMillis);
+
   /**
    * Dispatch breadcrumbs based on the reports received so far.
    */
@@ -0,0 +1,389 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.outbrain.aletheia.datum.consumption.DatumConsumer;
+import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.Gauge;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reconciles the breadcrumbs emitted by the different hops a datum type passes through, e.g., the producers and
+ * the consumers of a given topic, by comparing the hits each hop has reported per bucket against the hits reported by
+ * a reference hop, typically the one closest to the origin of the data.
+ * <p/>
+ * Breadcrumbs are indexed by datum type, hop and bucket, and partial breadcrumbs (e.g., those emitted by different
+ * machines, or by consecutive flushes) are summed. Each (type, hop) stream keeps its buckets in primitive arrays used
+ * as a ring, covering a fixed retention, so memory use is bounded by
+ * {@code maxStreamCount * (retention / bucketDuration) * 20} bytes. Breadcrumbs older than the retention,
+ * breadcrumbs spanning more than one bucket, breadcrumbs of buckets preceding the epoch, and breadcrumbs for streams
+ * beyond {@code maxStreamCount} are dropped, and counted as such. Types and hops are only indexed once a stream of
+ * theirs has been admitted, so that dropped breadcrumbs do not grow the reconciler.
+ * <p/>
+ * Breadcrumbs are typically consumed using a {@code DatumConsumer<Breadcrumb>} built by a
+ * {@code DatumConsumerBuilder} (or an {@code UnbatchingBreadcrumbConsumer}), by running this reconciler on a thread
+ * of its own, while reconciliations are queried from other threads.
+ */
+public class BreadcrumbReconciler implements Runnable {
+
+  /**
+   * Identifies hops by the breadcrumb's destination.
+   */
+  public static final Function<Breadcrumb, String> DESTINATION_HOP = new Function<Breadcrumb, String>() {
+    @Override
+    public String apply(final Breadcrumb breadcrumb) {
+      return breadcrumb.getDestination();
+    }
+  };
+
+  private static final long UNCLAIMED = Long.MIN_VALUE;
+  private static final int INCOMPLETE = -1;
+
+  /**
+   * The buckets of a single (type, hop) pair, each slot tagged with the index of the bucket it currently holds.
+   */
+  private static class HopStream {
+
+    private final int hopId;
+    private final long[] bucketIndices;
+    private final long[] counts;
+    private final int[] completionLatencyMillis;
+
+    private HopStream(final int hopId, final int slotCount) {
+      this.hopId = hopId;
+      bucketIndices = new long[slotCount];
+      counts = new long[slotCount];
+      completionLatencyMillis = new int[slotCount];
+      Arrays.fill(bucketIndices, UNCLAIMED);
+      Arrays.fill(completionLatencyMillis, INCOMPLETE);
+    }
+
+    private int slot(final long bucketIndex) {
+      // negative indices are never claimed, but may still be looked up.
+      return (int) Math.abs(bucketIndex % bucketIndices.length);
+    }
+
+    private boolean holds(final long bucketIndex) {
+      return bucketIndices[slot(bucketIndex)] == bucketIndex;
+    }
+
+    /**
+     * @return false if the slot is held by a more recent bucket, i.e., the given bucket is past the retention.
+     */
+    private boolean claim(final long bucketIndex) {
+
+      final int slot = slot(bucketIndex);
+
+      if (bucketIndices[slot] == bucketIndex) {
+        return true;
+      }
+
+      if (bucketIndices[slot] > bucketIndex) {
+        return false;
+      }
+
+      bucketIndices[slot] = bucketIndex;
+      counts[slot] = 0;
+      completionLatencyMillis[slot] = INCOMPLETE;
+
+      return true;
+    }
+
+    private long count(final long bucketIndex) {
+      return holds(bucketIndex) ? counts[slot(bucketIndex)] : 0;
+    }
+
+    private void updateCompletion(final long bucketIndex, final long referenceCount, final long latencyMillis) {
+
+      if (!holds(bucketIndex)) {
+        return;
+      }
+
+      final int slot = slot(bucketIndex);
+
+      if (referenceCount == 0 || counts[slot] < referenceCount) {
+        completionLatencyMillis[slot] = INCOMPLETE;
+      } else if (completionLatencyMillis[slot] == INCOMPLETE) {
+        completionLatencyMillis[slot] = (int) Math.min(Integer.MAX_VALUE, latencyMillis);
+      }
+    }
+
+    private Optional<Duration> completionLatency(final long bucketIndex) {
+      final int latencyMillis = holds(bucketIndex) ? completionLatencyMillis[slot(bucketIndex)] : INCOMPLETE;
+      return latencyMillis != INCOMPLETE ? Optional.of(new Duration(latencyMillis)) : Optional.<Duration>absent();
+    }
+  }
+
+  private static class TypeStreams {
+
+    private final List<HopStream> hopStreams = Lists.newArrayList();
+
+    private HopStream hopStream(final int hopId) {
+      for (final HopStream hopStream : hopStreams) {
+        if (hopStream.hopId == hopId) {
+          return hopStream;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final Map<String, Integer> hop2hopId = Maps.newHashMap();
+  private final List<String> hops = Lists.newArrayList();
+  private final Map<String, TypeStreams> type2typeStreams = Maps.newHashMap();
+  private final DatumConsumer<Breadcrumb> breadcrumbConsumer;
+  private final Function<Breadcrumb, String> hopExtractor;
+  private final int referenceHopId;
+  private final long bucketDurationMillis;
+  private final int slotCount;
+  private final int maxStreamCount;
+  private final Counter reconciledCounter;
+  private final Counter lateCounter;
+  private final Counter unalignedCounter;
+  private final Counter rejectedCounter;
+  private long newestBucketIndex = UNCLAIMED;
+  private int streamCount = 0;
+
+  public BreadcrumbReconciler(final DatumConsumer<Breadcrumb> breadcrumbConsumer,
+                              final String referenceHop,
+                              final Duration bucketDuration,
+                              final Duration retention,
+                              final int maxStreamCount,
+                              final MetricsFactory metricsFactory) {
+    this(breadcrumbConsumer, DESTINATION_HOP, referenceHop, bucketDuration, retention, maxStreamCount, metricsFactory);
+  }
+
+  /**
+   * @param breadcrumbConsumer the {@code DatumConsumer} to consume breadcrumbs from.
+   * @param hopExtractor       determines the hop a breadcrumb has been emitted by.
+   * @param referenceHop       the hop other hops are reconciled against.
+   * @param bucketDuration     the bucket duration to reconcile by, breadcrumbs of finer (aligned) buckets are summed.
+   * @param retention          how far behind the most recent bucket buckets are kept.
+   * @param maxStreamCount     the maximal number of (type, hop) pairs to keep.
+   * @param metricsFactory     the {@code MetricsFactory} to report to.
+   */
+  public BreadcrumbReconciler(final DatumConsumer<Breadcrumb> breadcrumbConsumer,
+                              final Function<Breadcrumb, String> hopExtractor,
+                              final String referenceHop,
+                              final Duration bucketDuration,
+                              final Duration retention,
+                              final int maxStreamCount,
+                              final MetricsFactory metricsFactory) {
+
+    Preconditions.checkArgument(retention.getMillis() >= bucketDuration.getMillis(),
+                                "retention must be at least one bucket long");
+
+    this.breadcrumbConsumer = breadcrumbConsumer;
+    this.hopExtractor = hopExtractor;
+    this.maxStreamCount = maxStreamCount;
+    bucketDurationMillis = bucketDuration.getMillis();
+    slotCount = (int) (retention.getMillis() / bucketDurationMillis);
+    referenceHopId = hopId(referenceHop);
+
+    reconciledCounter = metricsFactory.createCounter("Breadcrumbs.Reconciliation", "Reconciled");
+    lateCounter = metricsFactory.createCounter("Breadcrumbs.Reconciliation", "Late");
+    unalignedCounter = metricsFactory.createCounter("Breadcrumbs.Reconciliation", "Unaligned");
+    rejectedCounter = metricsFactory.createCounter("Breadcrumbs.Reconciliation", "Rejected");
+    metricsFactory.createGauge("Breadcrumbs.Reconciliation", "Streams", new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        synchronized (BreadcrumbReconciler.this) {
+          return streamCount;
+        }
+      }
+    });
+  }
+
+  private int hopId(final String hop) {
+
+    final Integer hopId = hop2hopId.get(hop);
+
+    if (hopId != null) {
+      return hopId;
+    }
+
+    hops.add(hop);
+    hop2hopId.put(hop, hops.size() - 1);
+
+    return hops.size() - 1;
+  }
+
+  private long bucketIndex(final Instant bucketTime) {
+    return bucketTime.getMillis() / bucketDurationMillis;
+  }
+
+  private Instant bucketStartTime(final long bucketIndex) {
+    return new Instant(bucketIndex * bucketDurationMillis);
+  }
+
+  private Instant bucketEndTime(final long bucketIndex) {
+    return new Instant((bucketIndex + 1) * bucketDurationMillis);
+  }
+
+  /**
+   * @return the stream of the given type and hop, created if there is room for it, or null otherwise.
+   */
+  private HopStream hopStream(final String type, final String hop) {
+
+    TypeStreams typeStreams = type2typeStreams.get(type);
+    final Integer existingHopId = hop2hopId.get(hop);
+
+    if (typeStreams != null && existingHopId != null) {
+      final HopStream hopStream = typeStreams.hopStream(existingHopId);
+      if (hopStream != null) {
+        return hopStream;
+      }
+    }
+
+    if (streamCount >= maxStreamCount) {
+      return null;
+    }
+
+    if (typeStreams == null) {
+      typeStreams = new TypeStreams();
+      type2typeStreams.put(type, typeStreams);
+    }
+
+    final HopStream hopStream = new HopStream(hopId(hop), slotCount);
+    typeStreams.hopStreams.add(hopStream);
+    streamCount++;
+
+    return hopStream;
+  }
+
+  private HopReconciliation hopReconciliation(final String type,
+                                              final HopStream hopStream,
+                                              final long referenceCount,
+                                              final long bucketIndex) {
+    return new HopReconciliation(type,
+                                 hops.get(hopStream.hopId),
+                                 bucketStartTime(bucketIndex),
+                                 bucketEndTime(bucketIndex),
+                                 hopStream.count(bucketIndex),
+                                 referenceCount,
+                                 hopStream.completionLatency(bucketIndex));
+  }
+
+  private long referenceCount(final TypeStreams typeStreams, final long bucketIndex) {
+    final HopStream referenceStream = typeStreams.hopStream(referenceHopId);
+    return referenceStream != null ? referenceStream.count(bucketIndex) : 0;
+  }
+
+  /**
+   * Adds a breadcrumb's hits to the count of its type, hop and bucket.
+   *
+   * @param breadcrumb the breadcrumb to reconcile.
+   */
+  public synchronized void reconcile(final Breadcrumb breadcrumb) {
+
+    // bucket indices index the ring of each stream, and are hence non negative.
+    if (breadcrumb.getBucketStartTime().getMillis() < 0) {
+      rejectedCounter.inc();
+      return;
+    }
+
+    final long bucketIndex = bucketIndex(breadcrumb.getBucketStartTime());
+
+    if (bucketIndex(breadcrumb.getBucketEndTime().minus(1)) != bucketIndex) {
+      unalignedCounter.inc();
+      return;
+    }
+
+    if (newestBucketIndex != UNCLAIMED && bucketIndex <= newestBucketIndex - slotCount) {
+      lateCounter.inc();
+      return;
+    }
+
+    final String hop = hopExtractor.apply(breadcrumb);
+    final HopStream hopStream = hop != null ? hopStream(breadcrumb.getType(), hop) : null;
+
+    if (hopStream == null) {
+      rejectedCounter.inc();
+      return;
+    }
+
+    if (!hopStream.claim(bucketIndex)) {
+      lateCounter.inc();
+      return;
+    }
+
+    newestBucketIndex = Math.max(newestBucketIndex, bucketIndex);
+    hopStream.counts[hopStream.slot(bucketIndex)] += breadcrumb.getCount();
+    reconciledCounter.inc();
+
+    final long latencyMillis =
+            Math.max(0, breadcrumb.getProcessingTimestamp().getMillis() - bucketEndTime(bucketIndex).getMillis());
+    final TypeStreams typeStreams = type2typeStreams.get(breadcrumb.getType());
+    final long referenceCount = referenceCount(typeStreams, bucketIndex);
+
+    if (hopStream.hopId == referenceHopId) {
+      // the reference count has changed, which may complete, or reopen, any of the other hops.
+      for (final HopStream otherHopStream : typeStreams.hopStreams) {
+        otherHopStream.updateCompletion(bucketIndex, referenceCount, latencyMillis);
+      }
+    } else {
+      hopStream.updateCompletion(bucketIndex, referenceCount, latencyMillis);
+    }
+  }
+
+  /**
+   * @return the reconciliation of a given hop, or absent if the hop has not reported any hits for the given type
+   * within the retention.
+   */
+  public synchronized Optional<HopReconciliation> reconciliation(final String type,
+                                                                 final String hop,
+                                                                 final Instant bucketStartTime) {
+
+    final TypeStreams typeStreams = type2typeStreams.get(type);
+    final Integer hopId = hop2hopId.get(hop);
+    final HopStream hopStream = typeStreams != null && hopId != null ? typeStreams.hopStream(hopId) : null;
+
+    if (hopStream == null) {
+      return Optional.absent();
+    }
+
+    final long bucketIndex = bucketIndex(bucketStartTime);
+
+    return Optional.of(hopReconciliation(type, hopStream, referenceCount(typeStreams, bucketIndex), bucketIndex));
+  }
+
+  /**
+   * @return the reconciliations of all hops that have reported hits for the given bucket, or whose reference hop has.
+   */
+  public synchronized List<HopReconciliation> reconciliations(final Instant bucketStartTime) {
+
+    final long bucketIndex = bucketIndex(bucketStartTime);
+    final List<HopReconciliation> hopReconciliations = Lists.newArrayList();
+
+    for (final Map.Entry<String, TypeStreams> typeAndStreams : type2typeStreams.entrySet()) {
+      final TypeStreams typeStreams = typeAndStreams.getValue();
+      final long referenceCount = referenceCount(typeStreams, bucketIndex);
+      for (final HopStream hopStream : typeStreams.hopStreams) {
+        if (referenceCount > 0 || hopStream.holds(bucketIndex)) {
+          hopReconciliations.add(hopReconciliation(typeAndStreams.getKey(), hopStream, referenceCount, bucketIndex));
+        }
+      }
+    }
+
+    return hopReconciliations;
+  }
+
+  /**
+   * Reconciles breadcrumbs as they are consumed, blocking for as long as the underlying {@code DatumConsumer} does.
+   */
+  @Override
+  public void run() {
+    for (final Breadcrumb breadcrumb : breadcrumbConsumer.datums()) {
+      reconcile(breadcrumb);
+    }
+  }
+}
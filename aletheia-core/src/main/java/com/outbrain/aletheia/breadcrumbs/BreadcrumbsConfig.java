@@ -1,22 +1,48 @@
 package com.outbrain.aletheia.breadcrumbs;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.joda.time.Duration;
 
+import java.io.File;
+import java.util.List;
+
 /**
  * Holds the configuration details for breadcrumbs emitted by the {@code DatumProducer}.
  * THe configuration consists of details concerning the length of the bucket each breadcrumb describes,
  * the flush period, which determines how often breadcrumbs will be emitted, plus the metadata that will accompany
  * each outgoing breadcrumb.
+ * Optional settings are applied using the {@code withXxx} methods, each of which returns a new configuration instance.
  */
 public class BreadcrumbsConfig {
 
-  private final Duration breadcrumbBucketDuration;
+  /**
+   * The serialization format used for outgoing breadcrumbs.
+   */
+  public enum SerializationFormat {Json, Binary}
+
+  /**
+   * The default number of pending buckets a checkpoint can hold, see {@link #withCheckpointing(File, Duration, int)}.
+   */
+  public static final int DEFAULT_CHECKPOINT_CAPACITY = 256;
+
+  private final List<Duration> breadcrumbBucketDurations;
   private final Duration breadcrumbBucketFlushInterval;
   private final String application;
   private final String source;
   private final String tier;
   private final String datacenter;
+  private final boolean batchedDelivery;
+  private final SerializationFormat serializationFormat;
+  private final BucketFinalizationPolicy bucketFinalizationPolicy;
+  private final File checkpointDirectory;
+  private final Duration checkpointInterval;
+  private final int checkpointCapacity;
+  private final boolean sketchingLatencies;
+  private final boolean auditingDeliveryOutcomes;
+  private final boolean aggregatingJvmWide;
 
   /**
    * @param breadcrumbBucketDuration      The time frame to be used as a bucket, aggregating all incoming hits whose
@@ -34,16 +60,135 @@ public class BreadcrumbsConfig {
                            final String source,
                            final String tier,
                            final String datacenter) {
-    this.breadcrumbBucketDuration = breadcrumbBucketDuration;
+    this(ImmutableList.of(breadcrumbBucketDuration),
+         breadcrumbBucketFlushInterval,
+         application,
+         source,
+         tier,
+         datacenter,
+         false,
+         SerializationFormat.Json,
+         BucketFinalizationPolicy.EVERY_DISPATCH,
+         null,
+         breadcrumbBucketFlushInterval,
+         DEFAULT_CHECKPOINT_CAPACITY,
+         false,
+         false,
+         false);
+  }
+
+  private BreadcrumbsConfig(final List<Duration> breadcrumbBucketDurations,
+                            final Duration breadcrumbBucketFlushInterval,
+                            final String application,
+                            final String source,
+                            final String tier,
+                            final String datacenter,
+                            final boolean batchedDelivery,
+                            final SerializationFormat serializationFormat,
+                            final BucketFinalizationPolicy bucketFinalizationPolicy,
+                            final File checkpointDirectory,
+                            final Duration checkpointInterval,
+                            final int checkpointCapacity,
+                            final boolean sketchingLatencies,
+                            final boolean auditingDeliveryOutcomes,
+                            final boolean aggregatingJvmWide) {
+    this.breadcrumbBucketDurations = breadcrumbBucketDurations;
     this.breadcrumbBucketFlushInterval = breadcrumbBucketFlushInterval;
     this.application = application;
     this.source = source;
     this.tier = tier;
     this.datacenter = datacenter;
+    this.batchedDelivery = batchedDelivery;
+    this.serializationFormat = serializationFormat;
+    this.bucketFinalizationPolicy = bucketFinalizationPolicy;
+    this.checkpointDirectory = checkpointDirectory;
+    this.checkpointInterval = checkpointInterval;
+    this.checkpointCapacity = checkpointCapacity;
+    this.sketchingLatencies = sketchingLatencies;
+    this.auditingDeliveryOutcomes = auditingDeliveryOutcomes;
+    this.aggregatingJvmWide = aggregatingJvmWide;
+  }
+
+  /**
+   * @param batchedDelivery Whether the breadcrumbs dispatched in a single flush operation should be delivered
+   *                        together, as a single {@code BreadcrumbBatch} datum, rather than one by one.
+   * @return a copy of this configuration with the specified delivery mode.
+   */
+  public BreadcrumbsConfig withBatchedDelivery(final boolean batchedDelivery) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * @param serializationFormat The serialization format to use for outgoing breadcrumbs. Binary breadcrumbs are
+   *                            considerably smaller, and should be consumed using a {@code BinaryBreadcrumbSerDe}
+   *                            (or a {@code BinaryBreadcrumbBatchSerDe}), which can read Json breadcrumbs as well.
+   * @return a copy of this configuration with the specified serialization format.
+   */
+  public BreadcrumbsConfig withSerializationFormat(final SerializationFormat serializationFormat) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * @param breadcrumbBucketDurations The time frames to be used as buckets. Hits are counted in buckets of the finest
+   *                                  duration, which must divide all others, and breadcrumbs for the coarser
+   *                                  durations are rolled up from them when flushing.
+   * @return a copy of this configuration with the specified bucket durations.
+   */
+  public BreadcrumbsConfig withBreadcrumbBucketDurations(final List<Duration> breadcrumbBucketDurations) {
+    return new BreadcrumbsConfig(ImmutableList.copyOf(breadcrumbBucketDurations),
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
   }
 
+  /**
+   * @return the finest of the bucket durations.
+   */
   public Duration getBreadcrumbBucketDuration() {
-    return breadcrumbBucketDuration;
+    return Ordering.natural().min(breadcrumbBucketDurations);
+  }
+
+  public List<Duration> getBreadcrumbBucketDurations() {
+    return breadcrumbBucketDurations;
   }
 
   public Duration getBreadcrumbBucketFlushInterval() {
@@ -66,6 +211,191 @@ public class BreadcrumbsConfig {
     return datacenter;
   }
 
+  /**
+   * @param bucketFinalizationPolicy Determines when the hits counted in a bucket are dispatched, e.g., whether
+   *                                 each bucket is emitted once, after a lateness watermark passes its end time.
+   * @return a copy of this configuration with the specified bucket finalization policy.
+   */
+  public BreadcrumbsConfig withBucketFinalizationPolicy(final BucketFinalizationPolicy bucketFinalizationPolicy) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * Enables checkpointing with checkpoints of {@link #DEFAULT_CHECKPOINT_CAPACITY} buckets, see
+   * {@link #withCheckpointing(File, Duration, int)}.
+   */
+  public BreadcrumbsConfig withCheckpointing(final File checkpointDirectory, final Duration checkpointInterval) {
+    return withCheckpointing(checkpointDirectory, checkpointInterval, DEFAULT_CHECKPOINT_CAPACITY);
+  }
+
+  /**
+   * @param checkpointDirectory The directory in which to keep a memory-mapped checkpoint of the hits not dispatched
+   *                            yet, so that they are recovered, and dispatched, after the process has died. Each
+   *                            auditor keeps a checkpoint file of its own, which takes up about
+   *                            {@code 96 * checkpointCapacity} bytes.
+   * @param checkpointInterval  The time interval to wait between two consecutive checkpoints, in addition to the
+   *                            checkpoint taken upon each flush operation.
+   * @param checkpointCapacity  The maximal number of pending buckets a checkpoint holds, buckets beyond it are not
+   *                            checkpointed. Buckets are pending from their first hit until they are dispatched, so
+   *                            the capacity should cover the buckets, of all bucket durations, hit within a flush
+   *                            interval, or within the allowed lateness if buckets are held open.
+   * @return a copy of this configuration with checkpointing enabled.
+   */
+  public BreadcrumbsConfig withCheckpointing(final File checkpointDirectory,
+                                             final Duration checkpointInterval,
+                                             final int checkpointCapacity) {
+    Preconditions.checkArgument(checkpointCapacity > 0, "checkpoint capacity must be positive");
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * @param sketchingLatencies Whether breadcrumbs emitted by consumers should carry sketches of the time from the
+   *                           datums' logical timestamp, and from their creation, until they were received. Sketches
+   *                           from different consumers can be merged to obtain pipeline wide latency percentiles.
+   *                           A bucket that received latencies holds two arrays of
+   *                           {@code LatencySketch.BUCKET_COUNT} longs, about 10KB, until it is retired, so the
+   *                           memory cost grows with the number of buckets kept open, see
+   *                           {@link #withBucketFinalizationPolicy}. Buckets whose hits carry no latencies allocate
+   *                           no sketch memory.
+   * @return a copy of this configuration with latency sketching enabled or disabled.
+   */
+  public BreadcrumbsConfig withLatencySketches(final boolean sketchingLatencies) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * @param auditingDeliveryOutcomes Whether producers should also emit breadcrumbs for datums that were filtered out,
+   *                                 failed serialization or failed transport, each as a breadcrumb type of its own
+   *                                 (see {@code DeliveryOutcome}), so that loss can be attributed to its cause.
+   * @return a copy of this configuration with delivery outcome auditing enabled or disabled.
+   */
+  public BreadcrumbsConfig withDeliveryOutcomeAuditing(final boolean auditingDeliveryOutcomes) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  /**
+   * @param aggregatingJvmWide Whether breadcrumbs dispatched by all the producers and consumers in this JVM that
+   *                           deliver breadcrumbs to the same endpoint should be merged before being delivered, so
+   *                           that the number of breadcrumbs does not grow with the number of producers and consumers.
+   * @return a copy of this configuration with JVM wide aggregation enabled or disabled.
+   */
+  public BreadcrumbsConfig withJvmWideAggregation(final boolean aggregatingJvmWide) {
+    return new BreadcrumbsConfig(breadcrumbBucketDurations,
+                                 breadcrumbBucketFlushInterval,
+                                 application,
+                                 source,
+                                 tier,
+                                 datacenter,
+                                 batchedDelivery,
+                                 serializationFormat,
+                                 bucketFinalizationPolicy,
+                                 checkpointDirectory,
+                                 checkpointInterval,
+                                 checkpointCapacity,
+                                 sketchingLatencies,
+                                 auditingDeliveryOutcomes,
+                                 aggregatingJvmWide);
+  }
+
+  public boolean isBatchedDelivery() {
+    return batchedDelivery;
+  }
+
+  public SerializationFormat getSerializationFormat() {
+    return serializationFormat;
+  }
+
+  public BucketFinalizationPolicy getBucketFinalizationPolicy() {
+    return bucketFinalizationPolicy;
+  }
+
+  public boolean isSketchingLatencies() {
+    return sketchingLatencies;
+  }
+
+  public boolean isAuditingDeliveryOutcomes() {
+    return auditingDeliveryOutcomes;
+  }
+
+  public boolean isAggregatingJvmWide() {
+    return aggregatingJvmWide;
+  }
+
+  public boolean isCheckpointing() {
+    return checkpointDirectory != null;
+  }
+
+  /**
+   * @return the checkpoint directory, or null if checkpointing is not enabled.
+   */
+  public File getCheckpointDirectory() {
+    return checkpointDirectory;
+  }
+
+  public Duration getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public int getCheckpointCapacity() {
+    return checkpointCapacity;
+  }
+
   @Override
   public String toString() {
     return ToStringBuilder.reflectionToString(this);
@@ -1,147 +1,566 @@
 package com.outbrain.aletheia.breadcrumbs;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 import com.outbrain.aletheia.datum.DatumType;
+import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.Gauge;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.cliffc.high_scale_lib.ConcurrentAutoTable;
 import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
-import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A hit counter that uses buckets in order to aggregate incoming hits.
  * Each bucket represents a logical timeslot to which incoming hits are assigned according to their (logical) timestamp.
+ * <p/>
+ * Hits are counted using a striped counter per bucket, so concurrent reporters hitting the same bucket do not contend
+ * on a single memory location. Only buckets that have actually been hit are kept in memory, and each of them is put on
+ * a queue of touched buckets, so that dispatching costs time proportional to the number of buckets hit since the
+ * previous dispatch. Buckets are swapped out upon dispatching, reporters that raced with the swap put the retired
+ * bucket back on the queue, so that no hit is lost or counted twice.
+ * <p/>
+ * Each bucket is tagged with the start of the interval it counts. A hit whose bucket id maps to a slot that is still
+ * occupied by another interval (e.g., when replaying data older than the pre-allocated interval, or when a dispatch is
+ * slow) is counted in an overflow table keyed by the absolute bucket index instead, and is dispatched as a breadcrumb
+ * of its own.
+ * <p/>
+ * When to dispatch the hits counted in a bucket is determined by a {@code BucketFinalizationPolicy}.
+ * <p/>
+ * Several bucket durations may be given, in which case hits are counted in buckets of the finest duration only, and
+ * breadcrumbs for the coarser durations are rolled up from them upon dispatching.
+ * <p/>
+ * Hits reported along with the size of their serialized payload also accumulate the total bytes, and the minimal and
+ * maximal payload size, per bucket. If latency sketching is enabled, hits reported along with their latencies also
+ * record them in a {@code LatencySketch} per bucket, which is rolled up, but not checkpointed.
+ * <p/>
+ * Hits not dispatched yet can be mirrored to a {@code BreadcrumbCheckpoint}, by the dispatching thread, upon each
+ * dispatch and whenever {@link #checkpoint()} is called. Hits found in the checkpoint upon construction are restored,
+ * and dispatched along with the hits reported from then on. Hits dispatched after the last checkpoint was taken
+ * and before the process died will be dispatched again.
  */
 public class BucketBasedBreadcrumbDispatcher<T> implements BreadcrumbDispatcher<T> {
 
   private static class HitsPerInterval {
 
-    private static final HitsPerInterval EMPTY = new HitsPerInterval(new DateTime(0).toInstant(), 0);
+    private final ConcurrentAutoTable hitCount = new ConcurrentAutoTable();
+    private final ConcurrentAutoTable byteCount = new ConcurrentAutoTable();
+    private final AtomicLong minPayloadSize = new AtomicLong(BucketTotals.NO_PAYLOAD_SIZE);
+    private final AtomicLong maxPayloadSize = new AtomicLong(0);
+    private final LatencyRecorder logicalTimestampLatencyRecorder;
+    private final LatencyRecorder creationTimestampLatencyRecorder;
+    private final NonBlockingHashMapLong<HitsPerInterval> owner;
+    private final long bucketId;
+    private final long bucketStart;
+    private volatile boolean dispatched = false;
 
-    private final AtomicLong hitCount;
-    private final Instant bucketStart;
-
-    private HitsPerInterval(final Instant bucketStart, final long hitCount) {
+    private HitsPerInterval(final NonBlockingHashMapLong<HitsPerInterval> owner,
+                            final long bucketId,
+                            final long bucketStart,
+                            final boolean sketchingLatencies) {
+      this.owner = owner;
+      this.bucketId = bucketId;
       this.bucketStart = bucketStart;
-      this.hitCount = new AtomicLong(hitCount);
+      logicalTimestampLatencyRecorder = sketchingLatencies ? new LatencyRecorder() : LatencyRecorder.NULL;
+      creationTimestampLatencyRecorder = sketchingLatencies ? new LatencyRecorder() : LatencyRecorder.NULL;
+    }
+
+    public boolean isRetired() {
+      return owner.get(bucketId) != this;
+    }
+
+    public void retire() {
+      owner.remove(bucketId, this);
     }
 
-    public boolean isEmpty() {
-      return this == HitsPerInterval.EMPTY;
+    public void countPayloads(final long bytes, final long minSize, final long maxSize) {
+
+      if (minSize == BucketTotals.NO_PAYLOAD_SIZE) {
+        return;
+      }
+
+      byteCount.add(bytes);
+
+      long currentMin = minPayloadSize.get();
+      while (minSize < currentMin && !minPayloadSize.compareAndSet(currentMin, minSize)) {
+        currentMin = minPayloadSize.get();
+      }
+
+      long currentMax = maxPayloadSize.get();
+      while (maxSize > currentMax && !maxPayloadSize.compareAndSet(currentMax, maxSize)) {
+        currentMax = maxPayloadSize.get();
+      }
     }
 
-    public boolean nonEmpty() {
-      return !isEmpty();
+    /**
+     * Takes away the hits counted so far, hits that are counted concurrently are retained for the next drain.
+     * Payload bytes are counted before the hits they belong to, so a concurrent drain may take away the bytes of
+     * a hit and leave the hit itself for the next drain, which keeps the totals over all drains exact.
+     *
+     * @return the totals taken away.
+     */
+    public BucketTotals drain() {
+      final long hits = hitCount.get();
+      hitCount.add(-hits);
+      final long bytes = byteCount.get();
+      byteCount.add(-bytes);
+      return new BucketTotals(hits,
+                              bytes,
+                              minPayloadSize.getAndSet(BucketTotals.NO_PAYLOAD_SIZE),
+                              maxPayloadSize.getAndSet(0),
+                              logicalTimestampLatencyRecorder.drain(),
+                              creationTimestampLatencyRecorder.drain());
+    }
+  }
+
+  /**
+   * Accumulates the hits dispatched for a coarser bucket duration, accessed by dispatching threads only.
+   */
+  private static class RolledUpHits {
+
+    private final Map<Long, BucketTotals> bucketStart2totals = Maps.newHashMap();
+    private final Duration bucketDuration;
+    private final long bucketDurationMillis;
+
+    private RolledUpHits(final Duration bucketDuration) {
+      this.bucketDuration = bucketDuration;
+      this.bucketDurationMillis = bucketDuration.getMillis();
+    }
+
+    public void add(final long finerBucketStart, final BucketTotals totals) {
+      final long bucketStart = (finerBucketStart / bucketDurationMillis) * bucketDurationMillis;
+      final BucketTotals currentTotals = bucketStart2totals.get(bucketStart);
+      bucketStart2totals.put(bucketStart, currentTotals != null ? currentTotals.plus(totals) : totals);
     }
   }
 
   private static final Logger logger = LoggerFactory.getLogger(BucketBasedBreadcrumbDispatcher.class);
 
-  private final ConcurrentMap<Long, HitsPerInterval> bucketId2hitsPerInterval;
+  private final NonBlockingHashMapLong<HitsPerInterval> bucketId2hitsPerInterval = new NonBlockingHashMapLong<>();
+  private final NonBlockingHashMapLong<HitsPerInterval> bucketIndex2overflowHitsPerInterval =
+          new NonBlockingHashMapLong<>();
+  private final Queue<HitsPerInterval> touchedHitsPerIntervals = new ConcurrentLinkedQueue<>();
+  private final List<RolledUpHits> rolledUpHitsPerDuration = Lists.newArrayList();
   private final Duration bucketDuration;
   private final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker;
   private final BreadcrumbHandler breadcrumbHandler;
-  private final DatumType.TimestampExtractor<T> timestampExtractor;
-  private final Duration preAllocatedInterval;
+  private final DatumType.TimestampMillisExtractor<T> timestampExtractor;
+  private final long bucketDurationMillis;
+  private final long preAllocatedIntervalMillis;
+  private final BucketFinalizationPolicy bucketFinalizationPolicy;
+  private final BreadcrumbCheckpoint breadcrumbCheckpoint;
+  private final boolean sketchingLatencies;
+  private final Object dispatchLock = new Object();
+  private final Counter overflowHitCounter;
+  private final Counter lateHitCounter;
 
   public BucketBasedBreadcrumbDispatcher(final Duration bucketDuration,
                                          final DatumType.TimestampExtractor<T> timestampExtractor,
                                          final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
                                          final BreadcrumbHandler breadcrumbHandler,
                                          final Duration preAllocatedInterval) {
-    this.bucketDuration = bucketDuration;
+    this(bucketDuration,
+         DatumUtils.asTimestampMillisExtractor(timestampExtractor),
+         breadcrumbBaker,
+         breadcrumbHandler,
+         preAllocatedInterval);
+  }
+
+  public BucketBasedBreadcrumbDispatcher(final Duration bucketDuration,
+                                         final DatumType.TimestampMillisExtractor<T> timestampExtractor,
+                                         final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
+                                         final BreadcrumbHandler breadcrumbHandler,
+                                         final Duration preAllocatedInterval) {
+    this(Collections.singletonList(bucketDuration),
+         timestampExtractor,
+         breadcrumbBaker,
+         breadcrumbHandler,
+         preAllocatedInterval,
+         BucketFinalizationPolicy.EVERY_DISPATCH,
+         BreadcrumbCheckpoint.NULL,
+         false,
+         MetricsFactory.NULL);
+  }
+
+  public BucketBasedBreadcrumbDispatcher(final List<Duration> bucketDurations,
+                                         final DatumType.TimestampMillisExtractor<T> timestampExtractor,
+                                         final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
+                                         final BreadcrumbHandler breadcrumbHandler,
+                                         final Duration preAllocatedInterval,
+                                         final BucketFinalizationPolicy bucketFinalizationPolicy,
+                                         final BreadcrumbCheckpoint breadcrumbCheckpoint,
+                                         final boolean sketchingLatencies,
+                                         final MetricsFactory metricsFactory) {
+
+    Preconditions.checkArgument(!bucketDurations.isEmpty(), "at least one bucket duration must be specified");
+
+    bucketDuration = Ordering.natural().min(bucketDurations);
+    this.bucketFinalizationPolicy = bucketFinalizationPolicy;
+    this.breadcrumbCheckpoint = breadcrumbCheckpoint;
+    this.sketchingLatencies = sketchingLatencies;
     this.breadcrumbBaker = breadcrumbBaker;
     this.breadcrumbHandler = breadcrumbHandler;
     this.timestampExtractor = timestampExtractor;
-    this.preAllocatedInterval = preAllocatedInterval;
+    bucketDurationMillis = bucketDuration.getMillis();
+    preAllocatedIntervalMillis = preAllocatedInterval.getMillis();
+
+    Preconditions.checkState(preAllocatedIntervalMillis % bucketDurationMillis == 0,
+                             "bucket duration must divide the pre-allocated interval without a reminder");
+
+    for (final Duration coarserBucketDuration : Sets.newTreeSet(bucketDurations)) {
+      if (!coarserBucketDuration.equals(bucketDuration)) {
+        Preconditions.checkState(coarserBucketDuration.getMillis() % bucketDurationMillis == 0,
+                                 "the finest bucket duration must divide all other bucket durations without a reminder");
+        rolledUpHitsPerDuration.add(new RolledUpHits(coarserBucketDuration));
+      }
+    }
 
-    bucketId2hitsPerInterval = initBucketId2hitCountsMap(preAllocatedInterval);
+    overflowHitCounter = metricsFactory.createCounter("Breadcrumbs.Buckets.Overflow", "Hits");
+    lateHitCounter = metricsFactory.createCounter("Breadcrumbs.Buckets.Late", "DroppedHits");
+    metricsFactory.createGauge("Breadcrumbs.Buckets.Overflow", "Size", new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return bucketIndex2overflowHitsPerInterval.size();
+      }
+    });
+
+    recoverCheckpoint();
   }
 
-  private ConcurrentMap<Long, HitsPerInterval> initBucketId2hitCountsMap(final Duration preAllocatedInterval) {
+  private long bucketStart(final long timestampMillis) {
+    return (timestampMillis / bucketDurationMillis) * bucketDurationMillis;
+  }
 
-    final long millisInOneHour = preAllocatedInterval.getMillis();
-    final long bucketCount = millisInOneHour / bucketDuration.getMillis();
+  private long bucketId(final long timestampMillis) {
+    return (timestampMillis % preAllocatedIntervalMillis) / bucketDurationMillis;
+  }
 
-    Preconditions.checkState(bucketCount * bucketDuration.getMillis() == millisInOneHour,
-                             "bucket duration must divide an hour without a reminder");
+  private boolean isFinal(final long bucketStart, final long watermarkMillis) {
+    return isFinal(bucketStart, bucketDurationMillis, watermarkMillis);
+  }
+
+  private boolean isFinal(final long bucketStart, final long bucketDurationMillis, final long watermarkMillis) {
+    return bucketStart + bucketDurationMillis <= watermarkMillis;
+  }
+
+  private boolean isDroppingLateHits() {
+    return bucketFinalizationPolicy.isHoldingBucketsOpen() && !bucketFinalizationPolicy.isEmittingLateCorrections();
+  }
 
-    final NonBlockingHashMapLong<HitsPerInterval> bucketIds2hitCounts = new NonBlockingHashMapLong<>((int) bucketCount);
+  private HitsPerInterval hitsPerInterval(final NonBlockingHashMapLong<HitsPerInterval> buckets,
+                                          final long bucketId,
+                                          final long bucketStart) {
 
-    for (long bucketId = 0; bucketId < bucketCount; bucketId++) {
-      bucketIds2hitCounts.put(bucketId, HitsPerInterval.EMPTY);
+    final HitsPerInterval currentValue = buckets.get(bucketId);
+
+    if (currentValue != null) {
+      return currentValue;
+    }
+
+    final HitsPerInterval nextValue = new HitsPerInterval(buckets, bucketId, bucketStart, sketchingLatencies);
+    final HitsPerInterval concurrentValue = buckets.putIfAbsent(bucketId, nextValue);
+
+    if (concurrentValue != null) {
+      return concurrentValue;
     }
 
-    return bucketIds2hitCounts;
+    touchedHitsPerIntervals.add(nextValue);
+
+    return nextValue;
+  }
+
+  private void dispatch(final Duration bucketDuration, final long bucketStart, final BucketTotals totals) {
+
+    final long hitCount = totals.getHitCount();
+    final Breadcrumb breadcrumb =
+            breadcrumbBaker.bakeBreadcrumb(new BucketStartWithDuration(bucketDuration, new Instant(bucketStart)),
+                                           Instant.now(),
+                                           totals);
+    try {
+      breadcrumbHandler.handle(breadcrumb);
+    } catch (final Exception e) {
+      logger.error(String.format(
+                           "Failed to dispatch a breadcrumb for processingTimestamp: [%d], bucketStart: [%d], bucketDuration: [%s], aggregated hit count: [%d]",
+                           Instant.now().getMillis(),
+                           bucketStart,
+                           bucketDuration,
+                           hitCount),
+                   e);
+    }
   }
 
-  private Instant bucketStart(final T item) {
-    return new Instant(
-            (timestampExtractor.extractDatumDateTime(item).getMillis() /
-                    bucketDuration.getMillis()) * bucketDuration.getMillis());
+  private void dispatchRolledUpHits(final long watermarkMillis) {
+    for (final RolledUpHits rolledUpHits : rolledUpHitsPerDuration) {
+
+      final Iterator<Map.Entry<Long, BucketTotals>> bucketStartAndTotalsIterator =
+              rolledUpHits.bucketStart2totals.entrySet().iterator();
+
+      while (bucketStartAndTotalsIterator.hasNext()) {
+        final Map.Entry<Long, BucketTotals> bucketStartAndTotals = bucketStartAndTotalsIterator.next();
+        final long bucketStart = bucketStartAndTotals.getKey();
+        if (!bucketFinalizationPolicy.isHoldingBucketsOpen() ||
+            isFinal(bucketStart, rolledUpHits.bucketDurationMillis, watermarkMillis)) {
+          dispatch(rolledUpHits.bucketDuration, bucketStart, bucketStartAndTotals.getValue());
+          bucketStartAndTotalsIterator.remove();
+        }
+      }
+    }
   }
 
-  private long bucketId(final T item) {
-    final long millis = timestampExtractor.extractDatumDateTime(item).getMillis() % preAllocatedInterval.getMillis();
-    return millis / bucketDuration.getMillis();
+  private void flush(final FlushableBreadcrumbHandler flushableBreadcrumbHandler, final boolean isFinalDispatch) {
+    try {
+      if (isFinalDispatch) {
+        flushableBreadcrumbHandler.flushAll();
+      } else {
+        flushableBreadcrumbHandler.flush();
+      }
+    } catch (final Exception e) {
+      logger.error("Failed to flush dispatched breadcrumbs.", e);
+    }
   }
 
   @Override
   public void report(final T item) {
+    report(item, UNKNOWN_PAYLOAD_SIZE);
+  }
+
+  @Override
+  public void report(final T item, final int payloadSizeBytes) {
+    report(item, payloadSizeBytes, UNKNOWN_LATENCY, UNKNOWN_LATENCY);
+  }
 
-    HitsPerInterval currentValue;
-    HitsPerInterval nextValue = null;
+  @Override
+  public void report(final T item,
+                     final int payloadSizeBytes,
+                     final long logicalTimestampLatencyMillis,
+                     final long creationTimestampLatencyMillis) {
 
-    final long bucketId = bucketId(item);
-    final Instant bucketStart = bucketStart(item);
-    long currentHitCount = 0;
+    final long timestampMillis = timestampExtractor.extractDatumTimestampMillis(item);
 
-    do {
-      currentValue = bucketId2hitsPerInterval.get(bucketId);
-      if (currentValue.isEmpty()) {
-        nextValue = new HitsPerInterval(bucketStart, 1);
-      } else {
-        if (!bucketStart.equals(currentValue.bucketStart)) {
-          logger.error("Possible bucket collision, ignoring current item.");
-          return;
-        }
-        currentHitCount = currentValue.hitCount.get();
-      }
-    } while ((currentValue.isEmpty() &&
-            !bucketId2hitsPerInterval.replace(bucketId, HitsPerInterval.EMPTY, nextValue))
-            ||
-            (currentValue.nonEmpty() &&
-                    !bucketId2hitsPerInterval.get(bucketId).hitCount.compareAndSet(currentHitCount,
-                                                                                   currentHitCount + 1)));
+    if (isDroppingLateHits() &&
+        isFinal(bucketStart(timestampMillis),
+                bucketFinalizationPolicy.watermarkMillis(System.currentTimeMillis()))) {
+      lateHitCounter.inc();
+      return;
+    }
+
+    final HitsPerInterval hitsPerInterval = hitsPerInterval(timestampMillis);
+
+    if (payloadSizeBytes != UNKNOWN_PAYLOAD_SIZE) {
+      hitsPerInterval.countPayloads(payloadSizeBytes, payloadSizeBytes, payloadSizeBytes);
+    }
+
+    // negative (unknown) latencies are ignored by the recorders.
+    hitsPerInterval.logicalTimestampLatencyRecorder.record(logicalTimestampLatencyMillis);
+    hitsPerInterval.creationTimestampLatencyRecorder.record(creationTimestampLatencyMillis);
+
+    countHits(hitsPerInterval, 1);
+  }
+
+  private HitsPerInterval hitsPerInterval(final long timestampMillis) {
+
+    final long bucketId = bucketId(timestampMillis);
+    final long bucketStart = bucketStart(timestampMillis);
+
+    HitsPerInterval hitsPerInterval = hitsPerInterval(bucketId2hitsPerInterval, bucketId, bucketStart);
+
+    // the slot is occupied by another interval, count the hit in the overflow table instead.
+    if (bucketStart != hitsPerInterval.bucketStart) {
+      overflowHitCounter.inc();
+      hitsPerInterval = hitsPerInterval(bucketIndex2overflowHitsPerInterval,
+                                        bucketStart / bucketDurationMillis,
+                                        bucketStart);
+    }
+
+    return hitsPerInterval;
+  }
+
+  /**
+   * Counts hits after anything else reported along with them, e.g., their payload sizes, has been counted.
+   */
+  private void countHits(final HitsPerInterval hitsPerInterval, final long hits) {
+
+    hitsPerInterval.hitCount.add(hits);
+
+    // the bucket may have been swapped out by a concurrent dispatch, in which case the hit we've just counted
+    // may have been missed by it, and the retired bucket needs to be drained once more.
+    if (hitsPerInterval.isRetired()) {
+      touchedHitsPerIntervals.add(hitsPerInterval);
+    }
+  }
+
+  private void dispatchBreadcrumbs(final long watermarkMillis, final boolean isFinalDispatch) {
+
+    // dispatches are serialized, so that each one sees the queue up to its own end marker.
+    synchronized (dispatchLock) {
+      dispatchTouchedBuckets(watermarkMillis);
+      writeCheckpoint();
+    }
+
+    if (breadcrumbHandler instanceof FlushableBreadcrumbHandler) {
+      flush((FlushableBreadcrumbHandler) breadcrumbHandler, isFinalDispatch);
+    }
   }
 
   @Override
   public void dispatchBreadcrumbs() {
+    dispatchBreadcrumbs(bucketFinalizationPolicy.watermarkMillis(System.currentTimeMillis()), false);
+  }
 
-    for (final long bucketId : bucketId2hitsPerInterval.keySet()) {
-
-      final HitsPerInterval hitsPerInterval = bucketId2hitsPerInterval.replace(bucketId, HitsPerInterval.EMPTY);
-
-      if (hitsPerInterval.isEmpty()) continue;
-
-      final Breadcrumb breadcrumb = breadcrumbBaker.bakeBreadcrumb(new BucketStartWithDuration(bucketDuration,
-                                                                                               hitsPerInterval.bucketStart),
-                                                                   Instant.now(),
-                                                                   hitsPerInterval.hitCount.get());
-      try {
-        breadcrumbHandler.handle(breadcrumb);
-      } catch (final Exception e) {
-        logger.error(String.format(
-                             "Failed to dispatch a breadcrumb for processingTimestamp: [%d], bucketId: [%s], aggregated hit count: [%d]",
-                             Instant.now().getMillis(),
-                             bucketId,
-                             hitsPerInterval.hitCount.get()),
-                     e);
+  /**
+   * Mirrors the hits counted but not dispatched yet to the {@code BreadcrumbCheckpoint}.
+   */
+  public void checkpoint() {
+    synchronized (dispatchLock) {
+      writeCheckpoint();
+    }
+  }
+
+  /**
+   * Dispatches breadcrumbs for all buckets hit so far, including buckets the {@code BucketFinalizationPolicy}
+   * would otherwise hold open, e.g., upon shutdown. A {@code FlushableBreadcrumbHandler} is flushed all the way.
+   */
+  public void dispatchAllBreadcrumbs() {
+    dispatchBreadcrumbs(Long.MAX_VALUE, true);
+  }
+
+  private void addPendingHits(final List<BreadcrumbCheckpoint.PendingHits> pendingHits,
+                              final NonBlockingHashMapLong<HitsPerInterval> buckets) {
+    for (final HitsPerInterval hitsPerInterval : buckets.values()) {
+      final long hitCount = hitsPerInterval.hitCount.get();
+      final long byteCount = hitsPerInterval.byteCount.get();
+      if (hitCount != 0 || byteCount != 0) {
+        pendingHits.add(new BreadcrumbCheckpoint.PendingHits(bucketDurationMillis,
+                                                             hitsPerInterval.bucketStart,
+                                                             hitCount,
+                                                             byteCount,
+                                                             hitsPerInterval.minPayloadSize.get(),
+                                                             hitsPerInterval.maxPayloadSize.get()));
       }
     }
   }
+
+  private void writeCheckpoint() {
+
+    if (breadcrumbCheckpoint == BreadcrumbCheckpoint.NULL) {
+      return;
+    }
+
+    final List<BreadcrumbCheckpoint.PendingHits> pendingHits = Lists.newArrayList();
+
+    addPendingHits(pendingHits, bucketId2hitsPerInterval);
+    addPendingHits(pendingHits, bucketIndex2overflowHitsPerInterval);
+
+    for (final RolledUpHits rolledUpHits : rolledUpHitsPerDuration) {
+      for (final Map.Entry<Long, BucketTotals> bucketStartAndTotals : rolledUpHits.bucketStart2totals.entrySet()) {
+        final BucketTotals totals = bucketStartAndTotals.getValue();
+        pendingHits.add(new BreadcrumbCheckpoint.PendingHits(rolledUpHits.bucketDurationMillis,
+                                                             bucketStartAndTotals.getKey(),
+                                                             totals.getHitCount(),
+                                                             totals.getByteCount(),
+                                                             totals.rawMinPayloadSize(),
+                                                             totals.getMaxPayloadSize()));
+      }
+    }
+
+    try {
+      breadcrumbCheckpoint.write(pendingHits);
+    } catch (final Exception e) {
+      logger.error("Failed to write breadcrumb checkpoint.", e);
+    }
+  }
+
+  private BucketTotals totals(final BreadcrumbCheckpoint.PendingHits pendingHits) {
+    return new BucketTotals(pendingHits.getHitCount(),
+                            pendingHits.getByteCount(),
+                            pendingHits.getMinPayloadSize(),
+                            pendingHits.getMaxPayloadSize(),
+                            LatencySketch.EMPTY,
+                            LatencySketch.EMPTY);
+  }
+
+  /**
+   * Restores the hits pending as of the last checkpoint, to be dispatched along with hits reported from now on.
+   */
+  private void recoverCheckpoint() {
+    for (final BreadcrumbCheckpoint.PendingHits pendingHits : breadcrumbCheckpoint.read()) {
+      if (pendingHits.getBucketDurationMillis() == bucketDurationMillis) {
+        final HitsPerInterval hitsPerInterval = hitsPerInterval(pendingHits.getBucketStart());
+        hitsPerInterval.countPayloads(pendingHits.getByteCount(),
+                                      pendingHits.getMinPayloadSize(),
+                                      pendingHits.getMaxPayloadSize());
+        countHits(hitsPerInterval, pendingHits.getHitCount());
+      } else {
+        recoverRolledUpHits(pendingHits);
+      }
+    }
+  }
+
+  private void recoverRolledUpHits(final BreadcrumbCheckpoint.PendingHits pendingHits) {
+    for (final RolledUpHits rolledUpHits : rolledUpHitsPerDuration) {
+      if (rolledUpHits.bucketDurationMillis == pendingHits.getBucketDurationMillis()) {
+        rolledUpHits.add(pendingHits.getBucketStart(), totals(pendingHits));
+        return;
+      }
+    }
+    logger.warn("Dropping [{}] checkpointed hits for bucket start [{}], since bucket duration [{}] is no longer in use.",
+                new Object[]{pendingHits.getHitCount(),
+                             pendingHits.getBucketStart(),
+                             pendingHits.getBucketDurationMillis()});
+  }
+
+  private void dispatchTouchedBuckets(final long watermarkMillis) {
+
+    // buckets touched after this marker was queued are left for the next dispatch.
+    final HitsPerInterval endOfDispatch = new HitsPerInterval(bucketId2hitsPerInterval, -1, -1, false);
+    touchedHitsPerIntervals.add(endOfDispatch);
+
+    HitsPerInterval hitsPerInterval;
+
+    while ((hitsPerInterval = touchedHitsPerIntervals.poll()) != endOfDispatch) {
+
+      // buckets still open are queued past the marker, to be revisited by the next dispatch.
+      if (bucketFinalizationPolicy.isHoldingBucketsOpen() &&
+          !hitsPerInterval.dispatched &&
+          !isFinal(hitsPerInterval.bucketStart, watermarkMillis)) {
+        touchedHitsPerIntervals.add(hitsPerInterval);
+        continue;
+      }
+
+      hitsPerInterval.retire();
+
+      final BucketTotals totals = hitsPerInterval.drain();
+
+      if (totals.isEmpty()) {
+        continue;
+      }
+
+      if (hitsPerInterval.dispatched && isDroppingLateHits()) {
+        lateHitCounter.inc(totals.getHitCount());
+      } else {
+        dispatch(bucketDuration, hitsPerInterval.bucketStart, totals);
+        hitsPerInterval.dispatched = true;
+        for (final RolledUpHits rolledUpHits : rolledUpHitsPerDuration) {
+          rolledUpHits.add(hitsPerInterval.bucketStart, totals);
+        }
+      }
+    }
+
+    dispatchRolledUpHits(watermarkMillis);
+  }
 }
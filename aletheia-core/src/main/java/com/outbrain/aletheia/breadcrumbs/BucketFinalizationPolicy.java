@@ -0,0 +1,67 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Duration;
+
+/**
+ * Determines when the {@code BucketBasedBreadcrumbDispatcher} dispatches the hits counted in a bucket.
+ * <p/>
+ * By default, every dispatch emits a (partial) breadcrumb for each bucket hit since the previous dispatch.
+ * Alternatively, buckets can be held open until a lateness watermark, trailing the current time by a given allowed
+ * lateness, passes their end time, in which case each bucket is emitted once. Hits arriving after their bucket has
+ * been emitted are either emitted as late-correction breadcrumbs for the same bucket, or dropped.
+ * <p/>
+ * A late-correction breadcrumb is not marked as such: it has the same type, source and bucket start and end times as
+ * the breadcrumb it corrects, a later processing timestamp, and carries only the late hits. Consumers must hence sum
+ * all breadcrumbs of a bucket, as they already must for the partial breadcrumbs of {@link #EVERY_DISPATCH}, rather
+ * than keep the latest one. {@code AggregatingBreadcrumbHandler} and {@code BreadcrumbReconciler} do so.
+ */
+public class BucketFinalizationPolicy {
+
+  public static final BucketFinalizationPolicy EVERY_DISPATCH = new BucketFinalizationPolicy(false, 0, true);
+
+  private final boolean holdingBucketsOpen;
+  private final long allowedLatenessMillis;
+  private final boolean emittingLateCorrections;
+
+  private BucketFinalizationPolicy(final boolean holdingBucketsOpen,
+                                   final long allowedLatenessMillis,
+                                   final boolean emittingLateCorrections) {
+    this.holdingBucketsOpen = holdingBucketsOpen;
+    this.allowedLatenessMillis = allowedLatenessMillis;
+    this.emittingLateCorrections = emittingLateCorrections;
+  }
+
+  /**
+   * @param allowedLateness     how long after a bucket's end time hits are still expected to arrive for it.
+   * @param emitLateCorrections whether hits arriving after their bucket has been emitted should be emitted
+   *                            as late-correction breadcrumbs, which consumers must add to the bucket's earlier
+   *                            breadcrumbs, or dropped.
+   * @return a policy that emits each bucket once its end time has passed the lateness watermark.
+   */
+  public static BucketFinalizationPolicy afterLateness(final Duration allowedLateness,
+                                                       final boolean emitLateCorrections) {
+    return new BucketFinalizationPolicy(true, allowedLateness.getMillis(), emitLateCorrections);
+  }
+
+  public boolean isHoldingBucketsOpen() {
+    return holdingBucketsOpen;
+  }
+
+  public boolean isEmittingLateCorrections() {
+    return emittingLateCorrections;
+  }
+
+  /**
+   * @param nowMillis the current time.
+   * @return the time up to which buckets are considered final.
+   */
+  public long watermarkMillis(final long nowMillis) {
+    return nowMillis - allowedLatenessMillis;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
@@ -0,0 +1,92 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The totals a {@code BucketBasedBreadcrumbDispatcher} has accumulated for a bucket: the hit count, the payload bytes
+ * and payload size range of hits reported along with their size, and the latency sketches of hits reported along
+ * with their latencies.
+ */
+public class BucketTotals {
+
+  static final long NO_PAYLOAD_SIZE = Long.MAX_VALUE;
+
+  private final long hitCount;
+  private final long byteCount;
+  private final long minPayloadSize;
+  private final long maxPayloadSize;
+  private final LatencySketch logicalTimestampLatency;
+  private final LatencySketch creationTimestampLatency;
+
+  /**
+   * @param minPayloadSize {@link #NO_PAYLOAD_SIZE} if no payload sizes were reported.
+   */
+  BucketTotals(final long hitCount,
+               final long byteCount,
+               final long minPayloadSize,
+               final long maxPayloadSize,
+               final LatencySketch logicalTimestampLatency,
+               final LatencySketch creationTimestampLatency) {
+    this.hitCount = hitCount;
+    this.byteCount = byteCount;
+    this.minPayloadSize = minPayloadSize;
+    this.maxPayloadSize = maxPayloadSize;
+    this.logicalTimestampLatency = logicalTimestampLatency;
+    this.creationTimestampLatency = creationTimestampLatency;
+  }
+
+  boolean isEmpty() {
+    return hitCount == 0 && byteCount == 0;
+  }
+
+  long rawMinPayloadSize() {
+    return minPayloadSize;
+  }
+
+  BucketTotals plus(final BucketTotals other) {
+    return new BucketTotals(hitCount + other.hitCount,
+                            byteCount + other.byteCount,
+                            Math.min(minPayloadSize, other.minPayloadSize),
+                            Math.max(maxPayloadSize, other.maxPayloadSize),
+                            logicalTimestampLatency.merge(other.logicalTimestampLatency),
+                            creationTimestampLatency.merge(other.creationTimestampLatency));
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * @return the size of the smallest payload, or 0 if no payload sizes were reported.
+   */
+  public long getMinPayloadSize() {
+    return minPayloadSize != NO_PAYLOAD_SIZE ? minPayloadSize : 0;
+  }
+
+  public long getMaxPayloadSize() {
+    return maxPayloadSize;
+  }
+
+  /**
+   * @return the sketch of the time from the hits' logical timestamps until they were received.
+   */
+  public LatencySketch getLogicalTimestampLatency() {
+    return logicalTimestampLatency;
+  }
+
+  /**
+   * @return the sketch of the time from the hits' creation until they were received.
+   */
+  public LatencySketch getCreationTimestampLatency() {
+    return creationTimestampLatency;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
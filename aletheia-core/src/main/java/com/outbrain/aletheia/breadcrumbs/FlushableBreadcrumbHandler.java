@@ -0,0 +1,19 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+/**
+ * A {@code BreadcrumbHandler} that may hold on to the breadcrumbs it handles, until it is flushed.
+ * The {@code BucketBasedBreadcrumbDispatcher} flushes it at the end of every dispatch, and flushes all of it upon
+ * its final dispatch.
+ */
+public interface FlushableBreadcrumbHandler extends BreadcrumbHandler {
+
+  /**
+   * Hands over the breadcrumbs held so far, possibly deferring it to a later flush.
+   */
+  void flush();
+
+  /**
+   * Hands over all breadcrumbs held so far, without deferring any, e.g., upon shutdown.
+   */
+  void flushAll();
+}
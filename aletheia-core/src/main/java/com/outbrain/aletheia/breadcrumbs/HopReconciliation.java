@@ -0,0 +1,94 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.base.Optional;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+/**
+ * The reconciliation of the hits a single hop has reported for a datum type and bucket, against the hits reported
+ * by the reference hop for the same datum type and bucket.
+ */
+public class HopReconciliation {
+
+  private final String type;
+  private final String hop;
+  private final Instant bucketStartTime;
+  private final Instant bucketEndTime;
+  private final long count;
+  private final long referenceCount;
+  private final Optional<Duration> completionLatency;
+
+  public HopReconciliation(final String type,
+                           final String hop,
+                           final Instant bucketStartTime,
+                           final Instant bucketEndTime,
+                           final long count,
+                           final long referenceCount,
+                           final Optional<Duration> completionLatency) {
+    this.type = type;
+    this.hop = hop;
+    this.bucketStartTime = bucketStartTime;
+    this.bucketEndTime = bucketEndTime;
+    this.count = count;
+    this.referenceCount = referenceCount;
+    this.completionLatency = completionLatency;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getHop() {
+    return hop;
+  }
+
+  public Instant getBucketStartTime() {
+    return bucketStartTime;
+  }
+
+  public Instant getBucketEndTime() {
+    return bucketEndTime;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getReferenceCount() {
+    return referenceCount;
+  }
+
+  /**
+   * @return the fraction of the reference hop's hits missing from this hop, or 0 if the reference hop has
+   * not reported any hits.
+   */
+  public double getLossRatio() {
+    return referenceCount > 0 ? Math.max(0, referenceCount - count) / (double) referenceCount : 0;
+  }
+
+  /**
+   * @return the number of hits this hop has reported in excess of the reference hop's, as a fraction of the latter,
+   * or 0 if the reference hop has not reported any hits.
+   */
+  public double getDuplicationRatio() {
+    return referenceCount > 0 ? Math.max(0, count - referenceCount) / (double) referenceCount : 0;
+  }
+
+  public boolean isComplete() {
+    return completionLatency.isPresent();
+  }
+
+  /**
+   * @return the time from the bucket's end until the breadcrumb that brought this hop's count up to the reference
+   * count was emitted, or absent if this hop is not complete.
+   */
+  public Optional<Duration> getCompletionLatency() {
+    return completionLatency;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
@@ -0,0 +1,84 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records latencies concurrently into the buckets of a {@code LatencySketch}, without allocating once the first
+ * latency has been recorded. The bucket counts are allocated upon the first latency, so that recorders of buckets
+ * whose hits carry no latencies, e.g., producer side buckets, cost nothing.
+ */
+class LatencyRecorder {
+
+  public static final LatencyRecorder NULL = new LatencyRecorder(0) {
+    @Override
+    public void record(final long latencyMillis) {
+
+    }
+
+    @Override
+    public LatencySketch drain() {
+      return LatencySketch.EMPTY;
+    }
+  };
+
+  private final AtomicReference<AtomicLongArray> bucketCounts = new AtomicReference<>();
+  private final int bucketCount;
+
+  public LatencyRecorder() {
+    this(LatencySketch.BUCKET_COUNT);
+  }
+
+  private LatencyRecorder(final int bucketCount) {
+    this.bucketCount = bucketCount;
+  }
+
+  private AtomicLongArray allocatedBucketCounts() {
+    final AtomicLongArray allocated = bucketCounts.get();
+    if (allocated != null) {
+      return allocated;
+    }
+    bucketCounts.compareAndSet(null, new AtomicLongArray(bucketCount));
+    return bucketCounts.get();
+  }
+
+  /**
+   * @param latencyMillis the latency to record, negative latencies are ignored.
+   */
+  public void record(final long latencyMillis) {
+    if (latencyMillis >= 0) {
+      allocatedBucketCounts().incrementAndGet(LatencySketch.bucketIndex(latencyMillis));
+    }
+  }
+
+  /**
+   * Takes away the latencies recorded so far, latencies that are recorded concurrently are retained for the next
+   * drain.
+   *
+   * @return a sketch of the latencies taken away.
+   */
+  public LatencySketch drain() {
+
+    final AtomicLongArray bucketCounts = this.bucketCounts.get();
+
+    if (bucketCounts == null) {
+      return LatencySketch.EMPTY;
+    }
+
+    final int[] bucketIndices = new int[bucketCounts.length()];
+    final long[] counts = new long[bucketCounts.length()];
+    int hitBuckets = 0;
+
+    for (int i = 0; i < bucketCounts.length(); i++) {
+      if (bucketCounts.get(i) != 0) {
+        bucketIndices[hitBuckets] = i;
+        counts[hitBuckets++] = bucketCounts.getAndSet(i, 0);
+      }
+    }
+
+    return hitBuckets > 0 ?
+           new LatencySketch(Arrays.copyOf(bucketIndices, hitBuckets), Arrays.copyOf(counts, hitBuckets)) :
+           LatencySketch.EMPTY;
+  }
+}
@@ -0,0 +1,164 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import java.util.Arrays;
+
+/**
+ * A compact, mergeable distribution of latencies, measured in milliseconds.
+ * <p/>
+ * Latencies are counted in log-linear buckets: latencies below {@value #SUB_BUCKET_COUNT}ms are counted exactly,
+ * and every power of two above is split into {@value #SUB_BUCKET_COUNT} equal sub-buckets, bounding the relative
+ * error of any quantile by {@code 1 / SUB_BUCKET_COUNT}. Only buckets that have been hit are kept, as parallel arrays
+ * of bucket indices (in ascending order) and counts, so sketches from different hosts and buckets can be merged
+ * exactly by adding up the counts of equal indices.
+ */
+public class LatencySketch {
+
+  public static final LatencySketch EMPTY = new LatencySketch(new int[0], new long[0]);
+
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // 2^40ms is well over 30 years, longer latencies are counted in the last bucket.
+  private static final int MAX_EXPONENT = 40;
+  static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private int[] bucketIndices;
+  private long[] bucketCounts;
+
+  private LatencySketch() {
+  }
+
+  public LatencySketch(final int[] bucketIndices, final long[] bucketCounts) {
+    Preconditions.checkArgument(bucketIndices.length == bucketCounts.length,
+                                "bucket indices and bucket counts must be of the same length");
+    this.bucketIndices = bucketIndices;
+    this.bucketCounts = bucketCounts;
+  }
+
+  /**
+   * @param latencyMillis a non negative latency.
+   * @return the index of the bucket counting the given latency.
+   */
+  static int bucketIndex(final long latencyMillis) {
+
+    if (latencyMillis < SUB_BUCKET_COUNT) {
+      return (int) latencyMillis;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(latencyMillis);
+
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+
+    final int subBucket = (int) ((latencyMillis >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+
+    return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * @return the smallest latency counted by the given bucket.
+   */
+  static long bucketLowerBoundMillis(final int bucketIndex) {
+
+    if (bucketIndex < SUB_BUCKET_COUNT) {
+      return bucketIndex;
+    }
+
+    final int exponent = (bucketIndex - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+    final int subBucket = (bucketIndex - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+
+    return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  public int[] getBucketIndices() {
+    return bucketIndices;
+  }
+
+  public long[] getBucketCounts() {
+    return bucketCounts;
+  }
+
+  /**
+   * @return the number of latencies in this sketch.
+   */
+  public long count() {
+    long count = 0;
+    for (final long bucketCount : bucketCounts) {
+      count += bucketCount;
+    }
+    return count;
+  }
+
+  /**
+   * @param quantile a quantile between 0 and 1, e.g., 0.99.
+   * @return an estimate of the given latency quantile, or 0 if this sketch is empty.
+   */
+  public long quantileMillis(final double quantile) {
+
+    Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+
+    final long rank = (long) Math.ceil(quantile * count());
+    long seen = 0;
+
+    for (int i = 0; i < bucketIndices.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank && seen > 0) {
+        final long lowerBound = bucketLowerBoundMillis(bucketIndices[i]);
+        return lowerBound + (bucketLowerBoundMillis(bucketIndices[i] + 1) - lowerBound) / 2;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * @return a new sketch holding the latencies of both this sketch and the given one.
+   */
+  public LatencySketch merge(final LatencySketch other) {
+
+    final int[] mergedIndices = new int[bucketIndices.length + other.bucketIndices.length];
+    final long[] mergedCounts = new long[mergedIndices.length];
+    int i = 0;
+    int j = 0;
+    int merged = 0;
+
+    while (i < bucketIndices.length || j < other.bucketIndices.length) {
+      if (j == other.bucketIndices.length ||
+          (i < bucketIndices.length && bucketIndices[i] < other.bucketIndices[j])) {
+        mergedIndices[merged] = bucketIndices[i];
+        mergedCounts[merged++] = bucketCounts[i++];
+      } else if (i == bucketIndices.length || other.bucketIndices[j] < bucketIndices[i]) {
+        mergedIndices[merged] = other.bucketIndices[j];
+        mergedCounts[merged++] = other.bucketCounts[j++];
+      } else {
+        mergedIndices[merged] = bucketIndices[i];
+        mergedCounts[merged++] = bucketCounts[i++] + other.bucketCounts[j++];
+      }
+    }
+
+    return new LatencySketch(Arrays.copyOf(mergedIndices, merged), Arrays.copyOf(mergedCounts, merged));
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final LatencySketch that = (LatencySketch) o;
+
+    return Arrays.equals(bucketIndices, that.bucketIndices) && Arrays.equals(bucketCounts, that.bucketCounts);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(bucketIndices) + Arrays.hashCode(bucketCounts);
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
@@ -0,0 +1,399 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A {@code BreadcrumbCheckpoint} kept in a memory-mapped file, so that writing it involves no system calls.
+ * <p/>
+ * The file holds two slots, each consisting of a format version, a sequence number, an entry count, the entries, and
+ * a checksum written last. Slots of another format version are ignored, so a file written in a previous format is
+ * discarded, and overwritten by the first write. Writes alternate between the slots, and a read picks the slot with the highest sequence number
+ * whose checksum matches, so a write torn by the process dying leaves the previous checkpoint intact.
+ * The file survives the process dying, but is not forced to disk, and may therefore not survive the machine dying.
+ * <p/>
+ * The file is locked for as long as the checkpoint is open, so that no two checkpoints, in this process or any
+ * other, share it, as they would overwrite each other's slots and recover the same hits. Closing the checkpoint
+ * releases the file, whose mapping is released once it is garbage collected.
+ * <p/>
+ * The file takes up about {@code 2 * capacity * 48} bytes. A file of another capacity, e.g., written before the
+ * capacity was reconfigured, is resized to the current capacity upon opening, keeping the pending hits it holds, up to
+ * the current capacity.
+ */
+public class MappedBreadcrumbCheckpoint implements BreadcrumbCheckpoint, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(MappedBreadcrumbCheckpoint.class);
+
+  // bumped whenever the layout of a slot changes, never 0, which is what the first bytes of unversioned slots hold.
+  private static final int FORMAT_VERSION = 2;
+  private static final int ENTRY_SIZE = 6 * 8;
+  private static final int HEADER_SIZE = 4 + 8 + 4;
+  private static final int SEQUENCE_OFFSET = 4;
+  private static final int ENTRY_COUNT_OFFSET = 4 + 8;
+  private static final int CHECKSUM_SIZE = 8;
+  private static final int MAX_FILES_PER_NAME_PREFIX = 1024;
+
+  private final RandomAccessFile randomAccessFile;
+  private final FileLock lock;
+  private final MappedByteBuffer mappedByteBuffer;
+  private final ByteBuffer slotContent;
+  private final int capacity;
+  private final int slotSize;
+  private long sequence;
+  private boolean closed = false;
+
+  /**
+   * @param file     the file to keep the checkpoint in, created if it does not exist.
+   * @param capacity the maximal number of buckets the checkpoint can hold.
+   * @throws IllegalStateException if the file is already used by another checkpoint.
+   */
+  public MappedBreadcrumbCheckpoint(final File file, final int capacity) {
+
+    this.capacity = capacity;
+    slotSize = HEADER_SIZE + capacity * ENTRY_SIZE + CHECKSUM_SIZE;
+    slotContent = ByteBuffer.allocate(HEADER_SIZE + capacity * ENTRY_SIZE);
+
+    try {
+      randomAccessFile = new RandomAccessFile(file, "rw");
+    } catch (final IOException e) {
+      throw new RuntimeException("Could not open breadcrumb checkpoint file " + file, e);
+    }
+
+    final List<PendingHits> resizedPendingHits;
+
+    try {
+      lock = lock(randomAccessFile, file);
+      if (!file.exists()) {
+        lock.release();
+        throw new IllegalStateException("Breadcrumb checkpoint file " + file + " was recovered and deleted.");
+      }
+      resizedPendingHits = resize(randomAccessFile, file, 2L * slotSize);
+      mappedByteBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 2 * slotSize);
+    } catch (final IOException e) {
+      closeQuietly(randomAccessFile);
+      throw new RuntimeException("Could not map breadcrumb checkpoint file " + file, e);
+    } catch (final RuntimeException e) {
+      closeQuietly(randomAccessFile);
+      throw e;
+    }
+
+    sequence = Math.max(0, Math.max(slotSequence(0), slotSequence(1)));
+
+    if (sequence == 0 && !isBlank()) {
+      logger.warn("Breadcrumb checkpoint file {} is corrupt, or not in format version {}, discarding it.",
+                  file,
+                  FORMAT_VERSION);
+    }
+
+    if (!resizedPendingHits.isEmpty()) {
+      write(resizedPendingHits);
+    }
+  }
+
+  /**
+   * Empties a file whose length does not match the given one, so that it can be mapped afresh.
+   *
+   * @return the pending hits the file held, if it is a valid checkpoint of another capacity.
+   */
+  private static List<PendingHits> resize(final RandomAccessFile randomAccessFile,
+                                          final File file,
+                                          final long fileLength) throws IOException {
+
+    final long previousFileLength = randomAccessFile.length();
+
+    if (previousFileLength == 0 || previousFileLength == fileLength) {
+      return Collections.emptyList();
+    }
+
+    final long previousSlotSize = previousFileLength / 2;
+    final long previousCapacity = (previousSlotSize - HEADER_SIZE - CHECKSUM_SIZE) / ENTRY_SIZE;
+    List<PendingHits> pendingHits = Collections.emptyList();
+
+    if (previousFileLength <= Integer.MAX_VALUE &&
+        previousCapacity >= 0 &&
+        previousFileLength == 2 * (HEADER_SIZE + previousCapacity * ENTRY_SIZE + CHECKSUM_SIZE)) {
+
+      final MappedByteBuffer previousBuffer =
+              randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, previousFileLength);
+      final long firstSequence = slotSequence(previousBuffer, (int) previousSlotSize, (int) previousCapacity, 0);
+      final long secondSequence = slotSequence(previousBuffer, (int) previousSlotSize, (int) previousCapacity, 1);
+
+      if (Math.max(firstSequence, secondSequence) > 0) {
+        pendingHits = readSlot(previousBuffer, (int) previousSlotSize, firstSequence > secondSequence ? 0 : 1);
+      }
+    }
+
+    logger.info("Resizing breadcrumb checkpoint file {} from {} to {} bytes, keeping its {} pending buckets.",
+                new Object[]{file, previousFileLength, fileLength, pendingHits.size()});
+
+    // emptied rather than just resized, since stale bytes could otherwise pass for a valid slot at the new offsets.
+    randomAccessFile.setLength(0);
+
+    return pendingHits;
+  }
+
+  /**
+   * Opens the first checkpoint file named {@code <namePrefix>.<index>.checkpoint} in the given directory that is not
+   * used by another checkpoint, so that each of several checkpoints sharing a name prefix keeps a file of its own.
+   * <p/>
+   * The hits of the other files of the name prefix that are not in use either, left behind by a previous run that had
+   * more checkpoints than this one has had so far, are merged into the opened checkpoint, after which these files are
+   * deleted. A file whose hits do not fit into the opened checkpoint is left for a later checkpoint to recover.
+   *
+   * @throws IllegalStateException if the first {@value #MAX_FILES_PER_NAME_PREFIX} files of the name prefix are all in
+   *                               use.
+   */
+  public static MappedBreadcrumbCheckpoint openUnused(final File directory,
+                                                      final String namePrefix,
+                                                      final int capacity) {
+    for (int index = 0; index < MAX_FILES_PER_NAME_PREFIX; index++) {
+      final File file = checkpointFile(directory, namePrefix, index);
+      final MappedBreadcrumbCheckpoint checkpoint;
+      try {
+        checkpoint = new MappedBreadcrumbCheckpoint(file, capacity);
+      } catch (final IllegalStateException e) {
+        logger.debug("Breadcrumb checkpoint file {} is in use, trying the next one.", file);
+        continue;
+      }
+      checkpoint.recoverUnused(directory, namePrefix, file);
+      return checkpoint;
+    }
+    throw new IllegalStateException(String.format("All %d breadcrumb checkpoint files of %s in %s are in use.",
+                                                  MAX_FILES_PER_NAME_PREFIX,
+                                                  namePrefix,
+                                                  directory));
+  }
+
+  private static File checkpointFile(final File directory, final String namePrefix, final int index) {
+    return new File(directory, String.format("%s.%d.checkpoint", namePrefix, index));
+  }
+
+  private void recoverUnused(final File directory, final String namePrefix, final File ownFile) {
+
+    final Pattern namePattern = Pattern.compile(Pattern.quote(namePrefix) + "\\.\\d+\\.checkpoint");
+
+    final File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return namePattern.matcher(name).matches();
+      }
+    });
+
+    if (files == null) {
+      return;
+    }
+
+    for (final File file : files) {
+
+      if (file.equals(ownFile)) {
+        continue;
+      }
+
+      final MappedBreadcrumbCheckpoint unusedCheckpoint;
+      try {
+        unusedCheckpoint = new MappedBreadcrumbCheckpoint(file, capacity);
+      } catch (final IllegalStateException e) {
+        continue;
+      }
+
+      try {
+        final List<PendingHits> pendingHits = read();
+        pendingHits.addAll(unusedCheckpoint.read());
+
+        if (pendingHits.size() > capacity) {
+          logger.warn("Breadcrumb checkpoint file {} does not fit into {}, leaving it for a later checkpoint.",
+                      file,
+                      ownFile);
+          continue;
+        }
+
+        write(pendingHits);
+
+        // deleted while still locked, so that no other checkpoint recovers its hits once more.
+        if (!file.delete()) {
+          logger.warn("Could not delete recovered breadcrumb checkpoint file {}, its hits may be recovered again.",
+                      file);
+        }
+      } finally {
+        closeQuietly(unusedCheckpoint);
+      }
+    }
+  }
+
+  private static FileLock lock(final RandomAccessFile randomAccessFile, final File file) throws IOException {
+
+    final FileLock fileLock;
+
+    try {
+      fileLock = randomAccessFile.getChannel().tryLock();
+    } catch (final OverlappingFileLockException e) {
+      throw new IllegalStateException("Breadcrumb checkpoint file " + file + " is already in use.", e);
+    }
+
+    if (fileLock == null) {
+      throw new IllegalStateException("Breadcrumb checkpoint file " + file + " is already in use.");
+    }
+
+    return fileLock;
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (final IOException e) {
+      logger.warn("Could not close breadcrumb checkpoint file.", e);
+    }
+  }
+
+  private static long checksum(final byte[] bytes, final int length) {
+    final CRC32 crc32 = new CRC32();
+    crc32.update(bytes, 0, length);
+    return crc32.getValue();
+  }
+
+  private static int slotOffset(final int slotSize, final int slot) {
+    return slot * slotSize;
+  }
+
+  private boolean isBlank() {
+    for (int i = 0; i < mappedByteBuffer.capacity(); i++) {
+      if (mappedByteBuffer.get(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the slot's sequence number, or -1 if the slot does not hold a valid checkpoint of the current format.
+   */
+  private static long slotSequence(final ByteBuffer buffer, final int slotSize, final int capacity, final int slot) {
+
+    if (buffer.getInt(slotOffset(slotSize, slot)) != FORMAT_VERSION) {
+      return -1;
+    }
+
+    final int entryCount = buffer.getInt(slotOffset(slotSize, slot) + ENTRY_COUNT_OFFSET);
+
+    if (entryCount < 0 || entryCount > capacity) {
+      return -1;
+    }
+
+    final int contentLength = HEADER_SIZE + entryCount * ENTRY_SIZE;
+    final byte[] content = new byte[contentLength];
+    final ByteBuffer slotBuffer = buffer.duplicate();
+    slotBuffer.position(slotOffset(slotSize, slot));
+    slotBuffer.get(content);
+
+    if (slotBuffer.getLong() != checksum(content, contentLength)) {
+      return -1;
+    }
+
+    return buffer.getLong(slotOffset(slotSize, slot) + SEQUENCE_OFFSET);
+  }
+
+  private long slotSequence(final int slot) {
+    return slotSequence(mappedByteBuffer, slotSize, capacity, slot);
+  }
+
+  private static List<PendingHits> readSlot(final ByteBuffer buffer, final int slotSize, final int slot) {
+
+    final List<PendingHits> pendingHits = Lists.newArrayList();
+    final int entryCount = buffer.getInt(slotOffset(slotSize, slot) + ENTRY_COUNT_OFFSET);
+
+    for (int i = 0; i < entryCount; i++) {
+      final int entryOffset = slotOffset(slotSize, slot) + HEADER_SIZE + i * ENTRY_SIZE;
+      pendingHits.add(new PendingHits(buffer.getLong(entryOffset),
+                                      buffer.getLong(entryOffset + 8),
+                                      buffer.getLong(entryOffset + 16),
+                                      buffer.getLong(entryOffset + 24),
+                                      buffer.getLong(entryOffset + 32),
+                                      buffer.getLong(entryOffset + 40)));
+    }
+
+    return pendingHits;
+  }
+
+  @Override
+  public synchronized List<PendingHits> read() {
+
+    if (sequence == 0) {
+      return Lists.newArrayList();
+    }
+
+    return readSlot(mappedByteBuffer, slotSize, slotSequence(0) == sequence ? 0 : 1);
+  }
+
+  @Override
+  public synchronized void write(final List<PendingHits> pendingHits) {
+
+    if (closed) {
+      return;
+    }
+
+    if (pendingHits.size() > capacity) {
+      logger.warn("Breadcrumb checkpoint capacity [{}] is smaller than the [{}] pending buckets, excess buckets are not checkpointed.",
+                  capacity,
+                  pendingHits.size());
+    }
+
+    final int entryCount = Math.min(pendingHits.size(), capacity);
+
+    sequence++;
+
+    slotContent.clear();
+    slotContent.putInt(FORMAT_VERSION);
+    slotContent.putLong(sequence);
+    slotContent.putInt(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      final PendingHits entry = pendingHits.get(i);
+      slotContent.putLong(entry.getBucketDurationMillis());
+      slotContent.putLong(entry.getBucketStart());
+      slotContent.putLong(entry.getHitCount());
+      slotContent.putLong(entry.getByteCount());
+      slotContent.putLong(entry.getMinPayloadSize());
+      slotContent.putLong(entry.getMaxPayloadSize());
+    }
+
+    final int contentLength = slotContent.position();
+    final ByteBuffer slotBuffer = mappedByteBuffer.duplicate();
+    slotBuffer.position(slotOffset(slotSize, (int) (sequence % 2)));
+    slotBuffer.put(slotContent.array(), 0, contentLength);
+    slotBuffer.putLong(checksum(slotContent.array(), contentLength));
+  }
+
+  /**
+   * Releases the checkpoint file, after which writes are ignored.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    try {
+      lock.release();
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+}
@@ -30,7 +30,13 @@ public class StartTimeWithDurationBreadcrumbBaker implements BreadcrumbBaker<Buc
     this.breadcrumbTypeId = breadcrumbTypeId;
   }
 
-  @Override
+  private static LatencySketch nonEmptyOrNull(final LatencySketch latencySketch) {
+    return latencySketch.count() > 0 ? latencySketch : null;
+  }
+
+  /**
+   * Bakes a breadcrumb carrying a hit count only, as bakers did before bucket totals were introduced.
+   */
   public Breadcrumb bakeBreadcrumb(final BucketStartWithDuration bucketKey,
                                    final Instant processingTimestamp,
                                    final long bucketHitCount) {
@@ -45,6 +51,28 @@ public class StartTimeWithDurationBreadcrumbBaker implements BreadcrumbBaker<Buc
                           datacenter,
                           application,
                           tier);
+  }
+
+  @Override
+  public Breadcrumb bakeBreadcrumb(final BucketStartWithDuration bucketKey,
+                                   final Instant processingTimestamp,
+                                   final BucketTotals bucketTotals) {
+
+    return new Breadcrumb(breadcrumbTypeId,
+                          source,
+                          destination,
+                          bucketKey.getBucketStart(),
+                          bucketKey.getBucketStart().plus(bucketKey.getBucketDuration()),
+                          processingTimestamp,
+                          bucketTotals.getHitCount(),
+                          datacenter,
+                          application,
+                          tier,
+                          bucketTotals.getByteCount(),
+                          bucketTotals.getMinPayloadSize(),
+                          bucketTotals.getMaxPayloadSize(),
+                          nonEmptyOrNull(bucketTotals.getLogicalTimestampLatency()),
+                          nonEmptyOrNull(bucketTotals.getCreationTimestampLatency()));
 
   }
 }
@@ -0,0 +1,31 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.base.Function;
+import com.google.common.collect.FluentIterable;
+import com.outbrain.aletheia.datum.consumption.DatumConsumer;
+
+/**
+ * A {@code DatumConsumer} providing the individual breadcrumbs contained in the {@code BreadcrumbBatch}es consumed
+ * by an underlying {@code DatumConsumer}.
+ */
+public class UnbatchingBreadcrumbConsumer implements DatumConsumer<Breadcrumb> {
+
+  private static final Function<BreadcrumbBatch, Iterable<Breadcrumb>> toBreadcrumbs =
+          new Function<BreadcrumbBatch, Iterable<Breadcrumb>>() {
+            @Override
+            public Iterable<Breadcrumb> apply(final BreadcrumbBatch breadcrumbBatch) {
+              return breadcrumbBatch.getBreadcrumbs();
+            }
+          };
+
+  private final Iterable<Breadcrumb> breadcrumbs;
+
+  public UnbatchingBreadcrumbConsumer(final DatumConsumer<BreadcrumbBatch> breadcrumbBatchConsumer) {
+    breadcrumbs = FluentIterable.from(breadcrumbBatchConsumer.datums()).transformAndConcat(toBreadcrumbs);
+  }
+
+  @Override
+  public Iterable<Breadcrumb> datums() {
+    return breadcrumbs;
+  }
+}
@@ -1,42 +1,59 @@
 package com.outbrain.aletheia.datum;
 
 import com.outbrain.aletheia.breadcrumbs.BreadcrumbBaker;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbCheckpoint;
 import com.outbrain.aletheia.breadcrumbs.BreadcrumbHandler;
 import com.outbrain.aletheia.breadcrumbs.BucketBasedBreadcrumbDispatcher;
+import com.outbrain.aletheia.breadcrumbs.BucketFinalizationPolicy;
 import com.outbrain.aletheia.breadcrumbs.BucketStartWithDuration;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Keeps aggregated counts of the incoming reports and periodically produces corresponding breadcrumbs.
+ * Periodic flushes are carried out by a {@code DatumAuditorScheduler}, which is shared by all auditors
+ * unless one is given explicitly, as are periodic checkpoints, if a {@code BreadcrumbCheckpoint} is given.
  */
 public class DatumAuditor<TDomainClass> extends BucketBasedBreadcrumbDispatcher<TDomainClass> {
 
   private static final Logger logger = LoggerFactory.getLogger(DatumAuditor.class);
 
-  private final ScheduledExecutorService scheduledExecutorService;
-  private final Duration durationBetweenFlushes;
-  private final Runnable flushCommand;
+  private final DatumAuditorScheduler datumAuditorScheduler;
+  private final BreadcrumbHandler breadcrumbHandler;
+  private final BreadcrumbCheckpoint breadcrumbCheckpoint;
 
+  /**
+   * Audits using a single bucket duration, finalizing buckets on every dispatch, without checkpoints, latency
+   * sketches or metrics, and flushing on the shared {@code DatumAuditorScheduler}.
+   */
   public DatumAuditor(final Duration bucketDuration,
                       final DatumType.TimestampExtractor<TDomainClass> timestampExtractor,
                       final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
                       final BreadcrumbHandler breadcrumbHandler,
                       final Duration durationBetweenFlushes) {
-    this(bucketDuration,
-         timestampExtractor,
+    this(Collections.singletonList(bucketDuration),
+         DatumUtils.asTimestampMillisExtractor(timestampExtractor),
          breadcrumbBaker,
          breadcrumbHandler,
-         Executors.newSingleThreadScheduledExecutor(),
          durationBetweenFlushes,
-         Duration.standardDays(1));
+         BucketFinalizationPolicy.EVERY_DISPATCH,
+         BreadcrumbCheckpoint.NULL,
+         durationBetweenFlushes,
+         false,
+         MetricsFactory.NULL);
   }
 
+  /**
+   * Audits using a single bucket duration, finalizing buckets on every dispatch, without checkpoints, latency
+   * sketches or metrics, and flushing on a {@code DatumAuditorScheduler} of the given executor.
+   */
   public DatumAuditor(final Duration bucketDuration,
                       final DatumType.TimestampExtractor<TDomainClass> timestampExtractor,
                       final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
@@ -44,28 +61,95 @@ public class DatumAuditor<TDomainClass> extends BucketBasedBreadcrumbDispatcher<
                       final ScheduledExecutorService scheduledExecutorService,
                       final Duration durationBetweenFlushes,
                       final Duration preAllocatedInterval) {
+    this(Collections.singletonList(bucketDuration),
+         DatumUtils.asTimestampMillisExtractor(timestampExtractor),
+         breadcrumbBaker,
+         breadcrumbHandler,
+         new DatumAuditorScheduler(scheduledExecutorService),
+         durationBetweenFlushes,
+         preAllocatedInterval,
+         BucketFinalizationPolicy.EVERY_DISPATCH,
+         BreadcrumbCheckpoint.NULL,
+         durationBetweenFlushes,
+         false,
+         MetricsFactory.NULL);
+  }
+
+  public DatumAuditor(final List<Duration> bucketDurations,
+                      final DatumType.TimestampMillisExtractor<TDomainClass> timestampExtractor,
+                      final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
+                      final BreadcrumbHandler breadcrumbHandler,
+                      final Duration durationBetweenFlushes,
+                      final BucketFinalizationPolicy bucketFinalizationPolicy,
+                      final BreadcrumbCheckpoint breadcrumbCheckpoint,
+                      final Duration durationBetweenCheckpoints,
+                      final boolean sketchingLatencies,
+                      final MetricsFactory metricsFactory) {
+    this(bucketDurations,
+         timestampExtractor,
+         breadcrumbBaker,
+         breadcrumbHandler,
+         DatumAuditorScheduler.getDefault(),
+         durationBetweenFlushes,
+         Duration.standardDays(1),
+         bucketFinalizationPolicy,
+         breadcrumbCheckpoint,
+         durationBetweenCheckpoints,
+         sketchingLatencies,
+         metricsFactory);
+  }
+
+  public DatumAuditor(final List<Duration> bucketDurations,
+                      final DatumType.TimestampMillisExtractor<TDomainClass> timestampExtractor,
+                      final BreadcrumbBaker<BucketStartWithDuration> breadcrumbBaker,
+                      final BreadcrumbHandler breadcrumbHandler,
+                      final DatumAuditorScheduler datumAuditorScheduler,
+                      final Duration durationBetweenFlushes,
+                      final Duration preAllocatedInterval,
+                      final BucketFinalizationPolicy bucketFinalizationPolicy,
+                      final BreadcrumbCheckpoint breadcrumbCheckpoint,
+                      final Duration durationBetweenCheckpoints,
+                      final boolean sketchingLatencies,
+                      final MetricsFactory metricsFactory) {
 
-    super(bucketDuration, timestampExtractor, breadcrumbBaker, breadcrumbHandler, preAllocatedInterval);
+    super(bucketDurations,
+          timestampExtractor,
+          breadcrumbBaker,
+          breadcrumbHandler,
+          preAllocatedInterval,
+          bucketFinalizationPolicy,
+          breadcrumbCheckpoint,
+          sketchingLatencies,
+          metricsFactory);
 
-    this.scheduledExecutorService = scheduledExecutorService;
-    this.durationBetweenFlushes = durationBetweenFlushes;
+    this.datumAuditorScheduler = datumAuditorScheduler;
+    this.breadcrumbHandler = breadcrumbHandler;
+    this.breadcrumbCheckpoint = breadcrumbCheckpoint;
 
-    flushCommand = new Runnable() {
-      @Override
-      public void run() {
-        try {
-          periodicFlush();
-        } catch (final Exception e) {
-          logger.error("Periodic flash has failed.", e);
-        }
-      }
-    };
+    datumAuditorScheduler.register(this, durationBetweenFlushes);
 
-    periodicFlush();
+    if (breadcrumbCheckpoint != BreadcrumbCheckpoint.NULL) {
+      datumAuditorScheduler.registerCheckpoints(this, durationBetweenCheckpoints);
+    }
+  }
+
+  private static void close(final Object closeable, final String description) {
+    if (closeable instanceof Closeable) {
+      try {
+        ((Closeable) closeable).close();
+      } catch (final Exception e) {
+        logger.error("Could not close " + description + ".", e);
+      }
+    }
   }
 
-  private void periodicFlush() {
-    dispatchBreadcrumbs();
-    scheduledExecutorService.schedule(flushCommand, durationBetweenFlushes.getMillis(), TimeUnit.MILLISECONDS);
+  /**
+   * Stops flushing this auditor periodically, dispatches the breadcrumbs it has aggregated so far, and closes its
+   * breadcrumb handler and checkpoint if they are {@code Closeable}.
+   */
+  public void close() {
+    datumAuditorScheduler.unregister(this);
+    close(breadcrumbHandler, "breadcrumb handler");
+    close(breadcrumbCheckpoint, "breadcrumb checkpoint");
   }
 }
@@ -0,0 +1,202 @@
+package com.outbrain.aletheia.datum;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically flushes registered {@code DatumAuditor}s using a small, bounded pool of threads, so that the number of
+ * flushing threads does not grow with the number of datum types and endpoints in use.
+ * <p/>
+ * The first flush of each auditor is delayed by a random fraction of its flush interval, so that the flushes of
+ * auditors created together do not align into bursts. Upon shutdown, all live auditors are flushed one last time.
+ * <p/>
+ * The flushes and checkpoints of an auditor are serialized on a monitor private to this scheduler, so that its final
+ * flush does not start before a periodic flush in flight, including the flush of its breadcrumb handler, is over.
+ */
+public class DatumAuditorScheduler {
+
+  private static final Logger logger = LoggerFactory.getLogger(DatumAuditorScheduler.class);
+
+  private static final int DEFAULT_THREAD_COUNT = 2;
+
+  private static final DatumAuditorScheduler DEFAULT = createDefault();
+
+  private static class ScheduledAuditor {
+
+    private final Object monitor = new Object();
+    private final List<ScheduledFuture<?>> scheduledTasks = new CopyOnWriteArrayList<>();
+  }
+
+  private final ConcurrentMap<DatumAuditor<?>, ScheduledAuditor> liveAuditor2scheduledAuditor = Maps.newConcurrentMap();
+  private final Random random = new Random();
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  public DatumAuditorScheduler(final ScheduledExecutorService scheduledExecutorService) {
+    this.scheduledExecutorService = scheduledExecutorService;
+  }
+
+  private static DatumAuditorScheduler createDefault() {
+
+    final DatumAuditorScheduler datumAuditorScheduler =
+            new DatumAuditorScheduler(
+                    Executors.newScheduledThreadPool(DEFAULT_THREAD_COUNT,
+                                                     new ThreadFactoryBuilder()
+                                                             .setNameFormat("aletheia-auditor-flush-%d")
+                                                             .setDaemon(true)
+                                                             .build()));
+
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        datumAuditorScheduler.shutdown();
+      }
+    }));
+
+    return datumAuditorScheduler;
+  }
+
+  /**
+   * @return the process wide {@code DatumAuditorScheduler}, shared by all {@code DatumAuditor}s not given one
+   * explicitly.
+   */
+  public static DatumAuditorScheduler getDefault() {
+    return DEFAULT;
+  }
+
+  private long jitteredInitialDelayMillis(final long durationBetweenFlushesMillis) {
+    return durationBetweenFlushesMillis > 1 ? (long) (random.nextDouble() * durationBetweenFlushesMillis) : 0;
+  }
+
+  private void flush(final DatumAuditor<?> datumAuditor, final Object monitor) {
+    synchronized (monitor) {
+      try {
+        datumAuditor.dispatchBreadcrumbs();
+      } catch (final Exception e) {
+        logger.error("Periodic flush has failed.", e);
+      }
+    }
+  }
+
+  private void finalFlush(final DatumAuditor<?> datumAuditor, final Object monitor) {
+    synchronized (monitor) {
+      try {
+        datumAuditor.dispatchAllBreadcrumbs();
+      } catch (final Exception e) {
+        logger.error("Final flush has failed.", e);
+      }
+    }
+  }
+
+  private void checkpoint(final DatumAuditor<?> datumAuditor, final Object monitor) {
+    synchronized (monitor) {
+      try {
+        datumAuditor.checkpoint();
+      } catch (final Exception e) {
+        logger.error("Periodic checkpoint has failed.", e);
+      }
+    }
+  }
+
+  private ScheduledAuditor scheduledAuditor(final DatumAuditor<?> datumAuditor) {
+
+    final ScheduledAuditor scheduledAuditor = liveAuditor2scheduledAuditor.get(datumAuditor);
+
+    if (scheduledAuditor != null) {
+      return scheduledAuditor;
+    }
+
+    final ScheduledAuditor newScheduledAuditor = new ScheduledAuditor();
+    final ScheduledAuditor existingScheduledAuditor =
+            liveAuditor2scheduledAuditor.putIfAbsent(datumAuditor, newScheduledAuditor);
+
+    return existingScheduledAuditor != null ? existingScheduledAuditor : newScheduledAuditor;
+  }
+
+  private void schedule(final ScheduledAuditor scheduledAuditor,
+                        final Runnable task,
+                        final Duration durationBetweenRuns) {
+
+    final long durationBetweenRunsMillis = durationBetweenRuns.getMillis();
+
+    final ScheduledFuture<?> scheduledTask =
+            scheduledExecutorService.scheduleWithFixedDelay(task,
+                                                            jitteredInitialDelayMillis(durationBetweenRunsMillis),
+                                                            durationBetweenRunsMillis,
+                                                            TimeUnit.MILLISECONDS);
+
+    scheduledAuditor.scheduledTasks.add(scheduledTask);
+  }
+
+  public void register(final DatumAuditor<?> datumAuditor, final Duration durationBetweenFlushes) {
+    final ScheduledAuditor scheduledAuditor = scheduledAuditor(datumAuditor);
+    schedule(scheduledAuditor,
+             new Runnable() {
+               @Override
+               public void run() {
+                 flush(datumAuditor, scheduledAuditor.monitor);
+               }
+             },
+             durationBetweenFlushes);
+  }
+
+  /**
+   * Checkpoints a registered {@code DatumAuditor} periodically, in addition to the checkpoint it takes upon
+   * each flush.
+   *
+   * @param datumAuditor               the {@code DatumAuditor} to checkpoint.
+   * @param durationBetweenCheckpoints the time interval to wait between two consecutive checkpoints.
+   */
+  public void registerCheckpoints(final DatumAuditor<?> datumAuditor, final Duration durationBetweenCheckpoints) {
+    final ScheduledAuditor scheduledAuditor = scheduledAuditor(datumAuditor);
+    schedule(scheduledAuditor,
+             new Runnable() {
+               @Override
+               public void run() {
+                 checkpoint(datumAuditor, scheduledAuditor.monitor);
+               }
+             },
+             durationBetweenCheckpoints);
+  }
+
+  /**
+   * Stops flushing a given {@code DatumAuditor} periodically, and flushes it one last time, including buckets
+   * that would otherwise still be held open, once a periodic flush in flight, if any, is over.
+   *
+   * @param datumAuditor the {@code DatumAuditor} to unregister.
+   */
+  public void unregister(final DatumAuditor<?> datumAuditor) {
+
+    final ScheduledAuditor scheduledAuditor = liveAuditor2scheduledAuditor.remove(datumAuditor);
+
+    if (scheduledAuditor != null) {
+      for (final ScheduledFuture<?> scheduledTask : scheduledAuditor.scheduledTasks) {
+        scheduledTask.cancel(false);
+      }
+      finalFlush(datumAuditor, scheduledAuditor.monitor);
+    }
+  }
+
+  /**
+   * Stops all periodic flushes, and flushes all live {@code DatumAuditor}s one last time.
+   */
+  public void shutdown() {
+
+    scheduledExecutorService.shutdown();
+
+    for (final DatumAuditor<?> datumAuditor : liveAuditor2scheduledAuditor.keySet()) {
+      unregister(datumAuditor);
+    }
+  }
+}
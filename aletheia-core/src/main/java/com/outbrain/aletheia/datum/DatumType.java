@@ -9,6 +9,8 @@ import java.lang.annotation.Target;
 
 /**
  * An annotation providing metadata for a given datum type.
+ * A datum type must specify either a {@code timestampExtractor} or a {@code timestampMillisExtractor}, but not both,
+ * where the latter is preferred since it allows extracting a datum's timestamp without allocating any time objects.
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
@@ -18,7 +20,22 @@ public @interface DatumType {
     DateTime extractDatumDateTime(TDomainClass domainObject);
   }
 
+  /**
+   * Extracts a datum's timestamp in epoch milliseconds.
+   */
+  interface TimestampMillisExtractor<TDomainClass> {
+    long extractDatumTimestampMillis(TDomainClass domainObject);
+  }
+
   String datumTypeId();
 
-  Class<? extends TimestampExtractor> timestampExtractor();
+  /**
+   * Defaults to the {@code TimestampExtractor} interface itself, which stands for "not specified".
+   */
+  Class<? extends TimestampExtractor> timestampExtractor() default TimestampExtractor.class;
+
+  /**
+   * Defaults to the {@code TimestampMillisExtractor} interface itself, which stands for "not specified".
+   */
+  Class<? extends TimestampMillisExtractor> timestampMillisExtractor() default TimestampMillisExtractor.class;
 }
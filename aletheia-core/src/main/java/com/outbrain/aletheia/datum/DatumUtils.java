@@ -1,10 +1,47 @@
 package com.outbrain.aletheia.datum;
 
+import com.google.common.base.Preconditions;
+import org.joda.time.DateTime;
+
 /**
  * A utility class for extracting various information provided via by the {@code DatumType} annotation.
  */
 public final class DatumUtils {
 
+  /**
+   * Adapts a {@code DateTime} based {@code TimestampExtractor} to the {@code TimestampMillisExtractor} contract.
+   */
+  private static class TimestampMillisExtractorAdapter<T> implements DatumType.TimestampMillisExtractor<T> {
+
+    private final DatumType.TimestampExtractor<T> timestampExtractor;
+
+    private TimestampMillisExtractorAdapter(final DatumType.TimestampExtractor<T> timestampExtractor) {
+      this.timestampExtractor = timestampExtractor;
+    }
+
+    @Override
+    public long extractDatumTimestampMillis(final T domainObject) {
+      return timestampExtractor.extractDatumDateTime(domainObject).getMillis();
+    }
+  }
+
+  /**
+   * Adapts a {@code TimestampMillisExtractor} to the {@code DateTime} based {@code TimestampExtractor} contract.
+   */
+  private static class TimestampExtractorAdapter<T> implements DatumType.TimestampExtractor<T> {
+
+    private final DatumType.TimestampMillisExtractor<T> timestampMillisExtractor;
+
+    private TimestampExtractorAdapter(final DatumType.TimestampMillisExtractor<T> timestampMillisExtractor) {
+      this.timestampMillisExtractor = timestampMillisExtractor;
+    }
+
+    @Override
+    public DateTime extractDatumDateTime(final T domainObject) {
+      return new DateTime(timestampMillisExtractor.extractDatumTimestampMillis(domainObject));
+    }
+  }
+
   private DatumUtils() {
   }
 
@@ -20,6 +57,19 @@ public final class DatumUtils {
     return datumTypeAnnotation;
   }
 
+  private static DatumType getDatumAnnotationWithSingleTimestampExtractorOrThrow(final Class<?> domainClass) {
+    final DatumType datumTypeAnnotation = getDatumAnnotationOrThrow(domainClass);
+
+    Preconditions.checkArgument(
+            !isSpecified(datumTypeAnnotation.timestampExtractor(), DatumType.TimestampExtractor.class) ||
+            !isSpecified(datumTypeAnnotation.timestampMillisExtractor(), DatumType.TimestampMillisExtractor.class),
+            "The @%s annotation of class %s specifies both a timestampExtractor and a timestampMillisExtractor.",
+            DatumType.class.getSimpleName(),
+            domainClass.getSimpleName());
+
+    return datumTypeAnnotation;
+  }
+
   private static <T> T newInstanceOrThrow(final Class<T> clazz) {
     try {
       return clazz.newInstance();
@@ -33,8 +83,51 @@ public final class DatumUtils {
     return datumTypeAnnotation.datumTypeId();
   }
 
+  private static boolean isSpecified(final Class<?> extractorClass, final Class<?> extractorInterface) {
+    return !extractorClass.equals(extractorInterface);
+  }
+
+  /**
+   * Adapts a {@code DateTime} based {@code TimestampExtractor} to the {@code TimestampMillisExtractor} contract.
+   */
+  public static <T> DatumType.TimestampMillisExtractor<T> asTimestampMillisExtractor(
+          final DatumType.TimestampExtractor<T> timestampExtractor) {
+    return new TimestampMillisExtractorAdapter<>(timestampExtractor);
+  }
+
   public static <T> DatumType.TimestampExtractor<T> getDatumTimestampExtractor(final Class<T> domainClass) {
-    final DatumType datumTypeAnnotation = getDatumAnnotationOrThrow(domainClass);
-    return newInstanceOrThrow(datumTypeAnnotation.timestampExtractor());
+    final DatumType datumTypeAnnotation = getDatumAnnotationWithSingleTimestampExtractorOrThrow(domainClass);
+
+    if (isSpecified(datumTypeAnnotation.timestampExtractor(), DatumType.TimestampExtractor.class)) {
+      return newInstanceOrThrow(datumTypeAnnotation.timestampExtractor());
+    }
+
+    return new TimestampExtractorAdapter<>(DatumUtils.getDatumTimestampMillisExtractor(domainClass));
+  }
+
+  /**
+   * Returns a {@code TimestampMillisExtractor} for the given datum type. If the datum type only specifies a
+   * {@code DateTime} based {@code TimestampExtractor}, it is adapted to the {@code TimestampMillisExtractor} contract.
+   *
+   * @throws IllegalArgumentException if the datum type specifies both extractors.
+   *
+   * @param domainClass the datum type.
+   * @param <T>         the datum type.
+   * @return a {@code TimestampMillisExtractor} for the given datum type.
+   */
+  public static <T> DatumType.TimestampMillisExtractor<T> getDatumTimestampMillisExtractor(final Class<T> domainClass) {
+    final DatumType datumTypeAnnotation = getDatumAnnotationWithSingleTimestampExtractorOrThrow(domainClass);
+
+    if (isSpecified(datumTypeAnnotation.timestampMillisExtractor(), DatumType.TimestampMillisExtractor.class)) {
+      return newInstanceOrThrow(datumTypeAnnotation.timestampMillisExtractor());
+    }
+
+    if (isSpecified(datumTypeAnnotation.timestampExtractor(), DatumType.TimestampExtractor.class)) {
+      return asTimestampMillisExtractor(newInstanceOrThrow(datumTypeAnnotation.timestampExtractor()));
+    }
+
+    throw new UnknownDatumTypeException(String.format("The @%s annotation of class %s specifies no timestamp extractor.",
+                                                      DatumType.class.getSimpleName(),
+                                                      domainClass.getSimpleName()));
   }
 }
@@ -2,19 +2,32 @@ package com.outbrain.aletheia.datum.consumption;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 import com.outbrain.aletheia.metrics.common.Counter;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.util.Iterator;
 
 /**
  * A breadcrumb generating {@code DatumConsumer} implementation.
+ * <p/>
+ * Envelopes are first matched against an envelope filter, which only has the envelope's metadata to go by, so that
+ * envelopes it rejects are skipped before their datum is deserialized, or accounted for in lag metrics. Since their
+ * datums never reach the datum auditor, rejected envelopes are reported to an envelope filtered auditor of their own,
+ * typically auditing a {@code <datum type id>.EnvelopeFiltered} breadcrumb stream bucketed by the envelopes' logical
+ * timestamp, so that hits of this hop add up to the hits of the previous one when reconciled. Datums opened from the
+ * remaining envelopes are then matched against the datum filter.
+ * <p/>
+ * Closing the consumer closes its {@code DatumEnvelopeFetcher} if it is {@code Closeable}, which ends the iteration
+ * over its datums.
  */
-public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomainClass> {
+public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomainClass>, Closeable {
 
   private class DatumIterator implements Iterator<TDomainClass> {
 
@@ -31,6 +44,19 @@ public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomai
       }
     };
 
+    private final Predicate<DatumEnvelope> satisfiesEnvelopeFilter = new Predicate<DatumEnvelope>() {
+      @Override
+      public boolean apply(final DatumEnvelope datumEnvelope) {
+        if (envelopeFilter.apply(datumEnvelope)) {
+          return true;
+        } else {
+          envelopeFilteredCounter.inc();
+          envelopeFilteredAuditor.report(datumEnvelope);
+          return false;
+        }
+      }
+    };
+
     private final Predicate<TDomainClass> satisfiesDatumFilter = new Predicate<TDomainClass>() {
       @Override
       public boolean apply(final TDomainClass datum) {
@@ -54,6 +80,7 @@ public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomai
       try {
         return FluentIterable
                 .from(datumEnvelopes)
+                .filter(satisfiesEnvelopeFilter)
                 .transform(toDatum)
                 .firstMatch(satisfiesDatumFilter)
                 .get();
@@ -73,23 +100,62 @@ public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomai
 
   private static final Logger logger = LoggerFactory.getLogger(AuditingDatumConsumer.class);
 
+  /**
+   * Appended to the datum type id to form the breadcrumb type of envelopes rejected by the envelope filter.
+   */
+  public static final String ENVELOPE_FILTERED_BREADCRUMB_TYPE_SUFFIX = ".EnvelopeFiltered";
+
+  private final DatumEnvelopeFetcher datumEnvelopeFetcher;
   private final DatumEnvelopeOpener<TDomainClass> datumEnvelopeOpener;
+  private final Predicate<DatumEnvelope> envelopeFilter;
+  private final BreadcrumbDispatcher<DatumEnvelope> envelopeFilteredAuditor;
   private final Predicate<TDomainClass> datumFilter;
   private final Counter consumedDatumCount;
   private final Counter consumeFailureCount;
   private final Counter filteredCounter;
+  private final Counter envelopeFilteredCounter;
   private Iterable<TDomainClass> datumIterable;
 
   public AuditingDatumConsumer(final DatumEnvelopeFetcher datumEnvelopeFetcher,
                                final DatumEnvelopeOpener<TDomainClass> datumEnvelopeOpener,
                                final Predicate<TDomainClass> datumFilter,
                                final MetricsFactory metricsFactory) {
+    this(datumEnvelopeFetcher,
+         datumEnvelopeOpener,
+         Predicates.<DatumEnvelope>alwaysTrue(),
+         datumFilter,
+         metricsFactory);
+  }
+
+  public AuditingDatumConsumer(final DatumEnvelopeFetcher datumEnvelopeFetcher,
+                               final DatumEnvelopeOpener<TDomainClass> datumEnvelopeOpener,
+                               final Predicate<DatumEnvelope> envelopeFilter,
+                               final Predicate<TDomainClass> datumFilter,
+                               final MetricsFactory metricsFactory) {
+    this(datumEnvelopeFetcher,
+         datumEnvelopeOpener,
+         envelopeFilter,
+         BreadcrumbDispatcher.NULL,
+         datumFilter,
+         metricsFactory);
+  }
+
+  public AuditingDatumConsumer(final DatumEnvelopeFetcher datumEnvelopeFetcher,
+                               final DatumEnvelopeOpener<TDomainClass> datumEnvelopeOpener,
+                               final Predicate<DatumEnvelope> envelopeFilter,
+                               final BreadcrumbDispatcher<DatumEnvelope> envelopeFilteredAuditor,
+                               final Predicate<TDomainClass> datumFilter,
+                               final MetricsFactory metricsFactory) {
 
     consumedDatumCount = metricsFactory.createCounter("Consume.Requests.Attempts", "Success");
     consumeFailureCount = metricsFactory.createCounter("Consume.Requests.Attempts", "Failures");
     filteredCounter = metricsFactory.createCounter("Consume.Requests", "Filtered");
+    envelopeFilteredCounter = metricsFactory.createCounter("Consume.Requests", "EnvelopeFiltered");
 
+    this.datumEnvelopeFetcher = datumEnvelopeFetcher;
     this.datumEnvelopeOpener = datumEnvelopeOpener;
+    this.envelopeFilter = envelopeFilter;
+    this.envelopeFilteredAuditor = envelopeFilteredAuditor;
     this.datumFilter = datumFilter;
 
     final DatumIterator datumIterator = new DatumIterator(datumEnvelopeFetcher);
@@ -105,5 +171,16 @@ public class AuditingDatumConsumer<TDomainClass> implements DatumConsumer<TDomai
   public Iterable<TDomainClass> datums() {
     return datumIterable;
   }
+
+  @Override
+  public void close() {
+    if (datumEnvelopeFetcher instanceof Closeable) {
+      try {
+        ((Closeable) datumEnvelopeFetcher).close();
+      } catch (final Exception e) {
+        logger.error("Could not close datum envelope fetcher.", e);
+      }
+    }
+  }
 }
 
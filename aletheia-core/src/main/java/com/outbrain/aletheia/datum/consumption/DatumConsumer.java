@@ -3,6 +3,9 @@ package com.outbrain.aletheia.datum.consumption;
 /**
  * The base interface for a {@code DatumConsumer}, capable of providing clients with datum instances consumed
  * from a data source.
+ * <p/>
+ * Consumers holding on to the resources of their data source, e.g., network connections, also implement
+ * {@code java.io.Closeable}, which releases them and ends the iteration over the consumer's datums.
  *
  * @param <TDomainClass> The type of the datum to be consumed by this {@code DatumConsumer}.
  */
@@ -5,8 +5,10 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.outbrain.aletheia.breadcrumbs.Breadcrumb;
 import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
+import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeHeaderRegistry;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 import com.outbrain.aletheia.datum.production.AletheiaBuilder;
 import com.outbrain.aletheia.datum.production.DatumProducerConfig;
 import com.outbrain.aletheia.datum.serialization.DatumSerDe;
@@ -33,16 +35,23 @@ public class DatumConsumerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
 
     private final ConsumptionEndPoint consumptionEndPoint;
     private final DatumSerDe<TDomainClass> datumSerDe;
+    private final Predicate<DatumEnvelope> envelopeFilter;
     private final Predicate<TDomainClass> filter;
 
     private ConsumptionEndPointInfo(final ConsumptionEndPoint consumptionEndPoint,
                                     final DatumSerDe<TDomainClass> datumSerDe,
+                                    final Predicate<DatumEnvelope> envelopeFilter,
                                     final Predicate<TDomainClass> filter) {
       this.consumptionEndPoint = consumptionEndPoint;
       this.datumSerDe = datumSerDe;
+      this.envelopeFilter = envelopeFilter;
       this.filter = filter;
     }
 
+    public Predicate<DatumEnvelope> getEnvelopeFilter() {
+      return envelopeFilter;
+    }
+
     public Predicate<TDomainClass> getFilter() {
       return filter;
     }
@@ -78,11 +87,15 @@ public class DatumConsumerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
                 consumptionEndPointInfo.getConsumptionEndPoint(),
                 datumProducerConfig);
 
+    // so that compact envelopes of this datum type can be resolved.
+    DatumEnvelopeHeaderRegistry.DEFAULT.register(DatumUtils.getDatumTypeId(domainClass));
+    DatumEnvelopeHeaderRegistry.DEFAULT.register(consumptionEndPointInfo.getDatumSerDe().getClass().getSimpleName());
+
     final BreadcrumbDispatcher<TDomainClass> datumAuditor;
     final MetricFactoryProvider metricFactoryProvider = new DefaultMetricFactoryProvider(domainClass,
                                                                                          DATUM_CONSUMER,
                                                                                          metricFactory);
-    if (domainClass.equals(Breadcrumb.class) || !isBreadcrumbProductionDefined()) {
+    if (isBreadcrumbDomainClass() || !isBreadcrumbProductionDefined()) {
       datumAuditor = BreadcrumbDispatcher.NULL;
     } else {
       datumAuditor = getDatumAuditor(datumProducerConfig,
@@ -90,6 +103,19 @@ public class DatumConsumerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
                                      metricFactoryProvider);
     }
 
+    final BreadcrumbDispatcher<DatumEnvelope> envelopeFilteredAuditor;
+    if (isBreadcrumbDomainClass() ||
+        !isBreadcrumbProductionDefined() ||
+        consumptionEndPointInfo.getEnvelopeFilter() == Predicates.<DatumEnvelope>alwaysTrue()) {
+      envelopeFilteredAuditor = BreadcrumbDispatcher.NULL;
+    } else {
+      envelopeFilteredAuditor = getEnvelopeAuditor(DatumUtils.getDatumTypeId(domainClass) +
+                                                   AuditingDatumConsumer.ENVELOPE_FILTERED_BREADCRUMB_TYPE_SUFFIX,
+                                                   datumProducerConfig,
+                                                   consumptionEndPointInfo.getConsumptionEndPoint(),
+                                                   metricFactoryProvider);
+    }
+
     final DatumEnvelopeOpener<TDomainClass> datumEnvelopeOpener =
             new DatumEnvelopeOpener<>(datumAuditor,
                                       consumptionEndPointInfo.getDatumSerDe(),
@@ -112,6 +138,8 @@ public class DatumConsumerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
               public AuditingDatumConsumer<TDomainClass> apply(final DatumEnvelopeFetcher datumEnvelopeFetcher) {
                 return new AuditingDatumConsumer<>(datumEnvelopeFetcher,
                                                    datumEnvelopeOpener,
+                                                   consumptionEndPointInfo.getEnvelopeFilter(),
+                                                   envelopeFilteredAuditor,
                                                    consumptionEndPointInfo.getFilter(),
                                                    metricFactoryProvider
                                                            .forAuditingDatumConsumer(
@@ -171,8 +199,33 @@ public class DatumConsumerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
   public DatumConsumerBuilder<TDomainClass> consumeDataFrom(final ConsumptionEndPoint consumptionEndPoint,
                                                             final DatumSerDe<TDomainClass> datumSerDe,
                                                             final Predicate<TDomainClass> datumFilter) {
+    return consumeDataFrom(consumptionEndPoint, datumSerDe, Predicates.<DatumEnvelope>alwaysTrue(), datumFilter);
+  }
+
+  /**
+   * Adds a consumption endpoint to consume data from, using the specified {@code DatumSerDe} and filter instances.
+   * The envelope filter is applied to each envelope's metadata, e.g., its incarnation, logical timestamp or datum key,
+   * before its datum is deserialized, so that discarding unwanted data spares deserializing it. Filtering by header
+   * fields costs little more than reading the envelope's header, see {@code DatumEnvelopePredicates} for common
+   * envelope filters and the fields they read. When breadcrumbs are produced, envelopes the filter rejects are audited
+   * as a {@code <datum type id>.EnvelopeFiltered} breadcrumb stream of their own.
+   *
+   * @param consumptionEndPoint the consumption endpoint to add.
+   * @param datumSerDe          the {@code DatumSerDe} instance to use to serialize data.
+   * @param envelopeFilter      a filter to apply to envelopes before opening them.
+   * @param datumFilter         a filter to apply before delivering data.
+   * @return a {@code DatumConsumerBuilder} instance configured with the specified consumption endpoint,
+   * serialization method and filters.
+   */
+  public DatumConsumerBuilder<TDomainClass> consumeDataFrom(final ConsumptionEndPoint consumptionEndPoint,
+                                                            final DatumSerDe<TDomainClass> datumSerDe,
+                                                            final Predicate<DatumEnvelope> envelopeFilter,
+                                                            final Predicate<TDomainClass> datumFilter) {
 
-    consumptionEndPointInfos.add(new ConsumptionEndPointInfo<>(consumptionEndPoint, datumSerDe, datumFilter));
+    consumptionEndPointInfos.add(new ConsumptionEndPointInfo<>(consumptionEndPoint,
+                                                               datumSerDe,
+                                                               envelopeFilter,
+                                                               datumFilter));
     return this;
   }
 
@@ -4,6 +4,9 @@ import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 
 /**
  * The base interface for fetchers capable of fetching {@code DatumEnvelope}s from a data source.
+ * <p/>
+ * Fetchers holding on to the resources of their data source should also implement {@code java.io.Closeable}, and
+ * end their iteration once closed. They are closed by the {@code DatumConsumer} they feed.
  */
 public interface DatumEnvelopeFetcher {
 
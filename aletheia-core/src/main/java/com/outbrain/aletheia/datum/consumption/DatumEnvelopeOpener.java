@@ -9,11 +9,11 @@ import com.outbrain.aletheia.metrics.common.Counter;
 import com.outbrain.aletheia.metrics.common.Histogram;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import com.outbrain.aletheia.metrics.common.TimeWindowAverager;
-import org.joda.time.DateTime;
-import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+
 public class DatumEnvelopeOpener<TDomainClass> {
 
   private static final Logger logger = LoggerFactory.getLogger(DatumEnvelopeOpener.class);
@@ -42,29 +42,35 @@ public class DatumEnvelopeOpener<TDomainClass> {
     metricFactory.createGauge("Timestamp.Logical", "DelayAverageInSeconds", logicalDelayAverager);
   }
 
-  private void updateLagMetrics(final DatumEnvelope envelope) {
-    final DateTime now = DateTime.now();
-    try {
-      final long logicalSecondsBehind =
-              new Interval(new DateTime(envelope.getLogicalTimestamp()), now).toDuration().getStandardSeconds();
+  private void updateLagMetrics(final DatumEnvelope envelope, final long receiveTimeMillis) {
+    final long logicalMillisBehind = receiveTimeMillis - envelope.getLogicalTimestamp();
+    if (logicalMillisBehind >= 0) {
+      final long logicalSecondsBehind = TimeUnit.MILLISECONDS.toSeconds(logicalMillisBehind);
       logicalDelayAverager.addSample((int) logicalSecondsBehind);
       logicalTimestampDelayHistogram.update(logicalSecondsBehind);
-    } catch (final Exception e) {
-      logger.error("A message with a future logical time detected, metrics update will not take place", e);
+    } else {
+      logger.error("A message with a future logical time detected, metrics update will not take place");
       futureLogicalMessagesCount.inc();
     }
   }
 
   public TDomainClass open(final DatumEnvelope datumEnvelope) {
 
-    updateLagMetrics(datumEnvelope);
+    final long receiveTimeMillis = System.currentTimeMillis();
+
+    updateLagMetrics(datumEnvelope, receiveTimeMillis);
+
+    final int payloadSizeBytes = datumEnvelope.getDatumBytes().remaining();
 
     final TDomainClass datum =
             datumSerDe.deserializeDatum(new SerializedDatum(datumEnvelope.getDatumBytes(),
                                                             new DatumTypeVersion(
                                                                     datumEnvelope.getDatumTypeId().toString(),
                                                                     datumEnvelope.getDatumSchemaVersion())));
-    datumAuditor.report(datum);
+    datumAuditor.report(datum,
+                        payloadSizeBytes,
+                        receiveTimeMillis - datumEnvelope.getLogicalTimestamp(),
+                        receiveTimeMillis - datumEnvelope.getCreationTime());
 
     return datum;
   }
@@ -0,0 +1,57 @@
+package com.outbrain.aletheia.datum.consumption;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.joda.time.Instant;
+
+import java.util.Set;
+
+/**
+ * Common envelope filters for {@link DatumConsumerBuilder#consumeDataFrom}. Each of them only reads the envelope
+ * fields it filters by, and since lazily deserialized envelopes decode their fields in schema order, the cost of a
+ * filter depends on the position of the last field it reads. {@link #incarnationIs} and
+ * {@link #logicalTimestampWithin} only read the envelope's header, while {@link #datumKeyIn} reads the datum key, the
+ * last field of the envelope, decoding all of its fields, including the datum bytes, though not the datum itself.
+ */
+public class DatumEnvelopePredicates {
+
+  private DatumEnvelopePredicates() {
+  }
+
+  public static Predicate<DatumEnvelope> incarnationIs(final int incarnation) {
+    return new Predicate<DatumEnvelope>() {
+      @Override
+      public boolean apply(final DatumEnvelope datumEnvelope) {
+        return datumEnvelope.getIncarnation() == incarnation;
+      }
+    };
+  }
+
+  /**
+   * @param from the earliest logical timestamp to accept, inclusive.
+   * @param to   the latest logical timestamp to accept, exclusive.
+   */
+  public static Predicate<DatumEnvelope> logicalTimestampWithin(final Instant from, final Instant to) {
+    final long fromMillis = from.getMillis();
+    final long toMillis = to.getMillis();
+    return new Predicate<DatumEnvelope>() {
+      @Override
+      public boolean apply(final DatumEnvelope datumEnvelope) {
+        final long logicalTimestamp = datumEnvelope.getLogicalTimestamp();
+        return fromMillis <= logicalTimestamp && logicalTimestamp < toMillis;
+      }
+    };
+  }
+
+  public static Predicate<DatumEnvelope> datumKeyIn(final Set<String> datumKeys) {
+    final Set<String> acceptedDatumKeys = ImmutableSet.copyOf(datumKeys);
+    return new Predicate<DatumEnvelope>() {
+      @Override
+      public boolean apply(final DatumEnvelope datumEnvelope) {
+        final CharSequence datumKey = datumEnvelope.getDatumKey();
+        return datumKey != null && acceptedDatumKeys.contains(datumKey.toString());
+      }
+    };
+  }
+}
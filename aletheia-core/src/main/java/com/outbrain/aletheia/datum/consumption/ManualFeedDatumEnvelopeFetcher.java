@@ -53,7 +53,7 @@ public class ManualFeedDatumEnvelopeFetcher implements DatumEnvelopeFetcher {
   private DatumEnvelope fetchDatumEnvelope() {
     try {
       final ByteBuffer datumEnvelopeByteBuffer = ByteBuffer.wrap(consumptionEndPoint.fetch());
-      final DatumEnvelope datumEnvelope = avroDatumEnvelopeSerDe.deserializeDatumEnvelope(datumEnvelopeByteBuffer);
+      final DatumEnvelope datumEnvelope = avroDatumEnvelopeSerDe.deserializeDatumEnvelopeLazily(datumEnvelopeByteBuffer);
 
       receivedDatumEnvelopeCount.inc();
 
@@ -1,52 +1,133 @@
 package com.outbrain.aletheia.datum.envelope;
 
+import com.outbrain.aletheia.datum.envelope.avro.CompactDatumEnvelope;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
-import org.apache.avro.io.*;
 import org.apache.avro.specific.SpecificData;
-import org.apache.avro.specific.SpecificDatumWriter;
-import org.apache.avro.util.ByteBufferInputStream;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Serializes a {@code DatumEnvelope} instance to an Avro encoded ByteBuffer.
+ * <p/>
+ * The actual encoding and decoding is done by a {@code DatumEnvelopeCodec} confined to the calling thread, so that
+ * writers, readers and buffers are reused rather than created per envelope.
+ * <p/>
+ * Envelopes are serialized in the {@code DatumEnvelopeFormat} this {@code AvroDatumEnvelopeSerDe} was created with,
+ * and deserialized in whichever format they were serialized in.
  */
 public class AvroDatumEnvelopeSerDe {
 
+  private static final ThreadLocal<DatumEnvelopeCodec> datumEnvelopeCodec = new ThreadLocal<DatumEnvelopeCodec>() {
+    @Override
+    protected DatumEnvelopeCodec initialValue() {
+      return new DatumEnvelopeCodec();
+    }
+  };
+
+  private final DatumEnvelopeFormat envelopeFormat;
+  private final DatumEnvelopeHeaderRegistry headerRegistry;
+
+  public AvroDatumEnvelopeSerDe() {
+    this(DatumEnvelopeFormat.Standard, DatumEnvelopeHeaderRegistry.DEFAULT);
+  }
+
+  public AvroDatumEnvelopeSerDe(final DatumEnvelopeFormat envelopeFormat,
+                                final DatumEnvelopeHeaderRegistry headerRegistry) {
+    this.envelopeFormat = envelopeFormat;
+    this.headerRegistry = headerRegistry;
+  }
+
+  private ByteBuffer encode(final DatumEnvelopeCodec codec, final DatumEnvelope envelope) throws IOException {
+    return envelopeFormat == DatumEnvelopeFormat.Compact ?
+           codec.encodeCompact(envelope, headerRegistry) :
+           codec.encode(envelope);
+  }
+
+  private DatumEnvelope compactDatumEnvelope(final ByteBuffer buffer) {
+    final ByteBuffer compactEnvelopeBuffer = buffer.duplicate();
+    // skips the magic byte.
+    compactEnvelopeBuffer.position(compactEnvelopeBuffer.position() + 1);
+    return new LazyDatumEnvelope(compactEnvelopeBuffer, CompactDatumEnvelope.getClassSchema(), headerRegistry);
+  }
+
+  /**
+   * Serializes an envelope into a buffer of its own, wrapping an array of the encoding's exact size. This costs an
+   * allocation and a copy of the encoding per envelope, and is what producers use, since transports keep the array of
+   * every envelope they are handed, e.g., as the payload of a Kafka message.
+   */
   public ByteBuffer serializeDatumEnvelope(final DatumEnvelope envelope) {
+    try {
+      return encode(datumEnvelopeCodec.get(), envelope);
+    } catch (final Exception e) {
+      throw new RuntimeException("Could not serialize datum envelope", e);
+    }
+  }
 
+  /**
+   * Serializes an envelope into a caller provided buffer, heap or direct, starting at its position, without
+   * allocating or copying. Meant for callers that own, and reuse, the buffers they serialize into.
+   *
+   * @return the number of bytes written.
+   */
+  public int serializeDatumEnvelope(final DatumEnvelope envelope, final ByteBuffer target) {
     try {
-      final SpecificDatumWriter<DatumEnvelope> envelopeWriter = new SpecificDatumWriter<>(envelope.getSchema());
-      final ByteArrayOutputStream envelopeByteStream = new ByteArrayOutputStream();
-      BinaryEncoder binaryEncoder = EncoderFactory.get().directBinaryEncoder(envelopeByteStream, null);
-      binaryEncoder = EncoderFactory.get().directBinaryEncoder(envelopeByteStream, binaryEncoder);
+      return envelopeFormat == DatumEnvelopeFormat.Compact ?
+             datumEnvelopeCodec.get().encodeCompact(envelope, target, headerRegistry) :
+             datumEnvelopeCodec.get().encode(envelope, target);
+    } catch (final IOException e) {
+      throw new RuntimeException("Could not serialize datum envelope", e);
+    }
+  }
 
-      envelopeWriter.write(envelope, binaryEncoder);
-      binaryEncoder.flush();
-      envelopeByteStream.flush();
+  /**
+   * Serializes a batch of envelopes.
+   */
+  public List<ByteBuffer> serializeDatumEnvelopes(final List<DatumEnvelope> envelopes) {
 
-      return ByteBuffer.wrap(envelopeByteStream.toByteArray());
+    final DatumEnvelopeCodec codec = datumEnvelopeCodec.get();
+    final List<ByteBuffer> binaryEnvelopes = new ArrayList<>(envelopes.size());
+
+    try {
+      for (final DatumEnvelope envelope : envelopes) {
+        binaryEnvelopes.add(encode(codec, envelope));
+      }
     } catch (final Exception e) {
-      throw new RuntimeException("Could not serialize datum envelope", e);
+      throw new RuntimeException("Could not serialize datum envelopes", e);
     }
 
+    return binaryEnvelopes;
   }
 
   public DatumEnvelope deserializeDatumEnvelope(final ByteBuffer buffer) {
+    return deserializeDatumEnvelope(buffer, null);
+  }
 
-    final DatumReader<DatumEnvelope> datumReader = SpecificData.get().createDatumReader(DatumEnvelope.getClassSchema());
-
-    final InputStream byteBufferInputStream = new ByteBufferInputStream(Collections.singletonList(buffer));
-    final BinaryDecoder decoder = DecoderFactory.get().directBinaryDecoder(byteBufferInputStream, null);
+  /**
+   * Wraps the remaining bytes of a buffer in a {@code LazyDatumEnvelope}, whose fields are only decoded when accessed,
+   * and whose datum bytes are a slice of the buffer rather than a copy. The buffer's position is left unchanged.
+   */
+  public DatumEnvelope deserializeDatumEnvelopeLazily(final ByteBuffer buffer) {
+    return DatumEnvelopeFormat.of(buffer) == DatumEnvelopeFormat.Compact ?
+           compactDatumEnvelope(buffer) :
+           new LazyDatumEnvelope(buffer);
+  }
 
+  /**
+   * @param reuse an envelope whose fields may be reused for the deserialized one, or null. Compact envelopes are
+   *              always deserialized into a new envelope.
+   */
+  public DatumEnvelope deserializeDatumEnvelope(final ByteBuffer buffer, final DatumEnvelope reuse) {
     try {
-      final DatumEnvelope envelope = datumReader.read(null, decoder);
-      byteBufferInputStream.close();
-      return envelope;
+      if (DatumEnvelopeFormat.of(buffer) == DatumEnvelopeFormat.Compact) {
+        final DatumEnvelope datumEnvelope =
+                SpecificData.get().deepCopy(DatumEnvelope.getClassSchema(), compactDatumEnvelope(buffer));
+        buffer.position(buffer.limit());
+        return datumEnvelope;
+      }
+      return datumEnvelopeCodec.get().decode(buffer, reuse);
     } catch (final IOException e) {
       throw new RuntimeException("Could not decode datum envelope", e);
     }
@@ -6,7 +6,6 @@ import com.outbrain.aletheia.datum.DatumUtils;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 import com.outbrain.aletheia.datum.serialization.DatumSerDe;
 import com.outbrain.aletheia.datum.serialization.SerializedDatum;
-import org.joda.time.Instant;
 
 /**
  * Builds an enclosing {@code DatumEnvelope}s for a datum, serializing it using
@@ -19,8 +18,9 @@ public class DatumEnvelopeBuilder<TDomainClass> {
   private final String hostname;
   private final int incarnation;
   private final String datumTypeId;
+  private final String serDeType;
   private final DatumSerDe<TDomainClass> datumSerDe;
-  private final DatumType.TimestampExtractor<TDomainClass> datumTimestampExtractor;
+  private final DatumType.TimestampMillisExtractor<TDomainClass> datumTimestampExtractor;
   private final DatumKeySelector<TDomainClass> datumKeySelector;
 
   public DatumEnvelopeBuilder(final Class<TDomainClass> domainClass,
@@ -30,17 +30,18 @@ public class DatumEnvelopeBuilder<TDomainClass> {
                               final String hostname) {
 
     this.datumSerDe = datumSerDe;
+    this.serDeType = datumSerDe.getClass().getSimpleName();
     this.hostname = hostname;
     this.incarnation = incarnation;
 
     this.datumKeySelector = datumKeySelector;
-    datumTimestampExtractor = DatumUtils.getDatumTimestampExtractor(domainClass);
+    datumTimestampExtractor = DatumUtils.getDatumTimestampMillisExtractor(domainClass);
     datumTypeId = DatumUtils.getDatumTypeId(domainClass);
   }
 
   public DatumEnvelope buildEnvelope(final TDomainClass domainObject) {
 
-    final long logicalTimestamp = datumTimestampExtractor.extractDatumDateTime(domainObject).getMillis();
+    final long logicalTimestamp = datumTimestampExtractor.extractDatumTimestampMillis(domainObject);
     final String datumKey = datumKeySelector.getDatumKey(domainObject);
     final SerializedDatum serializedDatum = datumSerDe.serializeDatum(domainObject);
 
@@ -49,9 +50,9 @@ public class DatumEnvelopeBuilder<TDomainClass> {
                              logicalTimestamp,
                              incarnation,
                              hostname,
-                             Instant.now().getMillis(),
+                             System.currentTimeMillis(),
                              serializedDatum.getPayload(),
-                             datumSerDe.getClass().getSimpleName(),
+                             serDeType,
                              datumKey);
   }
 }
\ No newline at end of file
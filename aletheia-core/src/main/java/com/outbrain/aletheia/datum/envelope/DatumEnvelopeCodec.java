@@ -0,0 +1,200 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.envelope.avro.CompactDatumEnvelope;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes {@code DatumEnvelope}s using the Avro binary encoding of the {@code DatumEnvelope} schema,
+ * reusing the same writer, reader, encoders, decoders and scratch buffer across calls. Envelopes can also be encoded
+ * in the {@code DatumEnvelopeFormat.Compact} format, given a {@code DatumEnvelopeHeaderRegistry}.
+ * <p/>
+ * A {@code DatumEnvelopeCodec} is not thread safe, and is meant to be confined to a single thread.
+ */
+public class DatumEnvelopeCodec {
+
+  private static final int INITIAL_SCRATCH_SIZE = 1024;
+
+  private static class ByteBufferOutputStream extends OutputStream {
+
+    private ByteBuffer target;
+
+    @Override
+    public void write(final int b) {
+      target.put((byte) b);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) {
+      target.put(bytes, offset, length);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private ByteBuffer source;
+
+    @Override
+    public int read() {
+      return source.hasRemaining() ? source.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if (!source.hasRemaining()) {
+        return -1;
+      }
+      final int readCount = Math.min(length, source.remaining());
+      source.get(bytes, offset, readCount);
+      return readCount;
+    }
+  }
+
+  private final SpecificDatumWriter<DatumEnvelope> envelopeWriter =
+          new SpecificDatumWriter<>(DatumEnvelope.getClassSchema());
+  private final SpecificDatumReader<DatumEnvelope> envelopeReader =
+          new SpecificDatumReader<>(DatumEnvelope.getClassSchema());
+
+  private final SpecificDatumWriter<CompactDatumEnvelope> compactEnvelopeWriter =
+          new SpecificDatumWriter<>(CompactDatumEnvelope.getClassSchema());
+  private final CompactDatumEnvelope compactEnvelope = new CompactDatumEnvelope();
+
+  private final ByteArrayOutputStream scratchStream = new ByteArrayOutputStream(INITIAL_SCRATCH_SIZE);
+  private final BinaryEncoder scratchEncoder = EncoderFactory.get().directBinaryEncoder(scratchStream, null);
+
+  private final ByteBufferOutputStream targetStream = new ByteBufferOutputStream();
+  private final BinaryEncoder targetEncoder = EncoderFactory.get().directBinaryEncoder(targetStream, null);
+
+  private final ByteBufferInputStream sourceStream = new ByteBufferInputStream();
+  private final BinaryDecoder sourceDecoder = DecoderFactory.get().directBinaryDecoder(sourceStream, null);
+  private BinaryDecoder arrayDecoder;
+
+  /**
+   * Encodes an envelope into the reused scratch buffer, and copies the encoding once into an array of its exact size,
+   * owned by the caller.
+   *
+   * @return a newly allocated buffer holding the encoded envelope.
+   */
+  public ByteBuffer encode(final DatumEnvelope envelope) throws IOException {
+    scratchStream.reset();
+    envelopeWriter.write(envelope, scratchEncoder);
+    scratchEncoder.flush();
+    return ByteBuffer.wrap(scratchStream.toByteArray());
+  }
+
+  private CompactDatumEnvelope toCompactEnvelope(final DatumEnvelope envelope,
+                                                 final DatumEnvelopeHeaderRegistry headerRegistry) {
+
+    compactEnvelope.setDatumTypeFingerprint(headerRegistry.register(envelope.getDatumTypeId().toString()));
+    compactEnvelope.setDatumSchemaVersion(envelope.getDatumSchemaVersion());
+    compactEnvelope.setLogicalTimestamp(envelope.getLogicalTimestamp());
+    compactEnvelope.setIncarnation(envelope.getIncarnation());
+    compactEnvelope.setSourceHostFingerprint(headerRegistry.register(envelope.getSourceHost().toString()));
+    compactEnvelope.setCreationTime(envelope.getCreationTime());
+    compactEnvelope.setDatumBytes(envelope.getDatumBytes());
+    compactEnvelope.setSerDeTypeFingerprint(envelope.getSerDeType() != null ?
+                                            headerRegistry.register(envelope.getSerDeType().toString()) :
+                                            null);
+    compactEnvelope.setDatumKey(envelope.getDatumKey());
+
+    return compactEnvelope;
+  }
+
+  /**
+   * @return a newly allocated buffer holding the envelope encoded in the {@code DatumEnvelopeFormat.Compact} format.
+   */
+  public ByteBuffer encodeCompact(final DatumEnvelope envelope,
+                                  final DatumEnvelopeHeaderRegistry headerRegistry) throws IOException {
+    scratchStream.reset();
+    scratchStream.write(DatumEnvelopeFormat.COMPACT_MAGIC_BYTE);
+    compactEnvelopeWriter.write(toCompactEnvelope(envelope, headerRegistry), scratchEncoder);
+    scratchEncoder.flush();
+    return ByteBuffer.wrap(scratchStream.toByteArray());
+  }
+
+  /**
+   * Encodes an envelope into a caller provided buffer, heap or direct, starting at its position.
+   *
+   * @return the number of bytes written, by which the buffer's position has advanced.
+   * @throws BufferOverflowException if the envelope does not fit in the remaining buffer, whose position is then left
+   *                                 unchanged.
+   */
+  public int encode(final DatumEnvelope envelope, final ByteBuffer target) throws IOException {
+
+    final int startPosition = target.position();
+    targetStream.target = target;
+
+    try {
+      envelopeWriter.write(envelope, targetEncoder);
+      targetEncoder.flush();
+      return target.position() - startPosition;
+    } catch (final BufferOverflowException e) {
+      target.position(startPosition);
+      throw e;
+    } finally {
+      targetStream.target = null;
+    }
+  }
+
+  /**
+   * Encodes an envelope in the {@code DatumEnvelopeFormat.Compact} format into a caller provided buffer, the same way
+   * {@link #encode(DatumEnvelope, ByteBuffer)} does.
+   */
+  public int encodeCompact(final DatumEnvelope envelope,
+                           final ByteBuffer target,
+                           final DatumEnvelopeHeaderRegistry headerRegistry) throws IOException {
+
+    final int startPosition = target.position();
+    targetStream.target = target;
+
+    try {
+      targetStream.write(DatumEnvelopeFormat.COMPACT_MAGIC_BYTE);
+      compactEnvelopeWriter.write(toCompactEnvelope(envelope, headerRegistry), targetEncoder);
+      targetEncoder.flush();
+      return target.position() - startPosition;
+    } catch (final BufferOverflowException e) {
+      target.position(startPosition);
+      throw e;
+    } finally {
+      targetStream.target = null;
+    }
+  }
+
+  /**
+   * Decodes an envelope taking up the remaining bytes of a buffer, heap or direct, and consumes them.
+   *
+   * @param reuse an envelope whose fields, including its datum bytes buffer, may be reused, or null.
+   */
+  public DatumEnvelope decode(final ByteBuffer source, final DatumEnvelope reuse) throws IOException {
+
+    if (source.hasArray()) {
+      arrayDecoder = DecoderFactory.get().binaryDecoder(source.array(),
+                                                        source.arrayOffset() + source.position(),
+                                                        source.remaining(),
+                                                        arrayDecoder);
+      final DatumEnvelope envelope = envelopeReader.read(reuse, arrayDecoder);
+      source.position(source.limit());
+      return envelope;
+    }
+
+    sourceStream.source = source;
+
+    try {
+      return envelopeReader.read(reuse, sourceDecoder);
+    } finally {
+      sourceStream.source = null;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary formats a {@code DatumEnvelope} can be encoded in. Both formats can be told apart by their first byte,
+ * so that envelopes of either format can be mixed on the same topic, e.g., while producers are being migrated from one
+ * to the other.
+ */
+public enum DatumEnvelopeFormat {
+
+  /**
+   * The Avro binary encoding of the {@code DatumEnvelope} schema (v1). Its first byte is always even, being the
+   * zigzag encoded, non negative, length of the datum type id.
+   */
+  Standard,
+
+  /**
+   * An odd magic byte, followed by the Avro binary encoding of the {@code CompactDatumEnvelope} schema (v2), in which
+   * the datum type id, source host and serDe type are replaced by 4 byte fingerprints, resolved through a
+   * {@code DatumEnvelopeHeaderRegistry}.
+   */
+  Compact;
+
+  static final byte COMPACT_MAGIC_BYTE = 0x01;
+
+  /**
+   * @return the format of the envelope encoded in the remaining bytes of the specified buffer.
+   */
+  public static DatumEnvelopeFormat of(final ByteBuffer binaryDatumEnvelope) {
+    return binaryDatumEnvelope.hasRemaining() && (binaryDatumEnvelope.get(binaryDatumEnvelope.position()) & 1) == 1 ?
+           Compact :
+           Standard;
+  }
+}
@@ -0,0 +1,64 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.google.common.base.Charsets;
+import com.outbrain.aletheia.datum.envelope.avro.HeaderFingerprint;
+import org.apache.avro.SchemaNormalization;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the strings carried by {@code DatumEnvelope} headers, i.e., datum type ids, hostnames and serDe types, to and
+ * from the fingerprints standing for them in {@code DatumEnvelopeFormat.Compact} envelopes.
+ * <p/>
+ * Strings are registered by producers as they encode envelopes, and by consumers for the datum types and serDes they
+ * consume with, so that the fingerprints a consumer needs to resolve are known to it. Fingerprints that were never
+ * registered, typically those of other producers' hostnames, are resolved to a "#" prefixed hex representation of the
+ * fingerprint.
+ */
+public class DatumEnvelopeHeaderRegistry {
+
+  /**
+   * A JVM wide registry, used by default by all producers and consumers.
+   */
+  public static final DatumEnvelopeHeaderRegistry DEFAULT = new DatumEnvelopeHeaderRegistry();
+
+  private final ConcurrentMap<String, HeaderFingerprint> value2fingerprint = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Integer, String> fingerprint2value = new ConcurrentHashMap<>();
+
+  private static int fingerprint(final String value) {
+    return (int) SchemaNormalization.fingerprint64(value.getBytes(Charsets.UTF_8));
+  }
+
+  /**
+   * @throws IllegalStateException if a different value with the same fingerprint has already been registered.
+   */
+  public HeaderFingerprint register(final String value) {
+
+    final HeaderFingerprint registeredFingerprint = value2fingerprint.get(value);
+
+    if (registeredFingerprint != null) {
+      return registeredFingerprint;
+    }
+
+    final int fingerprint = fingerprint(value);
+    final String registeredValue = fingerprint2value.putIfAbsent(fingerprint, value);
+
+    if (registeredValue != null && !registeredValue.equals(value)) {
+      throw new IllegalStateException(String.format("Header values [%s] and [%s] have the same fingerprint.",
+                                                    registeredValue,
+                                                    value));
+    }
+
+    final HeaderFingerprint headerFingerprint = new HeaderFingerprint(ByteBuffer.allocate(4).putInt(fingerprint).array());
+    value2fingerprint.putIfAbsent(value, headerFingerprint);
+
+    return headerFingerprint;
+  }
+
+  public String resolve(final int fingerprint) {
+    final String value = fingerprint2value.get(fingerprint);
+    return value != null ? value : String.format("#%08x", fingerprint);
+  }
+}
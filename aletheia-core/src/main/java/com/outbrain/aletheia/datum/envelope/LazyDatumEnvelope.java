@@ -0,0 +1,255 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A {@code DatumEnvelope} backed by its Avro binary encoding, whose fields are decoded on first access, and only as
+ * far into the message as the accessed field requires. Header fields such as the datum type id, schema version and
+ * logical timestamp can therefore be inspected without decoding the rest of the envelope, and the datum bytes are
+ * a zero-copy slice of the original message buffer, which must not be modified while the envelope is in use.
+ * <p/>
+ * Fields are decoded according to the {@code DatumEnvelope} schema, so that a {@code LazyDatumEnvelope} is
+ * interchangeable with one read by a {@code SpecificDatumReader}. Compact envelopes are decoded according to the
+ * {@code CompactDatumEnvelope} schema, whose fields are in the same order, resolving header fingerprints through a
+ * {@code DatumEnvelopeHeaderRegistry}. A malformed message is only detected once the
+ * malformed field is accessed, at which point an {@code AvroRuntimeException} is thrown.
+ * <p/>
+ * Like the generated {@code DatumEnvelope}, a {@code LazyDatumEnvelope} is not thread safe.
+ */
+public class LazyDatumEnvelope extends DatumEnvelope {
+
+  private static final int DATUM_TYPE_ID = 0;
+  private static final int DATUM_SCHEMA_VERSION = 1;
+  private static final int LOGICAL_TIMESTAMP = 2;
+  private static final int INCARNATION = 3;
+  private static final int SOURCE_HOST = 4;
+  private static final int CREATION_TIME = 5;
+  private static final int DATUM_BYTES = 6;
+  private static final int SER_DE_TYPE = 7;
+  private static final int DATUM_KEY = 8;
+
+  private final List<Schema.Field> fields;
+  private final DatumEnvelopeHeaderRegistry headerRegistry;
+
+  // owned by this envelope, its position marks the beginning of the first field not decoded yet.
+  private final ByteBuffer message;
+  private int decodedFieldCount = 0;
+
+  /**
+   * @param buffer a buffer whose remaining bytes hold a binary encoded {@code DatumEnvelope}. The buffer's position
+   *               and limit are left unchanged.
+   */
+  public LazyDatumEnvelope(final ByteBuffer buffer) {
+    this(buffer, DatumEnvelope.getClassSchema(), DatumEnvelopeHeaderRegistry.DEFAULT);
+  }
+
+  LazyDatumEnvelope(final ByteBuffer buffer,
+                    final Schema wireSchema,
+                    final DatumEnvelopeHeaderRegistry headerRegistry) {
+    this.message = buffer.slice();
+    this.fields = wireSchema.getFields();
+    this.headerRegistry = headerRegistry;
+  }
+
+  private long readLong() {
+    long rawValue = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (shift >= Long.SIZE) {
+        throw new AvroRuntimeException("Invalid long encoding");
+      }
+      b = message.get();
+      rawValue |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    // zigzag decoding.
+    return (rawValue >>> 1) ^ -(rawValue & 1);
+  }
+
+  private int readLength() {
+    final long length = readLong();
+    if (length < 0 || length > message.remaining()) {
+      throw new AvroRuntimeException("Invalid length: " + length);
+    }
+    return (int) length;
+  }
+
+  private ByteBuffer readBytes() {
+    final int length = readLength();
+    final ByteBuffer bytes = message.slice();
+    bytes.limit(length);
+    message.position(message.position() + length);
+    return bytes;
+  }
+
+  private Utf8 readString() {
+    final byte[] bytes = new byte[readLength()];
+    message.get(bytes);
+    return new Utf8(bytes);
+  }
+
+  private Object read(final Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        return null;
+      case INT:
+        return (int) readLong();
+      case LONG:
+        return readLong();
+      case STRING:
+        return readString();
+      case BYTES:
+        return readBytes();
+      case FIXED:
+        // the only fixed type in envelope schemas is the 4 byte HeaderFingerprint.
+        return headerRegistry.resolve(message.getInt());
+      case UNION:
+        final long branch = readLong();
+        if (branch < 0 || branch >= schema.getTypes().size()) {
+          throw new AvroRuntimeException("Invalid union branch: " + branch);
+        }
+        return read(schema.getTypes().get((int) branch));
+      default:
+        throw new AvroRuntimeException("Unsupported envelope field type: " + schema.getType());
+    }
+  }
+
+  private void decodeUpTo(final int field) {
+    try {
+      while (decodedFieldCount <= field && decodedFieldCount < fields.size()) {
+        super.put(decodedFieldCount, read(fields.get(decodedFieldCount).schema()));
+        decodedFieldCount++;
+      }
+    } catch (final BufferUnderflowException e) {
+      throw new AvroRuntimeException("Truncated datum envelope", e);
+    }
+  }
+
+  @Override
+  public Object get(final int field) {
+    decodeUpTo(field);
+    return super.get(field);
+  }
+
+  @Override
+  public void put(final int field, final Object value) {
+    decodeUpTo(field);
+    super.put(field, value);
+  }
+
+  @Override
+  public CharSequence getDatumTypeId() {
+    decodeUpTo(DATUM_TYPE_ID);
+    return super.getDatumTypeId();
+  }
+
+  @Override
+  public void setDatumTypeId(final CharSequence value) {
+    decodeUpTo(DATUM_TYPE_ID);
+    super.setDatumTypeId(value);
+  }
+
+  @Override
+  public Integer getDatumSchemaVersion() {
+    decodeUpTo(DATUM_SCHEMA_VERSION);
+    return super.getDatumSchemaVersion();
+  }
+
+  @Override
+  public void setDatumSchemaVersion(final Integer value) {
+    decodeUpTo(DATUM_SCHEMA_VERSION);
+    super.setDatumSchemaVersion(value);
+  }
+
+  @Override
+  public Long getLogicalTimestamp() {
+    decodeUpTo(LOGICAL_TIMESTAMP);
+    return super.getLogicalTimestamp();
+  }
+
+  @Override
+  public void setLogicalTimestamp(final Long value) {
+    decodeUpTo(LOGICAL_TIMESTAMP);
+    super.setLogicalTimestamp(value);
+  }
+
+  @Override
+  public Integer getIncarnation() {
+    decodeUpTo(INCARNATION);
+    return super.getIncarnation();
+  }
+
+  @Override
+  public void setIncarnation(final Integer value) {
+    decodeUpTo(INCARNATION);
+    super.setIncarnation(value);
+  }
+
+  @Override
+  public CharSequence getSourceHost() {
+    decodeUpTo(SOURCE_HOST);
+    return super.getSourceHost();
+  }
+
+  @Override
+  public void setSourceHost(final CharSequence value) {
+    decodeUpTo(SOURCE_HOST);
+    super.setSourceHost(value);
+  }
+
+  @Override
+  public Long getCreationTime() {
+    decodeUpTo(CREATION_TIME);
+    return super.getCreationTime();
+  }
+
+  @Override
+  public void setCreationTime(final Long value) {
+    decodeUpTo(CREATION_TIME);
+    super.setCreationTime(value);
+  }
+
+  @Override
+  public ByteBuffer getDatumBytes() {
+    decodeUpTo(DATUM_BYTES);
+    return super.getDatumBytes();
+  }
+
+  @Override
+  public void setDatumBytes(final ByteBuffer value) {
+    decodeUpTo(DATUM_BYTES);
+    super.setDatumBytes(value);
+  }
+
+  @Override
+  public CharSequence getSerDeType() {
+    decodeUpTo(SER_DE_TYPE);
+    return super.getSerDeType();
+  }
+
+  @Override
+  public void setSerDeType(final CharSequence value) {
+    decodeUpTo(SER_DE_TYPE);
+    super.setSerDeType(value);
+  }
+
+  @Override
+  public CharSequence getDatumKey() {
+    decodeUpTo(DATUM_KEY);
+    return super.getDatumKey();
+  }
+
+  @Override
+  public void setDatumKey(final CharSequence value) {
+    decodeUpTo(DATUM_KEY);
+    super.setDatumKey(value);
+  }
+}
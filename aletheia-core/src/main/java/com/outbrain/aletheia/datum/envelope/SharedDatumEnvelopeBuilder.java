@@ -0,0 +1,65 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.DatumKeySelector;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.datum.serialization.DatumSerDe;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A {@code DatumEnvelopeBuilder} shared by several production endpoints using the same {@code DatumSerDe}, that
+ * serializes and envelopes each datum only once. The envelope built for a datum is handed to every endpoint asking
+ * for the same datum instance on the same thread, until {@link #forget()} is called, which should happen once the
+ * datum, or batch of datums, has been delivered to all endpoints.
+ *
+ * @param <TDomainClass> The type of datum to build a {@code DatumEnvelope} for.
+ */
+public class SharedDatumEnvelopeBuilder<TDomainClass> extends DatumEnvelopeBuilder<TDomainClass> {
+
+  private static final int MAX_CLEARED_SIZE = 64;
+
+  private final ThreadLocal<Map<TDomainClass, DatumEnvelope>> datum2envelope =
+          new ThreadLocal<Map<TDomainClass, DatumEnvelope>>() {
+            @Override
+            protected Map<TDomainClass, DatumEnvelope> initialValue() {
+              return new IdentityHashMap<>();
+            }
+          };
+
+  public SharedDatumEnvelopeBuilder(final Class<TDomainClass> domainClass,
+                                    final DatumSerDe<TDomainClass> datumSerDe,
+                                    final DatumKeySelector<TDomainClass> datumKeySelector,
+                                    final int incarnation,
+                                    final String hostname) {
+    super(domainClass, datumSerDe, datumKeySelector, incarnation, hostname);
+  }
+
+  @Override
+  public DatumEnvelope buildEnvelope(final TDomainClass domainObject) {
+
+    final Map<TDomainClass, DatumEnvelope> builtEnvelopes = datum2envelope.get();
+
+    DatumEnvelope datumEnvelope = builtEnvelopes.get(domainObject);
+
+    if (datumEnvelope == null) {
+      datumEnvelope = super.buildEnvelope(domainObject);
+      builtEnvelopes.put(domainObject, datumEnvelope);
+    }
+
+    return datumEnvelope;
+  }
+
+  /**
+   * Forgets the envelopes built on the calling thread, so that the next ones are built anew even if they are for the
+   * same (possibly modified) datum instances.
+   */
+  public void forget() {
+    // clearing takes time proportional to the map's capacity, so maps grown by large batches are dropped instead.
+    if (datum2envelope.get().size() > MAX_CLEARED_SIZE) {
+      datum2envelope.remove();
+    } else {
+      datum2envelope.get().clear();
+    }
+  }
+}
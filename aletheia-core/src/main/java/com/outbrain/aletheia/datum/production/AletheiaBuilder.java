@@ -1,17 +1,29 @@
 package com.outbrain.aletheia.datum.production;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.outbrain.aletheia.EndPoint;
 import com.outbrain.aletheia.breadcrumbs.*;
 import com.outbrain.aletheia.datum.DatumAuditor;
+import com.outbrain.aletheia.datum.DatumType;
 import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.datum.consumption.ConsumptionEndPoint;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.datum.serialization.DatumSerDe;
 import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
 import com.outbrain.aletheia.metrics.AletheiaMetricFactoryProvider;
 import com.outbrain.aletheia.metrics.MetricFactoryPrefixer;
 import com.outbrain.aletheia.metrics.MetricFactoryProvider;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Instant;
 
+import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @param <TDomainClass> The datum type this builder will be building a
@@ -78,41 +90,149 @@ public abstract class AletheiaBuilder<TDomainClass, TBuilder extends AletheiaBui
 
     public BreadcrumbProducingHandler(final DatumProducerConfig datumProducerConfig,
                                       final MetricsFactory metricsFactory) {
+      breadcrumbDatumProducer = internalBreadcrumbProducer(Breadcrumb.class,
+                                                           isBinaryBreadcrumbSerialization() ?
+                                                           new BinaryBreadcrumbSerDe() :
+                                                           new JsonDatumSerDe<>(Breadcrumb.class),
+                                                           datumProducerConfig,
+                                                           metricsFactory);
+    }
 
-      final DatumProducerBuilder<Breadcrumb> breadcrumbProducerBuilder =
-              configurableBreadcrumbProducerBuilder(metricsFactory);
+    @Override
+    public void handle(final Breadcrumb breadcrumb) {
+      breadcrumbDatumProducer.deliver(breadcrumb);
+    }
+
+  }
 
-      breadcrumbDatumProducer = registerEndPointTypes(breadcrumbProducerBuilder).build(datumProducerConfig);
+  /**
+   * Collects the breadcrumbs dispatched between two consecutive flushes, and delivers them as
+   * {@code BreadcrumbBatch}es of up to {@link #MAX_BREADCRUMB_BATCH_SIZE} breadcrumbs each.
+   */
+  protected class BreadcrumbBatchProducingHandler implements FlushableBreadcrumbHandler {
+
+    private final Queue<Breadcrumb> pendingBreadcrumbs = new ConcurrentLinkedQueue<>();
+    private final DatumProducer<BreadcrumbBatch> breadcrumbBatchDatumProducer;
+
+    public BreadcrumbBatchProducingHandler(final DatumProducerConfig datumProducerConfig,
+                                           final MetricsFactory metricsFactory) {
+      breadcrumbBatchDatumProducer = internalBreadcrumbProducer(BreadcrumbBatch.class,
+                                                                isBinaryBreadcrumbSerialization() ?
+                                                                new BinaryBreadcrumbBatchSerDe() :
+                                                                new JsonDatumSerDe<>(BreadcrumbBatch.class),
+                                                                datumProducerConfig,
+                                                                metricsFactory);
     }
 
-    private DatumProducerBuilder<Breadcrumb> configurableBreadcrumbProducerBuilder(final MetricsFactory metricsFactory) {
-      return DatumProducerBuilder
-              .forDomainClass(Breadcrumb.class)
-              .reportMetricsTo(metricsFactory)
-              .deliverDataTo(breadcrumbsProductionEndPoint, new JsonDatumSerDe<>(Breadcrumb.class));
+    @Override
+    public void handle(final Breadcrumb breadcrumb) {
+      pendingBreadcrumbs.add(breadcrumb);
     }
 
-    private DatumProducerBuilder<Breadcrumb> registerEndPointTypes(final DatumProducerBuilder<Breadcrumb> breadcrumbDatumProducerBuilder) {
+    @Override
+    public void flush() {
 
-      DatumProducerBuilder<Breadcrumb> configuredBreadcrumbDatumProducerBuilder = breadcrumbDatumProducerBuilder;
+      List<Breadcrumb> breadcrumbs = Lists.newArrayList();
+      Breadcrumb breadcrumb;
 
-      for (final Class<? extends ProductionEndPoint> productionEndPointType : endpoint2datumEnvelopeSenderFactory.keySet()) {
-        configuredBreadcrumbDatumProducerBuilder =
-                breadcrumbDatumProducerBuilder
-                        .registerProductionEndPointType(productionEndPointType,
-                                                        endpoint2datumEnvelopeSenderFactory.get(productionEndPointType));
+      while ((breadcrumb = pendingBreadcrumbs.poll()) != null) {
+        breadcrumbs.add(breadcrumb);
+        if (breadcrumbs.size() == MAX_BREADCRUMB_BATCH_SIZE) {
+          breadcrumbBatchDatumProducer.deliver(new BreadcrumbBatch(Instant.now(), breadcrumbs));
+          breadcrumbs = Lists.newArrayList();
+        }
       }
 
-      return configuredBreadcrumbDatumProducerBuilder;
+      if (!breadcrumbs.isEmpty()) {
+        breadcrumbBatchDatumProducer.deliver(new BreadcrumbBatch(Instant.now(), breadcrumbs));
+      }
+    }
+
+    @Override
+    public void flushAll() {
+      flush();
+    }
+  }
+
+  /**
+   * A JVM wide {@code AggregatingBreadcrumbHandler}, along with the number of datum auditors referencing it.
+   */
+  private static class JvmWideBreadcrumbHandler {
+
+    private final String key;
+    private final AggregatingBreadcrumbHandler breadcrumbHandler;
+    private int referenceCount = 0;
+
+    private JvmWideBreadcrumbHandler(final String key, final AggregatingBreadcrumbHandler breadcrumbHandler) {
+      this.key = key;
+      this.breadcrumbHandler = breadcrumbHandler;
+    }
+  }
+
+  /**
+   * A single datum auditor's reference to a {@code JvmWideBreadcrumbHandler}. Closing the last reference to a
+   * handler ships whatever it still holds, and discards it.
+   */
+  private static class JvmWideBreadcrumbHandlerReference implements FlushableBreadcrumbHandler, Closeable {
+
+    private final JvmWideBreadcrumbHandler jvmWideBreadcrumbHandler;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private JvmWideBreadcrumbHandlerReference(final JvmWideBreadcrumbHandler jvmWideBreadcrumbHandler) {
+      this.jvmWideBreadcrumbHandler = jvmWideBreadcrumbHandler;
+    }
+
+    private static JvmWideBreadcrumbHandlerReference to(final JvmWideBreadcrumbHandler jvmWideBreadcrumbHandler) {
+      synchronized (jvmWideBreadcrumbHandlers) {
+        jvmWideBreadcrumbHandler.referenceCount++;
+      }
+      return new JvmWideBreadcrumbHandlerReference(jvmWideBreadcrumbHandler);
     }
 
     @Override
     public void handle(final Breadcrumb breadcrumb) {
-      breadcrumbDatumProducer.deliver(breadcrumb);
+      jvmWideBreadcrumbHandler.breadcrumbHandler.handle(breadcrumb);
+    }
+
+    @Override
+    public void flush() {
+      jvmWideBreadcrumbHandler.breadcrumbHandler.flush();
     }
 
+    @Override
+    public void flushAll() {
+      jvmWideBreadcrumbHandler.breadcrumbHandler.flushAll();
+    }
+
+    @Override
+    public void close() {
+
+      if (!closed.compareAndSet(false, true)) {
+        return;
+      }
+
+      synchronized (jvmWideBreadcrumbHandlers) {
+        if (--jvmWideBreadcrumbHandler.referenceCount > 0) {
+          return;
+        }
+        jvmWideBreadcrumbHandlers.remove(jvmWideBreadcrumbHandler.key);
+      }
+
+      jvmWideBreadcrumbHandler.breadcrumbHandler.flushAll();
+    }
   }
 
+  private static final int MAX_BREADCRUMB_BATCH_SIZE = 1000;
+  private static final Map<String, JvmWideBreadcrumbHandler> jvmWideBreadcrumbHandlers = Maps.newHashMap();
+
+  private static final DatumType.TimestampMillisExtractor<DatumEnvelope> ENVELOPE_LOGICAL_TIMESTAMP_EXTRACTOR =
+          new DatumType.TimestampMillisExtractor<DatumEnvelope>() {
+            @Override
+            public long extractDatumTimestampMillis(final DatumEnvelope datumEnvelope) {
+              return datumEnvelope.getLogicalTimestamp();
+            }
+          };
+
   protected final Class<TDomainClass> domainClass;
   protected final Map<Class, DatumEnvelopeSenderFactory> endpoint2datumEnvelopeSenderFactory = Maps.newHashMap();
   protected ProductionEndPoint breadcrumbsProductionEndPoint;
@@ -124,21 +244,206 @@ public abstract class AletheiaBuilder<TDomainClass, TBuilder extends AletheiaBui
     registerKnownProductionEndPointsTypes();
   }
 
-  protected BreadcrumbDispatcher<TDomainClass> getDatumAuditor(final DatumProducerConfig datumProducerConfig,
-                                                               final EndPoint endPoint,
-                                                               final MetricFactoryProvider metricFactoryProvider) {
+  private <TBreadcrumb> DatumProducer<TBreadcrumb> internalBreadcrumbProducer(final Class<TBreadcrumb> breadcrumbClass,
+                                                                              final DatumSerDe<TBreadcrumb> breadcrumbSerDe,
+                                                                              final DatumProducerConfig datumProducerConfig,
+                                                                              final MetricsFactory metricsFactory) {
+
+    final DatumProducerBuilder<TBreadcrumb> breadcrumbProducerBuilder =
+            DatumProducerBuilder
+                    .forDomainClass(breadcrumbClass)
+                    .reportMetricsTo(metricsFactory)
+                    .deliverDataTo(breadcrumbsProductionEndPoint, breadcrumbSerDe);
+
+    for (final Class<? extends ProductionEndPoint> productionEndPointType : endpoint2datumEnvelopeSenderFactory.keySet()) {
+      breadcrumbProducerBuilder.registerProductionEndPointType(productionEndPointType,
+                                                               endpoint2datumEnvelopeSenderFactory.get(
+                                                                       productionEndPointType));
+    }
+
+    return breadcrumbProducerBuilder.build(datumProducerConfig);
+  }
+
+  private boolean isBinaryBreadcrumbSerialization() {
+    return breadcrumbsConfig.getSerializationFormat() == BreadcrumbsConfig.SerializationFormat.Binary;
+  }
+
+  private BreadcrumbHandler producingBreadcrumbHandler(final DatumProducerConfig datumProducerConfig,
+                                                       final MetricsFactory metricsFactory) {
+    return breadcrumbsConfig.isBatchedDelivery() ?
+           new BreadcrumbBatchProducingHandler(datumProducerConfig, metricsFactory) :
+           new BreadcrumbProducingHandler(datumProducerConfig, metricsFactory);
+  }
+
+  /**
+   * The JVM wide breadcrumb handlers are keyed by the breadcrumbs endpoint, the way breadcrumbs are delivered to it,
+   * the interval between shipments and the producer config. The internal breadcrumb producer of each reports to the
+   * metrics factory of its first user. Each datum auditor holds a reference of its own to the handler, which is
+   * discarded once the last of them has been closed.
+   */
+  private BreadcrumbHandler jvmWideBreadcrumbHandler(final DatumProducerConfig datumProducerConfig,
+                                                     final MetricsFactory metricsFactory) {
+
+    final String breadcrumbHandlerKey = String.format("%s.%s.%s.%s.%d.%d.%s",
+                                                      breadcrumbsProductionEndPoint.getClass().getName(),
+                                                      breadcrumbsProductionEndPoint.getName(),
+                                                      breadcrumbsConfig.getSerializationFormat(),
+                                                      breadcrumbsConfig.isBatchedDelivery(),
+                                                      breadcrumbsConfig.getBreadcrumbBucketFlushInterval().getMillis(),
+                                                      datumProducerConfig.getIncarnation(),
+                                                      datumProducerConfig.getHostname());
+
+    synchronized (jvmWideBreadcrumbHandlers) {
+      JvmWideBreadcrumbHandler jvmWideBreadcrumbHandler = jvmWideBreadcrumbHandlers.get(breadcrumbHandlerKey);
+      if (jvmWideBreadcrumbHandler == null) {
+        jvmWideBreadcrumbHandler =
+                new JvmWideBreadcrumbHandler(breadcrumbHandlerKey,
+                                             new AggregatingBreadcrumbHandler(
+                                                     producingBreadcrumbHandler(datumProducerConfig, metricsFactory),
+                                                     breadcrumbsConfig.getBreadcrumbBucketFlushInterval()));
+        jvmWideBreadcrumbHandlers.put(breadcrumbHandlerKey, jvmWideBreadcrumbHandler);
+      }
+      return JvmWideBreadcrumbHandlerReference.to(jvmWideBreadcrumbHandler);
+    }
+  }
+
+  /**
+   * @return a breadcrumb handler for one more datum auditor to share with the one using the given handler.
+   */
+  private static BreadcrumbHandler shareBreadcrumbHandler(final BreadcrumbHandler breadcrumbHandler) {
+    return breadcrumbHandler instanceof JvmWideBreadcrumbHandlerReference ?
+           JvmWideBreadcrumbHandlerReference.to(
+                   ((JvmWideBreadcrumbHandlerReference) breadcrumbHandler).jvmWideBreadcrumbHandler) :
+           breadcrumbHandler;
+  }
+
+  private BreadcrumbHandler breadcrumbHandler(final DatumProducerConfig datumProducerConfig,
+                                              final MetricsFactory metricsFactory) {
+    return breadcrumbsConfig.isAggregatingJvmWide() ?
+           jvmWideBreadcrumbHandler(datumProducerConfig, metricsFactory) :
+           producingBreadcrumbHandler(datumProducerConfig, metricsFactory);
+  }
+
+  private BreadcrumbCheckpoint breadcrumbCheckpoint(final String breadcrumbTypeId, final EndPoint endPoint) {
+
+    if (!breadcrumbsConfig.isCheckpointing()) {
+      return BreadcrumbCheckpoint.NULL;
+    }
+
+    final String checkpointNamePrefix = String.format("%s.%s.%s",
+                                                      breadcrumbTypeId,
+                                                      endPoint.getClass().getSimpleName(),
+                                                      endPoint.getName());
+
+    // auditors of the same type and endpoint, e.g., of several producer instances, keep a file each.
+    return MappedBreadcrumbCheckpoint.openUnused(breadcrumbsConfig.getCheckpointDirectory(),
+                                                 checkpointNamePrefix,
+                                                 breadcrumbsConfig.getCheckpointCapacity());
+  }
+
+  private BreadcrumbDispatcher<TDomainClass> datumAuditor(final String breadcrumbTypeId,
+                                                          final EndPoint endPoint,
+                                                          final BreadcrumbHandler breadcrumbHandler,
+                                                          final MetricsFactory breadcrumbMetricsFactory) {
+    return datumAuditor(breadcrumbTypeId,
+                        DatumUtils.getDatumTimestampMillisExtractor(domainClass),
+                        endPoint,
+                        breadcrumbHandler,
+                        breadcrumbMetricsFactory);
+  }
+
+  private <T> BreadcrumbDispatcher<T> datumAuditor(final String breadcrumbTypeId,
+                                                   final DatumType.TimestampMillisExtractor<T> timestampExtractor,
+                                                   final EndPoint endPoint,
+                                                   final BreadcrumbHandler breadcrumbHandler,
+                                                   final MetricsFactory breadcrumbMetricsFactory) {
     return new DatumAuditor<>(
-            breadcrumbsConfig.getBreadcrumbBucketDuration(),
-            DatumUtils.getDatumTimestampExtractor(domainClass),
+            breadcrumbsConfig.getBreadcrumbBucketDurations(),
+            timestampExtractor,
             new StartTimeWithDurationBreadcrumbBaker(breadcrumbsConfig.getSource(),
                                                      endPoint.getName(),
                                                      breadcrumbsConfig.getTier(),
                                                      breadcrumbsConfig.getDatacenter(),
                                                      breadcrumbsConfig.getApplication(),
-                                                     DatumUtils.getDatumTypeId(domainClass)),
-            new BreadcrumbProducingHandler(datumProducerConfig,
-                                           metricFactoryProvider.forInternalBreadcrumbProducer(endPoint)),
-            breadcrumbsConfig.getBreadcrumbBucketFlushInterval());
+                                                     breadcrumbTypeId),
+            breadcrumbHandler,
+            breadcrumbsConfig.getBreadcrumbBucketFlushInterval(),
+            breadcrumbsConfig.getBucketFinalizationPolicy(),
+            breadcrumbCheckpoint(breadcrumbTypeId, endPoint),
+            breadcrumbsConfig.getCheckpointInterval(),
+            endPoint instanceof ConsumptionEndPoint && breadcrumbsConfig.isSketchingLatencies(),
+            breadcrumbMetricsFactory);
+  }
+
+  /**
+   * @return whether the domain class is one of the breadcrumb types, which are not audited themselves.
+   */
+  protected boolean isBreadcrumbDomainClass() {
+    return domainClass.equals(Breadcrumb.class) || domainClass.equals(BreadcrumbBatch.class);
+  }
+
+  protected BreadcrumbDispatcher<TDomainClass> getDatumAuditor(final DatumProducerConfig datumProducerConfig,
+                                                               final EndPoint endPoint,
+                                                               final MetricFactoryProvider metricFactoryProvider) {
+    final MetricsFactory breadcrumbMetricsFactory = metricFactoryProvider.forInternalBreadcrumbProducer(endPoint);
+
+    return datumAuditor(DatumUtils.getDatumTypeId(domainClass),
+                        endPoint,
+                        breadcrumbHandler(datumProducerConfig, breadcrumbMetricsFactory),
+                        breadcrumbMetricsFactory);
+  }
+
+  /**
+   * @return an auditor of envelopes, rather than datums, e.g., of those rejected before their datum is opened, whose
+   * hits are bucketed by the envelopes' logical timestamp.
+   */
+  protected BreadcrumbDispatcher<DatumEnvelope> getEnvelopeAuditor(final String breadcrumbTypeId,
+                                                                   final DatumProducerConfig datumProducerConfig,
+                                                                   final EndPoint endPoint,
+                                                                   final MetricFactoryProvider metricFactoryProvider) {
+    final MetricsFactory breadcrumbMetricsFactory = metricFactoryProvider.forInternalBreadcrumbProducer(endPoint);
+
+    return datumAuditor(breadcrumbTypeId,
+                        ENVELOPE_LOGICAL_TIMESTAMP_EXTRACTOR,
+                        endPoint,
+                        breadcrumbHandler(datumProducerConfig, breadcrumbMetricsFactory),
+                        breadcrumbMetricsFactory);
+  }
+
+  /**
+   * @return the datum auditors of the delivery outcomes, where outcomes other than
+   * {@link DeliveryOutcome#Delivered} are audited only if the breadcrumbs config says so. All auditors share a single
+   * breadcrumb handler, hence a single internal breadcrumb producer.
+   */
+  protected Map<DeliveryOutcome, BreadcrumbDispatcher<TDomainClass>> getDeliveryOutcomeAuditors(
+          final DatumProducerConfig datumProducerConfig,
+          final EndPoint endPoint,
+          final MetricFactoryProvider metricFactoryProvider) {
+
+    final MetricsFactory breadcrumbMetricsFactory = metricFactoryProvider.forInternalBreadcrumbProducer(endPoint);
+    final BreadcrumbHandler breadcrumbHandler = breadcrumbHandler(datumProducerConfig, breadcrumbMetricsFactory);
+    final String datumTypeId = DatumUtils.getDatumTypeId(domainClass);
+
+    final Map<DeliveryOutcome, BreadcrumbDispatcher<TDomainClass>> outcome2datumAuditor =
+            new EnumMap<>(DeliveryOutcome.class);
+
+    outcome2datumAuditor.put(DeliveryOutcome.Delivered,
+                             datumAuditor(datumTypeId, endPoint, breadcrumbHandler, breadcrumbMetricsFactory));
+
+    if (breadcrumbsConfig.isAuditingDeliveryOutcomes()) {
+      for (final DeliveryOutcome deliveryOutcome : DeliveryOutcome.values()) {
+        if (deliveryOutcome != DeliveryOutcome.Delivered) {
+          outcome2datumAuditor.put(deliveryOutcome,
+                                   datumAuditor(deliveryOutcome.breadcrumbTypeId(datumTypeId),
+                                                endPoint,
+                                                shareBreadcrumbHandler(breadcrumbHandler),
+                                                MetricFactoryPrefixer.prefix(breadcrumbMetricsFactory)
+                                                                     .with(deliveryOutcome.name())));
+        }
+      }
+    }
+
+    return outcome2datumAuditor;
   }
 
   protected abstract TBuilder This();
@@ -0,0 +1,252 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.Gauge;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@code DatumProducer} that takes the delivery of datums off the calling thread. Datums are buffered in a
+ * preallocated, bounded ring buffer, and delivered by dedicated sender threads using an underlying
+ * {@code DatumProducer}. When the buffer is full, the configured {@code AsyncDeliveryConfig.FullQueuePolicy} applies.
+ * Sender threads take all datums pending at once, up to {@value #MAX_BATCH_SIZE}, and deliver them as a batch.
+ * <p/>
+ * Once closed, datums are delivered on the calling thread. Handing a datum over takes no lock, so closing does not
+ * wait for callers in the middle of it, including those blocked on a full buffer. Instead, a caller that finds the
+ * producer closed once its datum is enqueued waits for the sender threads to stop, and delivers whatever they left
+ * behind itself.
+ */
+public class AsyncDatumProducer<TDomainClass> implements BatchDatumProducer<TDomainClass>, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncDatumProducer.class);
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+  private static final long FLUSH_WAIT_MILLIS = 10;
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  private final DatumProducer<TDomainClass> datumProducer;
+  private final AsyncDeliveryConfig.FullQueuePolicy fullQueuePolicy;
+  private final BlockingQueue<TDomainClass> pendingDatums;
+  private final List<Thread> senderThreads = Lists.newArrayList();
+  // datums accepted by deliver that have not been delivered or dropped yet.
+  private final AtomicLong undeliveredCount = new AtomicLong();
+  private final Object flushLock = new Object();
+
+  private final Counter droppedNewestCounter;
+  private final Counter droppedOldestCounter;
+  private final Counter callerRunsCounter;
+
+  private volatile boolean closed = false;
+
+  public AsyncDatumProducer(final DatumProducer<TDomainClass> datumProducer,
+                            final AsyncDeliveryConfig asyncDeliveryConfig,
+                            final String name,
+                            final MetricsFactory metricsFactory) {
+
+    this.datumProducer = datumProducer;
+    this.fullQueuePolicy = asyncDeliveryConfig.getFullQueuePolicy();
+    this.pendingDatums = new ArrayBlockingQueue<>(asyncDeliveryConfig.getCapacity());
+
+    droppedNewestCounter = metricsFactory.createCounter("Deliver.Requests.Dropped", "Newest");
+    droppedOldestCounter = metricsFactory.createCounter("Deliver.Requests.Dropped", "Oldest");
+    callerRunsCounter = metricsFactory.createCounter("Deliver.Requests", "CallerRuns");
+    metricsFactory.createGauge("Deliver.Requests.Queue", "Depth", new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return pendingDatums.size();
+      }
+    });
+
+    for (int i = 0; i < asyncDeliveryConfig.getSenderThreadCount(); i++) {
+      final Thread senderThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          deliverPendingDatums();
+        }
+      }, String.format("AsyncDatumProducer-%s-%d", name, i));
+      senderThread.setDaemon(true);
+      senderThread.start();
+      senderThreads.add(senderThread);
+    }
+  }
+
+  private void deliverPendingDatums() {
+    while (!closed || !pendingDatums.isEmpty()) {
+      try {
+        final TDomainClass datum = pendingDatums.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (datum != null) {
+          final List<TDomainClass> datums = Lists.newArrayList(datum);
+          pendingDatums.drainTo(datums, MAX_BATCH_SIZE - 1);
+          deliverPending(datums);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (final RuntimeException e) {
+        logger.error("Unexpected error in sender thread, carrying on.", e);
+      } catch (final Error e) {
+        logger.error("Fatal error in sender thread, stopping it.", e);
+        throw e;
+      }
+    }
+  }
+
+  private boolean isAnySenderThreadAlive() {
+    for (final Thread senderThread : senderThreads) {
+      if (senderThread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void deliverPendingDatumsOnCallingThread() {
+    TDomainClass datum;
+    while ((datum = pendingDatums.poll()) != null) {
+      deliverPending(datum);
+    }
+  }
+
+  private void deliverPending(final TDomainClass datum) {
+    try {
+      datumProducer.deliver(datum);
+    } catch (final Exception e) {
+      logger.error("Could not deliver datum asynchronously: " + datum, e);
+    } finally {
+      onUndeliveredCountDecreased(undeliveredCount.decrementAndGet());
+    }
+  }
+
+  private void deliverPending(final List<TDomainClass> datums) {
+    try {
+      DatumProducers.deliverAll(datumProducer, datums);
+    } catch (final Exception e) {
+      logger.error("Could not deliver a batch of " + datums.size() + " datums asynchronously.", e);
+    } finally {
+      onUndeliveredCountDecreased(undeliveredCount.addAndGet(-datums.size()));
+    }
+  }
+
+  private void onUndeliveredCountDecreased(final long undelivered) {
+    if (undelivered == 0) {
+      synchronized (flushLock) {
+        flushLock.notifyAll();
+      }
+    }
+  }
+
+  private void enqueueWhenFull(final TDomainClass datum) throws InterruptedException {
+    switch (fullQueuePolicy) {
+      case Block:
+        while (!pendingDatums.offer(datum, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (closed && !isAnySenderThreadAlive()) {
+            // no sender thread is left to make room.
+            deliverPending(datum);
+            return;
+          }
+        }
+        break;
+      case DropNewest:
+        droppedNewestCounter.inc();
+        onUndeliveredCountDecreased(undeliveredCount.decrementAndGet());
+        break;
+      case DropOldest:
+        do {
+          if (pendingDatums.poll() != null) {
+            droppedOldestCounter.inc();
+            onUndeliveredCountDecreased(undeliveredCount.decrementAndGet());
+          }
+        } while (!pendingDatums.offer(datum));
+        break;
+      case CallerRuns:
+        callerRunsCounter.inc();
+        deliverPending(datum);
+        break;
+      default:
+        throw new IllegalStateException("Unknown full queue policy: " + fullQueuePolicy);
+    }
+  }
+
+  private void awaitSenderThreadsAndDeliverPendingDatums() {
+    try {
+      for (final Thread senderThread : senderThreads) {
+        senderThread.join();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // datums left behind by interrupted, or failed, sender threads, or enqueued as they were stopping.
+    deliverPendingDatumsOnCallingThread();
+  }
+
+  @Override
+  public void deliver(final TDomainClass datum) {
+
+    if (closed) {
+      datumProducer.deliver(datum);
+      return;
+    }
+
+    undeliveredCount.incrementAndGet();
+
+    if (!pendingDatums.offer(datum)) {
+      try {
+        enqueueWhenFull(datum);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        droppedNewestCounter.inc();
+        onUndeliveredCountDecreased(undeliveredCount.decrementAndGet());
+      }
+    }
+
+    // the sender threads may have stopped after the check above, leaving the datum behind.
+    if (closed) {
+      awaitSenderThreadsAndDeliverPendingDatums();
+    }
+  }
+
+  /**
+   * Hands the datums over to the sender threads one by one, each subject to the full queue policy.
+   */
+  @Override
+  public void deliverAll(final Collection<TDomainClass> datums) {
+    for (final TDomainClass datum : datums) {
+      deliver(datum);
+    }
+  }
+
+  /**
+   * Waits until all datums delivered so far have been handed over to the underlying {@code DatumProducer}. Should the
+   * sender threads have all stopped, pending datums are delivered on the calling thread.
+   */
+  public void flush() throws InterruptedException {
+    synchronized (flushLock) {
+      while (undeliveredCount.get() > 0) {
+        if (!isAnySenderThreadAlive()) {
+          deliverPendingDatumsOnCallingThread();
+        }
+        flushLock.wait(FLUSH_WAIT_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Delivers all pending datums and stops the sender threads.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    awaitSenderThreadsAndDeliverPendingDatums();
+  }
+}
@@ -0,0 +1,68 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Configuration details for an {@code AsyncDatumProducer}.
+ */
+public class AsyncDeliveryConfig {
+
+  /**
+   * What {@code deliver} should do when the buffer of pending datums is full.
+   */
+  public enum FullQueuePolicy {
+    /**
+     * Wait for the sender threads to make room for the datum.
+     */
+    Block,
+    /**
+     * Drop the datum being delivered.
+     */
+    DropNewest,
+    /**
+     * Drop the oldest pending datum to make room for the one being delivered.
+     */
+    DropOldest,
+    /**
+     * Deliver the datum on the calling thread.
+     */
+    CallerRuns
+  }
+
+  private final int capacity;
+  private final int senderThreadCount;
+  private final FullQueuePolicy fullQueuePolicy;
+
+  /**
+   * @param capacity          the number of datums that can be pending delivery, preallocated up front.
+   * @param senderThreadCount the number of threads delivering pending datums.
+   * @param fullQueuePolicy   what to do when {@code capacity} datums are already pending delivery.
+   */
+  public AsyncDeliveryConfig(final int capacity, final int senderThreadCount, final FullQueuePolicy fullQueuePolicy) {
+
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    Preconditions.checkArgument(senderThreadCount > 0, "sender thread count must be positive");
+
+    this.capacity = capacity;
+    this.senderThreadCount = senderThreadCount;
+    this.fullQueuePolicy = fullQueuePolicy;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getSenderThreadCount() {
+    return senderThreadCount;
+  }
+
+  public FullQueuePolicy getFullQueuePolicy() {
+    return fullQueuePolicy;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
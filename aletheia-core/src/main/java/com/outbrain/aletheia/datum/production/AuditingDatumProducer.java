@@ -1,6 +1,7 @@
 package com.outbrain.aletheia.datum.production;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
 import com.outbrain.aletheia.datum.envelope.DatumEnvelopeBuilder;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
@@ -10,12 +11,19 @@ import com.outbrain.aletheia.metrics.common.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@code Breadcrumb} generating, {@code DatumEnvelope} transportation based
  * {@code DatumProducer} implementation.
+ * <p/>
+ * Every delivery is audited by the {@code BreadcrumbDispatcher} of its {@code DeliveryOutcome}, so that datums
+ * that were filtered out or failed along the way can be told apart from the ones that were delivered.
  */
-public class AuditingDatumProducer<TDomainClass> implements DatumProducer<TDomainClass> {
+public class AuditingDatumProducer<TDomainClass> implements BatchDatumProducer<TDomainClass> {
 
   private static final Logger logger = LoggerFactory.getLogger(AuditingDatumProducer.class);
 
@@ -23,7 +31,7 @@ public class AuditingDatumProducer<TDomainClass> implements DatumProducer<TDomai
   private final Counter deliverRequestSuccessCounter;
   private final Counter filteredCounter;
 
-  private final BreadcrumbDispatcher<TDomainClass> datumAuditor;
+  private final Map<DeliveryOutcome, BreadcrumbDispatcher<TDomainClass>> outcome2datumAuditor;
   private final Sender<DatumEnvelope> envelopeSender;
   private final DatumEnvelopeBuilder<TDomainClass> datumEnvelopeBuilder;
   private final Predicate<TDomainClass> filter;
@@ -34,8 +42,25 @@ public class AuditingDatumProducer<TDomainClass> implements DatumProducer<TDomai
                                final Predicate<TDomainClass> filter,
                                final BreadcrumbDispatcher<TDomainClass> datumAuditor,
                                final MetricsFactory metricFactory) {
+    this(datumEnvelopeBuilder, envelopeSender, filter, deliveredOnly(datumAuditor), metricFactory);
+  }
 
-    this.datumAuditor = datumAuditor;
+  /**
+   * @param outcome2datumAuditor the {@code BreadcrumbDispatcher} auditing each {@code DeliveryOutcome}, outcomes
+   *                             that are missing are not audited.
+   */
+  public AuditingDatumProducer(final DatumEnvelopeBuilder<TDomainClass> datumEnvelopeBuilder,
+                               final Sender<DatumEnvelope> envelopeSender,
+                               final Predicate<TDomainClass> filter,
+                               final Map<DeliveryOutcome, BreadcrumbDispatcher<TDomainClass>> outcome2datumAuditor,
+                               final MetricsFactory metricFactory) {
+
+    this.outcome2datumAuditor = new EnumMap<>(DeliveryOutcome.class);
+    for (final DeliveryOutcome deliveryOutcome : DeliveryOutcome.values()) {
+      final BreadcrumbDispatcher<TDomainClass> datumAuditor = outcome2datumAuditor.get(deliveryOutcome);
+      this.outcome2datumAuditor.put(deliveryOutcome,
+                                    datumAuditor != null ? datumAuditor : BreadcrumbDispatcher.NULL);
+    }
     this.envelopeSender = envelopeSender;
     this.datumEnvelopeBuilder = datumEnvelopeBuilder;
     this.filter = filter;
@@ -46,36 +71,152 @@ public class AuditingDatumProducer<TDomainClass> implements DatumProducer<TDomai
     deliverRequestSuccessCounter = metricFactory.createCounter("Deliver.Requests.Attempts", "Success");
   }
 
+  private static <T> Map<DeliveryOutcome, BreadcrumbDispatcher<T>> deliveredOnly(final BreadcrumbDispatcher<T> datumAuditor) {
+    final Map<DeliveryOutcome, BreadcrumbDispatcher<T>> outcome2datumAuditor = new EnumMap<>(DeliveryOutcome.class);
+    outcome2datumAuditor.put(DeliveryOutcome.Delivered, datumAuditor);
+    return outcome2datumAuditor;
+  }
+
+  private void audit(final DeliveryOutcome deliveryOutcome, final TDomainClass datum, final int payloadSizeBytes) {
+    try {
+      outcome2datumAuditor.get(deliveryOutcome).report(datum, payloadSizeBytes);
+    } catch (final Exception e) {
+      logger.error("Could not audit datum with outcome " + deliveryOutcome + ": " + datum, e);
+    }
+  }
+
 
   public void deliver(final TDomainClass datum) {
 
     final Timer.Context timerContext = deliverDurationTimer.time();
 
+    DeliveryOutcome deliveryOutcome = DeliveryOutcome.FilterFailed;
+    int payloadSizeBytes = BreadcrumbDispatcher.UNKNOWN_PAYLOAD_SIZE;
+
     try {
 
       if (!filter.apply(datum)) {
+        deliveryOutcome = DeliveryOutcome.Filtered;
         filteredCounter.inc();
         return;
       }
 
-      datumAuditor.report(datum);
-
+      deliveryOutcome = DeliveryOutcome.SerializationFailed;
       final DatumEnvelope datumEnvelope = datumEnvelopeBuilder.buildEnvelope(datum);
+      payloadSizeBytes = datumEnvelope.getDatumBytes().remaining();
 
+      deliveryOutcome = DeliveryOutcome.TransportFailed;
       envelopeSender.send(datumEnvelope);
+      deliveryOutcome = DeliveryOutcome.Delivered;
 
       deliverRequestSuccessCounter.inc();
 
     } catch (final SilentSenderException e) {
-      metricFactory.createCounter("Deliver.Requests.Attempts.Failures." + SilentSenderException.class.getSimpleName(),
-                                  e.getCause().getClass().getSimpleName())
-                   .inc();
+      countSilentFailure(e, 1);
     } catch (final Exception e) {
-      metricFactory.createCounter("Deliver.Requests.Attempts.Failures", e.getCause().getClass().getSimpleName())
-                   .inc();
+      countFailure(e, 1);
       logger.error("Could not deliver datum." + datum, e);
     } finally {
+      audit(deliveryOutcome, datum, payloadSizeBytes);
       timerContext.stop();
     }
   }
+
+  /**
+   * Filters and envelopes the datums one by one, but measures, counts and sends them as a batch. Datums that failed
+   * to be enveloped are skipped, the rest are sent using a single call if the sender is a {@code BatchSender}.
+   * <p/>
+   * A {@code BatchSender} does not tell which part of a failed batch it has handed over to the transport, if any, so
+   * a failed batch is audited as {@link DeliveryOutcome#TransportFailed} as a whole. For batches, the
+   * {@code TransportFailed} hits are hence an upper bound of the datums lost, and the {@code Delivered} hits a lower
+   * bound of the datums handed over.
+   */
+  @Override
+  public void deliverAll(final Collection<TDomainClass> datums) {
+
+    final Timer.Context timerContext = deliverDurationTimer.time();
+
+    try {
+
+      final List<TDomainClass> envelopedDatums = Lists.newArrayListWithCapacity(datums.size());
+      final List<DatumEnvelope> datumEnvelopes = Lists.newArrayListWithCapacity(datums.size());
+      long filteredCount = 0;
+
+      for (final TDomainClass datum : datums) {
+        DeliveryOutcome deliveryOutcome = DeliveryOutcome.FilterFailed;
+        try {
+          if (!filter.apply(datum)) {
+            filteredCount++;
+            audit(DeliveryOutcome.Filtered, datum, BreadcrumbDispatcher.UNKNOWN_PAYLOAD_SIZE);
+          } else {
+            deliveryOutcome = DeliveryOutcome.SerializationFailed;
+            datumEnvelopes.add(datumEnvelopeBuilder.buildEnvelope(datum));
+            envelopedDatums.add(datum);
+          }
+        } catch (final Exception e) {
+          countFailure(e, 1);
+          logger.error("Could not deliver datum." + datum, e);
+          audit(deliveryOutcome, datum, BreadcrumbDispatcher.UNKNOWN_PAYLOAD_SIZE);
+        }
+      }
+
+      filteredCounter.inc(filteredCount);
+
+      if (envelopeSender instanceof BatchSender) {
+        sendAll(envelopedDatums, datumEnvelopes);
+      } else {
+        for (int i = 0; i < datumEnvelopes.size(); i++) {
+          sendAll(envelopedDatums.subList(i, i + 1), datumEnvelopes.subList(i, i + 1));
+        }
+      }
+    } finally {
+      timerContext.stop();
+    }
+  }
+
+  private void sendAll(final List<TDomainClass> datums, final List<DatumEnvelope> datumEnvelopes) {
+
+    if (datumEnvelopes.isEmpty()) {
+      return;
+    }
+
+    // captured before sending, since a sender may consume the envelopes' buffers.
+    final int[] payloadSizesBytes = new int[datumEnvelopes.size()];
+    for (int i = 0; i < datumEnvelopes.size(); i++) {
+      payloadSizesBytes[i] = datumEnvelopes.get(i).getDatumBytes().remaining();
+    }
+
+    DeliveryOutcome deliveryOutcome = DeliveryOutcome.TransportFailed;
+
+    try {
+      if (datumEnvelopes.size() == 1) {
+        envelopeSender.send(datumEnvelopes.get(0));
+      } else {
+        ((BatchSender<DatumEnvelope>) envelopeSender).sendAll(datumEnvelopes);
+      }
+      deliveryOutcome = DeliveryOutcome.Delivered;
+      deliverRequestSuccessCounter.inc(datumEnvelopes.size());
+    } catch (final SilentSenderException e) {
+      countSilentFailure(e, datumEnvelopes.size());
+    } catch (final Exception e) {
+      countFailure(e, datumEnvelopes.size());
+      logger.error("Could not deliver a batch of " + datumEnvelopes.size() + " datums.", e);
+    } finally {
+      for (int i = 0; i < datums.size(); i++) {
+        audit(deliveryOutcome, datums.get(i), payloadSizesBytes[i]);
+      }
+    }
+  }
+
+  private void countSilentFailure(final SilentSenderException e, final long datumCount) {
+    metricFactory.createCounter("Deliver.Requests.Attempts.Failures." + SilentSenderException.class.getSimpleName(),
+                                e.getCause().getClass().getSimpleName())
+                 .inc(datumCount);
+  }
+
+  private void countFailure(final Exception e, final long datumCount) {
+    final Throwable cause = e.getCause() != null ? e.getCause() : e;
+    metricFactory.createCounter("Deliver.Requests.Attempts.Failures", cause.getClass().getSimpleName())
+                 .inc(datumCount);
+  }
 }
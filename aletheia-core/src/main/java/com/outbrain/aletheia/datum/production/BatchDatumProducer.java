@@ -0,0 +1,17 @@
+package com.outbrain.aletheia.datum.production;
+
+import java.util.Collection;
+
+/**
+ * A {@code DatumProducer} that can also deliver a batch of datums at once.
+ *
+ * @param <TDomainClass> The type of the datum to be produced by this {@code BatchDatumProducer}.
+ */
+public interface BatchDatumProducer<TDomainClass> extends DatumProducer<TDomainClass> {
+  /**
+   * Delivers a batch of datums to a destination, amortizing the per datum overhead across the batch where possible.
+   *
+   * @param datums The datum instances to deliver.
+   */
+  void deliverAll(Collection<TDomainClass> datums);
+}
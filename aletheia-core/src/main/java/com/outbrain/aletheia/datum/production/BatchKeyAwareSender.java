@@ -0,0 +1,14 @@
+package com.outbrain.aletheia.datum.production;
+
+import java.util.List;
+
+/**
+ * A {@code KeyAwareSender} that can send a batch of items in a single call.
+ */
+public interface BatchKeyAwareSender<TInput> extends KeyAwareSender<TInput> {
+  /**
+   * @param data the items to send.
+   * @param keys the keys of the items to send, in the same order, where a null key stands for no key.
+   */
+  void sendAll(final List<TInput> data, final List<String> keys) throws SilentSenderException;
+}
@@ -0,0 +1,10 @@
+package com.outbrain.aletheia.datum.production;
+
+import java.util.List;
+
+/**
+ * A {@code Sender} that can send a batch of items in a single call.
+ */
+public interface BatchSender<TInput> extends Sender<TInput> {
+  void sendAll(final List<TInput> data) throws SilentSenderException;
+}
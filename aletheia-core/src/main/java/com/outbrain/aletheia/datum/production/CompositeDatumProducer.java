@@ -2,13 +2,20 @@ package com.outbrain.aletheia.datum.production;
 
 import com.google.common.collect.Lists;
 
+import java.io.Closeable;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Combines multiple {@code DatumProducer} by creating a new one that upon a request to deliver a datum,
- * delivers it using all the internal {@code DatumProducer}s is a sequential order (the order they were passed in).
+ * hands it to all the internal {@code DatumProducer}s in a sequential order (the order they were passed in).
+ * <p/>
+ * When the internal {@code DatumProducer}s are synchronous, the datum is delivered to each of them in turn, on the
+ * calling thread, so delivery is sequential. When they are {@code AsyncDatumProducer}s, as built by
+ * {@code DatumProducerBuilder.buildParallel}, handing the datum over merely enqueues it, and each of them delivers it
+ * on a thread of its own, so delivery to the different producers happens in parallel.
  */
-public class CompositeDatumProducer<TDomainClass> implements DatumProducer<TDomainClass> {
+public class CompositeDatumProducer<TDomainClass> implements BatchDatumProducer<TDomainClass>, Closeable {
 
   private final List<DatumProducer<TDomainClass>> datumProducers;
 
@@ -27,4 +34,34 @@ public class CompositeDatumProducer<TDomainClass> implements DatumProducer<TDoma
       datumProducer.deliver(datum);
     }
   }
+
+  @Override
+  public void deliverAll(final Collection<TDomainClass> datums) {
+    for (final DatumProducer<TDomainClass> datumProducer : datumProducers) {
+      DatumProducers.deliverAll(datumProducer, datums);
+    }
+  }
+
+  /**
+   * Waits until all internal {@code AsyncDatumProducer}s have delivered the datums handed over to them so far.
+   */
+  public void flush() throws InterruptedException {
+    for (final DatumProducer<TDomainClass> datumProducer : datumProducers) {
+      if (datumProducer instanceof AsyncDatumProducer) {
+        ((AsyncDatumProducer<TDomainClass>) datumProducer).flush();
+      }
+    }
+  }
+
+  /**
+   * Closes all internal {@code AsyncDatumProducer}s, delivering the datums pending in each.
+   */
+  @Override
+  public void close() {
+    for (final DatumProducer<TDomainClass> datumProducer : datumProducers) {
+      if (datumProducer instanceof AsyncDatumProducer) {
+        ((AsyncDatumProducer<TDomainClass>) datumProducer).close();
+      }
+    }
+  }
 }
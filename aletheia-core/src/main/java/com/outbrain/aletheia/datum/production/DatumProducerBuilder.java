@@ -1,23 +1,28 @@
 package com.outbrain.aletheia.datum.production;
 
-import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
-import com.outbrain.aletheia.breadcrumbs.Breadcrumb;
+import com.google.common.collect.Maps;
 import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
 import com.outbrain.aletheia.datum.DatumKeySelector;
+import com.outbrain.aletheia.datum.DatumUtils;
 import com.outbrain.aletheia.datum.envelope.DatumEnvelopeBuilder;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeFormat;
+import com.outbrain.aletheia.datum.envelope.SharedDatumEnvelopeBuilder;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 import com.outbrain.aletheia.datum.serialization.DatumSerDe;
 import com.outbrain.aletheia.metrics.DefaultMetricFactoryProvider;
+import com.outbrain.aletheia.metrics.MetricFactoryPrefixer;
 import com.outbrain.aletheia.metrics.MetricFactoryProvider;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides a fluent API for building a {@code DatumProducer}.
@@ -29,6 +34,9 @@ public class DatumProducerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
   protected static final Logger logger = LoggerFactory.getLogger(DatumProducerBuilder.class);
 
   protected static final String DATUM_PRODUCER = "DatumProducer";
+  private static final String ALETHEIA = "Aletheia";
+  private static final String DATUM_TYPES = "DatumTypes";
+  private static final String ASYNC = "Async";
 
   private static class ProductionEndPointInfo<T> {
 
@@ -62,56 +70,106 @@ public class DatumProducerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
 
   private final List<ProductionEndPointInfo<TDomainClass>> productionEndPointInfos = Lists.newArrayList();
   private DatumKeySelector<TDomainClass> datumKeySelector;
+  private DatumEnvelopeFormat envelopeFormat = DatumEnvelopeFormat.Standard;
 
   private DatumProducerBuilder(final Class<TDomainClass> domainClass) {
     super(domainClass);
   }
 
+  private DatumKeySelector<TDomainClass> datumKeySelector() {
+    return datumKeySelector != null ? datumKeySelector : DatumKeySelector.NULL;
+  }
+
+  private DatumEnvelopeBuilder<TDomainClass> datumEnvelopeBuilder(final DatumProducerConfig datumProducerConfig,
+                                                                  final DatumSerDe<TDomainClass> datumSerDe) {
+    return new DatumEnvelopeBuilder<>(domainClass,
+                                      datumSerDe,
+                                      datumKeySelector(),
+                                      datumProducerConfig.getIncarnation(),
+                                      datumProducerConfig.getHostname());
+  }
+
+  /**
+   * @return a {@code SharedDatumEnvelopeBuilder} for every {@code DatumSerDe} used by more than one production
+   * endpoint, so that data are serialized once for all of them.
+   */
+  private Map<DatumSerDe<TDomainClass>, SharedDatumEnvelopeBuilder<TDomainClass>> sharedDatumEnvelopeBuilders(
+          final DatumProducerConfig datumProducerConfig) {
+
+    final Map<DatumSerDe<TDomainClass>, Integer> datumSerDe2endPointCount = Maps.newHashMap();
+
+    for (final ProductionEndPointInfo<TDomainClass> productionEndPointInfo : productionEndPointInfos) {
+      final Integer endPointCount = datumSerDe2endPointCount.get(productionEndPointInfo.getDatumSerDe());
+      datumSerDe2endPointCount.put(productionEndPointInfo.getDatumSerDe(), endPointCount != null ? endPointCount + 1 : 1);
+    }
+
+    final Map<DatumSerDe<TDomainClass>, SharedDatumEnvelopeBuilder<TDomainClass>> datumSerDe2sharedBuilder =
+            Maps.newHashMap();
+
+    for (final Map.Entry<DatumSerDe<TDomainClass>, Integer> datumSerDeAndEndPointCount : datumSerDe2endPointCount.entrySet()) {
+      if (datumSerDeAndEndPointCount.getValue() > 1) {
+        datumSerDe2sharedBuilder.put(datumSerDeAndEndPointCount.getKey(),
+                                     new SharedDatumEnvelopeBuilder<>(domainClass,
+                                                                      datumSerDeAndEndPointCount.getKey(),
+                                                                      datumKeySelector(),
+                                                                      datumProducerConfig.getIncarnation(),
+                                                                      datumProducerConfig.getHostname()));
+      }
+    }
+
+    return datumSerDe2sharedBuilder;
+  }
+
   private DatumProducer<TDomainClass> createDatumProducer(final DatumProducerConfig datumProducerConfig,
                                                           final ProductionEndPointInfo<TDomainClass> productionEndPointInfo) {
+    return createDatumProducer(datumProducerConfig,
+                               productionEndPointInfo,
+                               datumEnvelopeBuilder(datumProducerConfig, productionEndPointInfo.getDatumSerDe()));
+  }
+
+  private DatumProducer<TDomainClass> createDatumProducer(final DatumProducerConfig datumProducerConfig,
+                                                          final ProductionEndPointInfo<TDomainClass> productionEndPointInfo,
+                                                          final DatumEnvelopeBuilder<TDomainClass> datumEnvelopeBuilder) {
 
     logger.info("Creating a datum producer for production end point: {} with config: {}",
                 productionEndPointInfo.getProductionEndPoint(),
                 datumProducerConfig);
 
-    final BreadcrumbDispatcher<TDomainClass> datumAuditor;
+    final Map<DeliveryOutcome, BreadcrumbDispatcher<TDomainClass>> outcome2datumAuditor;
     final MetricFactoryProvider metricFactoryProvider;
 
-    if (!domainClass.equals(Breadcrumb.class)) {
+    if (!isBreadcrumbDomainClass()) {
       metricFactoryProvider = new DefaultMetricFactoryProvider(domainClass, DATUM_PRODUCER, metricFactory);
 
       if (isBreadcrumbProductionDefined()) {
-        datumAuditor = getDatumAuditor(datumProducerConfig,
-                                       productionEndPointInfo.getProductionEndPoint(),
-                                       metricFactoryProvider);
+        outcome2datumAuditor = getDeliveryOutcomeAuditors(datumProducerConfig,
+                                                          productionEndPointInfo.getProductionEndPoint(),
+                                                          metricFactoryProvider);
       } else {
-        datumAuditor = BreadcrumbDispatcher.NULL;
+        outcome2datumAuditor = Collections.emptyMap();
       }
     } else {
       metricFactoryProvider = new InternalBreadcrumbProducerMetricFactoryProvider(domainClass,
                                                                                   DATUM_PRODUCER,
                                                                                   metricFactory);
-      datumAuditor = BreadcrumbDispatcher.NULL;
+      outcome2datumAuditor = Collections.emptyMap();
     }
 
-    final Sender<DatumEnvelope> sender =
+    final NamedSender<DatumEnvelope> endPointSender =
             getSender(productionEndPointInfo.getProductionEndPoint(),
                       metricFactoryProvider
                               .forDatumEnvelopeSender(productionEndPointInfo.getProductionEndPoint()));
 
-    final DatumEnvelopeBuilder<TDomainClass> datumEnvelopeBuilder =
-            new DatumEnvelopeBuilder<>(domainClass,
-                                       productionEndPointInfo.getDatumSerDe(),
-                                       datumKeySelector != null ? datumKeySelector : DatumKeySelector.NULL,
-                                       datumProducerConfig.getIncarnation(),
-                                       datumProducerConfig.getHostname()
-            );
-
+    // senders not encoding envelopes in binary have no use for an envelope format.
+    final Sender<DatumEnvelope> sender =
+            endPointSender instanceof RawDatumEnvelopeBinarySender ?
+            ((RawDatumEnvelopeBinarySender) endPointSender).withEnvelopeFormat(envelopeFormat) :
+            endPointSender;
 
     return new AuditingDatumProducer<>(datumEnvelopeBuilder,
                                        sender,
                                        productionEndPointInfo.getFilter(),
-                                       datumAuditor,
+                                       outcome2datumAuditor,
                                        metricFactoryProvider
                                                .forAuditingDatumProducer(
                                                        productionEndPointInfo.getProductionEndPoint()));
@@ -180,6 +238,20 @@ public class DatumProducerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
     return this;
   }
 
+  /**
+   * Sets the format data envelopes are encoded in, {@code DatumEnvelopeFormat.Standard} by default. Consumers can
+   * read envelopes of either format, so producers can be switched one at a time.
+   *
+   * @param envelopeFormat the {@code DatumEnvelopeFormat} to encode data envelopes in.
+   * @return a {@code DatumProducerBuilder} instance configured with the specified envelope format.
+   */
+  public DatumProducerBuilder<TDomainClass> encodeEnvelopesAs(final DatumEnvelopeFormat envelopeFormat) {
+
+    this.envelopeFormat = envelopeFormat;
+
+    return this;
+  }
+
   /**
    * Builds a {@code DatumProducer} instance.
    *
@@ -188,18 +260,100 @@ public class DatumProducerBuilder<TDomainClass> extends AletheiaBuilder<TDomainC
    * @return a fully configured {@code DatumProducer} instance.
    */
   public DatumProducer<TDomainClass> build(final DatumProducerConfig datumProducerConfig) {
+    return buildBatching(datumProducerConfig);
+  }
+
+  /**
+   * Builds a {@code DatumProducer} instance that can also deliver batches of datums.
+   *
+   * @param datumProducerConfig the configuration information to use for building the {@code DatumProducer}
+   *                            instance configured.
+   * @return a fully configured {@code BatchDatumProducer} instance.
+   */
+  public BatchDatumProducer<TDomainClass> buildBatching(final DatumProducerConfig datumProducerConfig) {
+
+    final Map<DatumSerDe<TDomainClass>, SharedDatumEnvelopeBuilder<TDomainClass>> datumSerDe2sharedBuilder =
+            sharedDatumEnvelopeBuilders(datumProducerConfig);
 
-    final Function<ProductionEndPointInfo<TDomainClass>, DatumProducer<TDomainClass>> toDatumProducer =
-            new Function<ProductionEndPointInfo<TDomainClass>, DatumProducer<TDomainClass>>() {
-              @Override
-              public DatumProducer<TDomainClass> apply(final ProductionEndPointInfo<TDomainClass> configuredProductionEndPoint) {
-                return createDatumProducer(datumProducerConfig, configuredProductionEndPoint);
-              }
-            };
+    final List<DatumProducer<TDomainClass>> datumProducers = Lists.newArrayList();
+
+    for (final ProductionEndPointInfo<TDomainClass> productionEndPointInfo : productionEndPointInfos) {
+      final SharedDatumEnvelopeBuilder<TDomainClass> sharedDatumEnvelopeBuilder =
+              datumSerDe2sharedBuilder.get(productionEndPointInfo.getDatumSerDe());
+      datumProducers.add(sharedDatumEnvelopeBuilder != null ?
+                         createDatumProducer(datumProducerConfig, productionEndPointInfo, sharedDatumEnvelopeBuilder) :
+                         createDatumProducer(datumProducerConfig, productionEndPointInfo));
+    }
+
+    final CompositeDatumProducer<TDomainClass> compositeDatumProducer = new CompositeDatumProducer<>(datumProducers);
+
+    return datumSerDe2sharedBuilder.isEmpty() ?
+           compositeDatumProducer :
+           new EnvelopeSharingDatumProducer<>(compositeDatumProducer, datumSerDe2sharedBuilder.values());
+  }
 
-    final List<DatumProducer<TDomainClass>> datumProducers = Lists.transform(productionEndPointInfos, toDatumProducer);
+  /**
+   * Builds a {@code DatumProducer} instance that delivers data asynchronously, off the calling thread.
+   *
+   * @param datumProducerConfig the configuration information to use for building the {@code DatumProducer}
+   *                            instance configured.
+   * @param asyncDeliveryConfig the buffering and threading configuration for asynchronous delivery.
+   * @return a fully configured {@code AsyncDatumProducer} instance, which should be closed when no longer needed.
+   */
+  public AsyncDatumProducer<TDomainClass> buildAsync(final DatumProducerConfig datumProducerConfig,
+                                                     final AsyncDeliveryConfig asyncDeliveryConfig) {
+
+    final String datumTypeId = DatumUtils.getDatumTypeId(domainClass);
+
+    return new AsyncDatumProducer<>(build(datumProducerConfig),
+                                    asyncDeliveryConfig,
+                                    datumTypeId,
+                                    MetricFactoryPrefixer.prefix(metricFactory).with(ALETHEIA,
+                                                                                     DATUM_TYPES,
+                                                                                     datumTypeId,
+                                                                                     DATUM_PRODUCER,
+                                                                                     ASYNC));
+  }
+
+  /**
+   * Builds a {@code DatumProducer} instance that fans data out to all production endpoints in parallel. Each endpoint
+   * is delivered to by a single sender thread of its own, through a buffer of its own, so that data are delivered to
+   * each endpoint in order, and a slow endpoint does not hold back the others. Since a datum is handed over to the
+   * endpoints one after the other, blocking on the full buffer of a slow endpoint would hold back the others, hence
+   * the {@code FullQueuePolicy.Block} policy is not supported.
+   *
+   * @param datumProducerConfig the configuration information to use for building the {@code DatumProducer}
+   *                            instance configured.
+   * @param asyncDeliveryConfig the buffering configuration of each endpoint, whose sender thread count is ignored.
+   * @return a fully configured {@code CompositeDatumProducer} instance, which should be closed when no longer needed.
+   * @throws IllegalArgumentException if the full queue policy is {@code FullQueuePolicy.Block}.
+   */
+  public CompositeDatumProducer<TDomainClass> buildParallel(final DatumProducerConfig datumProducerConfig,
+                                                            final AsyncDeliveryConfig asyncDeliveryConfig) {
+
+    Preconditions.checkArgument(asyncDeliveryConfig.getFullQueuePolicy() != AsyncDeliveryConfig.FullQueuePolicy.Block,
+                                "a blocking full queue policy would let a slow endpoint hold back the others");
+
+    final String datumTypeId = DatumUtils.getDatumTypeId(domainClass);
+    final AsyncDeliveryConfig singleWriterDeliveryConfig =
+            new AsyncDeliveryConfig(asyncDeliveryConfig.getCapacity(), 1, asyncDeliveryConfig.getFullQueuePolicy());
+
+    final List<DatumProducer<TDomainClass>> datumProducers = Lists.newArrayList();
+
+    for (final ProductionEndPointInfo<TDomainClass> productionEndPointInfo : productionEndPointInfos) {
+      final String endPointName = productionEndPointInfo.getProductionEndPoint().getName();
+      datumProducers.add(new AsyncDatumProducer<>(createDatumProducer(datumProducerConfig, productionEndPointInfo),
+                                                  singleWriterDeliveryConfig,
+                                                  datumTypeId + "-" + endPointName,
+                                                  MetricFactoryPrefixer.prefix(metricFactory).with(ALETHEIA,
+                                                                                                   DATUM_TYPES,
+                                                                                                   datumTypeId,
+                                                                                                   DATUM_PRODUCER,
+                                                                                                   endPointName,
+                                                                                                   ASYNC)));
+    }
 
-    return new CompositeDatumProducer<>(Lists.newArrayList(datumProducers));
+    return new CompositeDatumProducer<>(datumProducers);
   }
 
   /**
@@ -0,0 +1,27 @@
+package com.outbrain.aletheia.datum.production;
+
+import java.util.Collection;
+
+/**
+ * Utilities for delivering data using {@code DatumProducer}s.
+ */
+public class DatumProducers {
+
+  private DatumProducers() {
+  }
+
+  /**
+   * Delivers a batch of datums in a single call if the {@code DatumProducer} is a {@code BatchDatumProducer}, and
+   * one by one otherwise.
+   */
+  public static <TDomainClass> void deliverAll(final DatumProducer<TDomainClass> datumProducer,
+                                               final Collection<TDomainClass> datums) {
+    if (datumProducer instanceof BatchDatumProducer) {
+      ((BatchDatumProducer<TDomainClass>) datumProducer).deliverAll(datums);
+    } else {
+      for (final TDomainClass datum : datums) {
+        datumProducer.deliver(datum);
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.outbrain.aletheia.datum.production;
+
+/**
+ * The outcome of a {@code DatumProducer.deliver} call, each of which can be audited by a breadcrumb stream of its own.
+ * Breadcrumbs of delivered datums keep the datum type id as their type, so existing reconciliation is unaffected,
+ * while breadcrumbs of the other outcomes have the outcome appended to it, e.g., {@code MyDatum.Filtered}.
+ * <p/>
+ * The outcome is determined when the datum is handed over to the transport. Transports that send asynchronously,
+ * e.g., the Kafka 0.10 client transport, report failures that occur after the hand-over through their own metrics
+ * only, so for them {@link #Delivered} means accepted by the transport, and {@link #TransportFailed} only covers
+ * datums the transport refused to accept.
+ */
+public enum DeliveryOutcome {
+
+  /**
+   * The datum was handed over to the transport successfully, which for asynchronous transports does not imply it was
+   * eventually acknowledged.
+   */
+  Delivered(""),
+
+  /**
+   * The datum was rejected by the producer's filter.
+   */
+  Filtered(".Filtered"),
+
+  /**
+   * The producer's filter failed while being applied to the datum.
+   */
+  FilterFailed(".FilterFailed"),
+
+  /**
+   * The datum failed before it could be handed over to the transport, typically while being serialized.
+   */
+  SerializationFailed(".SerializationFailed"),
+
+  /**
+   * The transport failed to send the datum, or, for asynchronous transports, refused to accept it.
+   */
+  TransportFailed(".TransportFailed");
+
+  private final String breadcrumbTypeSuffix;
+
+  DeliveryOutcome(final String breadcrumbTypeSuffix) {
+    this.breadcrumbTypeSuffix = breadcrumbTypeSuffix;
+  }
+
+  public String breadcrumbTypeId(final String datumTypeId) {
+    return datumTypeId + breadcrumbTypeSuffix;
+  }
+}
@@ -0,0 +1,321 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A bounded, first in first out queue of keyed binary messages, kept in fixed size, memory mapped segment files.
+ * Messages are appended to the last segment, and read and removed from the first one, which is deleted once all of its
+ * messages have been removed.
+ * <p/>
+ * The spool survives the process dying, since the operating system writes mapped pages back on its own. It only
+ * survives the machine dying as far as segments have been forced to disk, which happens when a segment is sealed, i.e.,
+ * when a message no longer fits into it, and when the spool is closed. Messages appended to the last segment since,
+ * and removals since, may be lost, or replayed again, respectively, upon a machine crash.
+ * <p/>
+ * Each segment starts with the position of its first message not removed yet, followed by its messages, each made of
+ * its size, its key's length (-1 for a null key), its key and its payload. A message's size is written last, so that a
+ * partially written message is ignored when the spool is reopened, which resumes from the first message not removed.
+ * <p/>
+ * A spool directory may only be used by a single {@code DiskSpool} at a time.
+ */
+public class DiskSpool implements Closeable {
+
+  /**
+   * A spooled message.
+   */
+  public static class Message {
+
+    private final String key;
+    private final byte[] payload;
+
+    private Message(final String key, final byte[] payload) {
+      this.key = key;
+      this.payload = payload;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public byte[] getPayload() {
+      return payload;
+    }
+  }
+
+  private static class Segment {
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+    private int writePosition;
+
+    private Segment(final File file, final MappedByteBuffer buffer, final int readPosition, final int writePosition) {
+      this.file = file;
+      this.buffer = buffer;
+      this.readPosition = readPosition;
+      this.writePosition = writePosition;
+    }
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(DiskSpool.class);
+
+  private static final String SEGMENT_FILE_PREFIX = "segment-";
+  private static final String SEGMENT_FILE_SUFFIX = ".spool";
+  private static final String LOCK_FILE_NAME = "spool.lock";
+
+  private static final int SEGMENT_HEADER_SIZE = 4;
+  private static final int MESSAGE_HEADER_SIZE = 8;
+
+  private final File directory;
+  private final int segmentSizeBytes;
+  private final int maxSegmentCount;
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private final RandomAccessFile lockFile;
+  private final FileLock lock;
+  private long nextSegmentId = 0;
+  private int depth = 0;
+
+  /**
+   * Opens the spool kept in the specified directory, creating it if needed.
+   *
+   * @throws IllegalStateException if the directory is already used by another spool.
+   */
+  public DiskSpool(final File directory, final int segmentSizeBytes, final int maxSegmentCount) throws IOException {
+
+    this.directory = directory;
+    this.segmentSizeBytes = segmentSizeBytes;
+    this.maxSegmentCount = maxSegmentCount;
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create spool directory " + directory);
+    }
+
+    lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+    try {
+      lock = lockFile.getChannel().tryLock();
+    } catch (final OverlappingFileLockException e) {
+      lockFile.close();
+      throw new IllegalStateException("Spool directory " + directory + " is already in use.", e);
+    }
+    if (lock == null) {
+      lockFile.close();
+      throw new IllegalStateException("Spool directory " + directory + " is already in use.");
+    }
+
+    openExistingSegments();
+  }
+
+  private static long segmentId(final String segmentFileName) {
+    return Long.parseLong(segmentFileName.substring(SEGMENT_FILE_PREFIX.length(),
+                                                    segmentFileName.length() - SEGMENT_FILE_SUFFIX.length()));
+  }
+
+  private void openExistingSegments() throws IOException {
+
+    final String[] segmentFileNames = directory.list(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+      }
+    });
+
+    // ids are zero padded, so that names sort the same as ids.
+    Arrays.sort(segmentFileNames);
+
+    for (final String segmentFileName : segmentFileNames) {
+      final Segment segment = openSegment(new File(directory, segmentFileName));
+      segments.addLast(segment);
+      nextSegmentId = segmentId(segmentFileName) + 1;
+    }
+
+    if (!segments.isEmpty()) {
+      logger.info("Reopened spool {} holding {} messages.", directory, depth);
+    }
+  }
+
+  private Segment openSegment(final File segmentFile) throws IOException {
+
+    final MappedByteBuffer buffer;
+    try (RandomAccessFile segmentAccessFile = new RandomAccessFile(segmentFile, "rw")) {
+      buffer = segmentAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes);
+    }
+
+    final int readPosition = Math.max(buffer.getInt(0), SEGMENT_HEADER_SIZE);
+    int writePosition = SEGMENT_HEADER_SIZE;
+
+    while (writePosition + MESSAGE_HEADER_SIZE <= segmentSizeBytes) {
+      final int messageSize = buffer.getInt(writePosition);
+      if (messageSize <= 0 || writePosition + 4 + messageSize > segmentSizeBytes) {
+        break;
+      }
+      if (writePosition >= readPosition) {
+        depth++;
+      }
+      writePosition += 4 + messageSize;
+    }
+
+    return new Segment(segmentFile, buffer, readPosition, writePosition);
+  }
+
+  private Segment newSegment() throws IOException {
+    final File segmentFile = new File(directory, String.format("%s%019d%s",
+                                                               SEGMENT_FILE_PREFIX,
+                                                               nextSegmentId++,
+                                                               SEGMENT_FILE_SUFFIX));
+    final Segment segment = openSegment(segmentFile);
+    segments.addLast(segment);
+    return segment;
+  }
+
+  private void deleteSegment(final Segment segment) {
+    segments.remove(segment);
+    // there is no portable way to unmap the file, so its disk space is reclaimed once its mapping is garbage collected.
+    if (!segment.file.delete()) {
+      logger.warn("Could not delete spool segment {}", segment.file);
+    }
+  }
+
+  /**
+   * @return the first segment holding messages not removed yet, or null if there are none.
+   */
+  private Segment headSegment() {
+    Segment head = segments.peekFirst();
+    while (head != null && head.readPosition >= head.writePosition && head != segments.peekLast()) {
+      deleteSegment(head);
+      head = segments.peekFirst();
+    }
+    return head != null && head.readPosition < head.writePosition ? head : null;
+  }
+
+  /**
+   * Appends a message to the spool.
+   *
+   * @return false if the spool is full, or the message is too large to fit in a segment.
+   */
+  public synchronized boolean append(final String key, final byte[] payload) throws IOException {
+
+    final byte[] keyBytes = key != null ? key.getBytes(Charsets.UTF_8) : null;
+    final int messageSize = 4 + (keyBytes != null ? keyBytes.length : 0) + payload.length;
+
+    if (SEGMENT_HEADER_SIZE + 4 + messageSize > segmentSizeBytes) {
+      return false;
+    }
+
+    Segment tail = segments.peekLast();
+
+    if (tail == null || tail.writePosition + 4 + messageSize > segmentSizeBytes) {
+      if (tail != null) {
+        // sealed, no more messages will be appended to it.
+        tail.buffer.force();
+      }
+      // deletes segments whose messages have all been removed.
+      final Segment head = headSegment();
+      if (segments.size() >= maxSegmentCount) {
+        if (head != null) {
+          return false;
+        }
+        // all that is left is a full segment whose messages have all been removed.
+        deleteSegment(tail);
+      }
+      tail = newSegment();
+    }
+
+    final MappedByteBuffer buffer = tail.buffer;
+    buffer.position(tail.writePosition + 4);
+    buffer.putInt(keyBytes != null ? keyBytes.length : -1);
+    if (keyBytes != null) {
+      buffer.put(keyBytes);
+    }
+    buffer.put(payload);
+    buffer.putInt(tail.writePosition, messageSize);
+
+    tail.writePosition += 4 + messageSize;
+    depth++;
+
+    return true;
+  }
+
+  /**
+   * @return the oldest message not removed yet, or null if the spool is empty.
+   */
+  public synchronized Message peek() {
+
+    final Segment head = headSegment();
+
+    if (head == null) {
+      return null;
+    }
+
+    final MappedByteBuffer buffer = head.buffer;
+    final int messageSize = buffer.getInt(head.readPosition);
+    final int keyLength = buffer.getInt(head.readPosition + 4);
+
+    buffer.position(head.readPosition + MESSAGE_HEADER_SIZE);
+
+    String key = null;
+    if (keyLength >= 0) {
+      final byte[] keyBytes = new byte[keyLength];
+      buffer.get(keyBytes);
+      key = new String(keyBytes, Charsets.UTF_8);
+    }
+
+    final byte[] payload = new byte[messageSize - 4 - Math.max(keyLength, 0)];
+    buffer.get(payload);
+
+    return new Message(key, payload);
+  }
+
+  /**
+   * Removes the oldest message, which is the one last returned by {@link #peek()}.
+   */
+  public synchronized void remove() {
+
+    final Segment head = headSegment();
+
+    if (head == null) {
+      return;
+    }
+
+    head.readPosition += 4 + head.buffer.getInt(head.readPosition);
+    head.buffer.putInt(0, head.readPosition);
+    depth--;
+
+    if (head.readPosition >= head.writePosition && head != segments.peekLast()) {
+      deleteSegment(head);
+    }
+  }
+
+  /**
+   * @return the number of messages in the spool.
+   */
+  public synchronized int getDepth() {
+    return depth;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (final Segment segment : segments) {
+      segment.buffer.force();
+    }
+    try {
+      lock.release();
+    } finally {
+      lockFile.close();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.outbrain.aletheia.datum.envelope.SharedDatumEnvelopeBuilder;
+
+import java.util.Collection;
+
+/**
+ * Delivers datums using a {@code DatumProducer} whose endpoints share {@code SharedDatumEnvelopeBuilder}s, and makes
+ * the shared builders forget the envelopes of each datum, or batch of datums, once delivered to all endpoints. The
+ * encoding of shared envelopes by {@code RawDatumEnvelopeBinarySender}s is shared, and forgotten, likewise.
+ */
+public class EnvelopeSharingDatumProducer<TDomainClass> implements BatchDatumProducer<TDomainClass> {
+
+  private final DatumProducer<TDomainClass> datumProducer;
+  private final Collection<SharedDatumEnvelopeBuilder<TDomainClass>> sharedDatumEnvelopeBuilders;
+
+  public EnvelopeSharingDatumProducer(final DatumProducer<TDomainClass> datumProducer,
+                                      final Collection<SharedDatumEnvelopeBuilder<TDomainClass>> sharedDatumEnvelopeBuilders) {
+    this.datumProducer = datumProducer;
+    this.sharedDatumEnvelopeBuilders = sharedDatumEnvelopeBuilders;
+  }
+
+  private void forgetEnvelopes() {
+    RawDatumEnvelopeBinarySender.forgetSharedEncoding();
+    for (final SharedDatumEnvelopeBuilder<TDomainClass> sharedDatumEnvelopeBuilder : sharedDatumEnvelopeBuilders) {
+      sharedDatumEnvelopeBuilder.forget();
+    }
+  }
+
+  @Override
+  public void deliver(final TDomainClass datum) {
+    RawDatumEnvelopeBinarySender.shareEncoding();
+    try {
+      datumProducer.deliver(datum);
+    } finally {
+      forgetEnvelopes();
+    }
+  }
+
+  @Override
+  public void deliverAll(final Collection<TDomainClass> datums) {
+    RawDatumEnvelopeBinarySender.shareEncoding();
+    try {
+      DatumProducers.deliverAll(datumProducer, datums);
+    } finally {
+      forgetEnvelopes();
+    }
+  }
+}
@@ -13,7 +13,7 @@ import java.util.Map;
 /**
  * An {@code Sender} that stores incoming items in-memory, allowing one to query them later.
  */
-public class InMemoryAccumulatingSender implements NamedKeyAwareSender, NamedSender, Serializable {
+public class InMemoryAccumulatingSender implements NamedKeyAwareSender, NamedSender, BatchKeyAwareSender, Serializable {
 
   public static String DEFAULT_DATUM_KEY = "random";
   private final Map<String, List<Object>> sentData = Maps.newHashMap();
@@ -58,6 +58,13 @@ public class InMemoryAccumulatingSender implements NamedKeyAwareSender, NamedSen
     }
   }
 
+  @Override
+  public void sendAll(final List items, final List keys) throws SilentSenderException {
+    for (int i = 0; i < items.size(); i++) {
+      send(items.get(i), (String) keys.get(i));
+    }
+  }
+
   public Map<String, List<Object>> getSentData() {
     return sentData;
   }
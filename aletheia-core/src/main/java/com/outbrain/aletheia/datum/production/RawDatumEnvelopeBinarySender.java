@@ -1,29 +1,134 @@
 package com.outbrain.aletheia.datum.production;
 
 import com.outbrain.aletheia.datum.envelope.AvroDatumEnvelopeSerDe;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeFormat;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeHeaderRegistry;
 import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A {@code Sender} implementation that sends {@code DatumEnvelope} without manipulating them
  * in any way.
+ * <p/>
+ * While an {@code EnvelopeSharingDatumProducer} delivers a datum, an envelope sent by several senders in a row on the
+ * same thread, i.e., one shared by endpoints using the same {@code DatumSerDe}, is Avro encoded only once, and all
+ * senders are handed the same bytes. The bytes are meant to be read only, and each sender gets a buffer of its own
+ * over them, so that reading them does not affect the others. The encoding is forgotten along with the shared
+ * envelopes once the datum has been delivered, and envelopes sent otherwise are encoded on every send.
+ * <p/>
+ * Envelopes are encoded in the {@code DatumEnvelopeFormat.Standard} format, unless specified otherwise. Each envelope
+ * is encoded into an array of its own, which the underlying sender may keep, so encoding costs one copy of the
+ * envelope's bytes, out of the thread's reused scratch buffer.
  */
-public class RawDatumEnvelopeBinarySender implements NamedSender<DatumEnvelope> {
+public class RawDatumEnvelopeBinarySender implements NamedSender<DatumEnvelope>, BatchSender<DatumEnvelope> {
 
-  private final AvroDatumEnvelopeSerDe datumEnvelopeSerializer = new AvroDatumEnvelopeSerDe();
+  private static class LastSerializedEnvelope {
+    private boolean sharing;
+    private DatumEnvelope datumEnvelope;
+    private DatumEnvelopeFormat envelopeFormat;
+    private ByteBuffer binaryDatumEnvelope;
+  }
+
+  private static final ThreadLocal<LastSerializedEnvelope> lastSerializedEnvelope =
+          new ThreadLocal<LastSerializedEnvelope>() {
+            @Override
+            protected LastSerializedEnvelope initialValue() {
+              return new LastSerializedEnvelope();
+            }
+          };
+
+  private final DatumEnvelopeFormat envelopeFormat;
+  private final AvroDatumEnvelopeSerDe datumEnvelopeSerializer;
 
   private final NamedKeyAwareSender<ByteBuffer> binaryDataTransporter;
 
   public RawDatumEnvelopeBinarySender(final NamedKeyAwareSender<ByteBuffer> binaryDataTransporter) {
+    this(binaryDataTransporter, DatumEnvelopeFormat.Standard);
+  }
+
+  public RawDatumEnvelopeBinarySender(final NamedKeyAwareSender<ByteBuffer> binaryDataTransporter,
+                                      final DatumEnvelopeFormat envelopeFormat) {
     this.binaryDataTransporter = binaryDataTransporter;
+    this.envelopeFormat = envelopeFormat;
+    this.datumEnvelopeSerializer = new AvroDatumEnvelopeSerDe(envelopeFormat, DatumEnvelopeHeaderRegistry.DEFAULT);
+  }
+
+  private static String key(final DatumEnvelope datumEnvelope) {
+    return datumEnvelope.getDatumKey() != null ? datumEnvelope.getDatumKey().toString() : null;
+  }
+
+  /**
+   * Starts sharing the encoding of envelopes sent on the calling thread, until {@link #forgetSharedEncoding()}.
+   */
+  static void shareEncoding() {
+    lastSerializedEnvelope.get().sharing = true;
+  }
+
+  /**
+   * Stops sharing, and forgets, the encoding of the last envelope sent on the calling thread.
+   */
+  static void forgetSharedEncoding() {
+    final LastSerializedEnvelope last = lastSerializedEnvelope.get();
+    last.sharing = false;
+    last.datumEnvelope = null;
+    last.envelopeFormat = null;
+    last.binaryDatumEnvelope = null;
+  }
+
+  private ByteBuffer serialize(final DatumEnvelope datumEnvelope) {
+
+    final LastSerializedEnvelope last = lastSerializedEnvelope.get();
+
+    if (!last.sharing) {
+      return datumEnvelopeSerializer.serializeDatumEnvelope(datumEnvelope);
+    }
+
+    if (last.datumEnvelope != datumEnvelope || last.envelopeFormat != envelopeFormat) {
+      last.binaryDatumEnvelope = datumEnvelopeSerializer.serializeDatumEnvelope(datumEnvelope);
+      last.datumEnvelope = datumEnvelope;
+      last.envelopeFormat = envelopeFormat;
+    }
+
+    return last.binaryDatumEnvelope.duplicate();
   }
 
   @Override
   public void send(final DatumEnvelope datumEnvelope) throws SilentSenderException {
-    final ByteBuffer binaryDatumEnvelope = datumEnvelopeSerializer.serializeDatumEnvelope(datumEnvelope);
-    final String key = datumEnvelope.getDatumKey() != null ? datumEnvelope.getDatumKey().toString() : null;
-    binaryDataTransporter.send(binaryDatumEnvelope, key);
+    final ByteBuffer binaryDatumEnvelope = serialize(datumEnvelope);
+    binaryDataTransporter.send(binaryDatumEnvelope, key(datumEnvelope));
+  }
+
+  /**
+   * Encodes the whole batch with a single writer, and sends it in a single call if the underlying sender is a
+   * {@code BatchKeyAwareSender}.
+   */
+  @Override
+  public void sendAll(final List<DatumEnvelope> datumEnvelopes) throws SilentSenderException {
+
+    final List<ByteBuffer> binaryDatumEnvelopes = datumEnvelopeSerializer.serializeDatumEnvelopes(datumEnvelopes);
+
+    if (binaryDataTransporter instanceof BatchKeyAwareSender) {
+      final List<String> keys = new ArrayList<>(datumEnvelopes.size());
+      for (final DatumEnvelope datumEnvelope : datumEnvelopes) {
+        keys.add(key(datumEnvelope));
+      }
+      ((BatchKeyAwareSender<ByteBuffer>) binaryDataTransporter).sendAll(binaryDatumEnvelopes, keys);
+    } else {
+      for (int i = 0; i < datumEnvelopes.size(); i++) {
+        binaryDataTransporter.send(binaryDatumEnvelopes.get(i), key(datumEnvelopes.get(i)));
+      }
+    }
+  }
+
+  /**
+   * @return a {@code RawDatumEnvelopeBinarySender} sending to the same transporter, encoding envelopes in the
+   * specified format.
+   */
+  public RawDatumEnvelopeBinarySender withEnvelopeFormat(final DatumEnvelopeFormat envelopeFormat) {
+    return new RawDatumEnvelopeBinarySender(binaryDataTransporter, envelopeFormat);
   }
 
   @Override
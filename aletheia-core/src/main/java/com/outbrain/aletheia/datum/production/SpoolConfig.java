@@ -0,0 +1,61 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import java.io.File;
+
+/**
+ * Configuration details for a {@code DiskSpool} holding data that could not be sent, until it can be replayed.
+ */
+public class SpoolConfig {
+
+  private final File directory;
+  private final int segmentSizeBytes;
+  private final int maxSegmentCount;
+  private final int replayRatePerSecond;
+
+  /**
+   * @param directory           the directory to keep spool segment files in.
+   * @param segmentSizeBytes    the size of each segment file, which also bounds the size of a single spooled message.
+   * @param maxSegmentCount     the number of segment files the spool may use, bounding its disk usage to
+   *                            {@code segmentSizeBytes * maxSegmentCount} bytes.
+   * @param replayRatePerSecond the maximal number of spooled messages to replay per second, once sending is possible
+   *                            again.
+   */
+  public SpoolConfig(final File directory,
+                     final int segmentSizeBytes,
+                     final int maxSegmentCount,
+                     final int replayRatePerSecond) {
+
+    Preconditions.checkArgument(segmentSizeBytes > 0, "segment size must be positive");
+    Preconditions.checkArgument(maxSegmentCount > 0, "max segment count must be positive");
+    Preconditions.checkArgument(replayRatePerSecond > 0, "replay rate must be positive");
+
+    this.directory = directory;
+    this.segmentSizeBytes = segmentSizeBytes;
+    this.maxSegmentCount = maxSegmentCount;
+    this.replayRatePerSecond = replayRatePerSecond;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public int getSegmentSizeBytes() {
+    return segmentSizeBytes;
+  }
+
+  public int getMaxSegmentCount() {
+    return maxSegmentCount;
+  }
+
+  public int getReplayRatePerSecond() {
+    return replayRatePerSecond;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this);
+  }
+}
@@ -0,0 +1,120 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.datum.DatumType;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AggregatingBreadcrumbHandlerTest {
+
+  private static final Instant BUCKET_START = new Instant(60 * 1000);
+  private static final Instant BUCKET_END = BUCKET_START.plus(Duration.standardMinutes(1));
+
+  private Breadcrumb breadcrumb(final String destination,
+                                final long count,
+                                final long minPayloadSize,
+                                final long maxPayloadSize) {
+    return new Breadcrumb("type",
+                          "source",
+                          destination,
+                          BUCKET_START,
+                          BUCKET_END,
+                          BUCKET_END,
+                          count,
+                          "dc",
+                          "app",
+                          "tier",
+                          count * maxPayloadSize,
+                          minPayloadSize,
+                          maxPayloadSize,
+                          null,
+                          null);
+  }
+
+  @Test
+  public void test_whenBreadcrumbsHaveTheSameKey_theyAreShippedMerged() {
+
+    final List<Breadcrumb> shippedBreadcrumbs = Lists.newArrayList();
+
+    final AggregatingBreadcrumbHandler aggregatingBreadcrumbHandler =
+            new AggregatingBreadcrumbHandler(new BreadcrumbHandler() {
+              @Override
+              public void handle(final Breadcrumb breadcrumb) {
+                shippedBreadcrumbs.add(breadcrumb);
+              }
+            }, Duration.ZERO);
+
+    for (int i = 0; i < 40; i++) {
+      aggregatingBreadcrumbHandler.handle(breadcrumb("destination", 10, 5, 20));
+    }
+    aggregatingBreadcrumbHandler.handle(breadcrumb("destination", 1, 0, 0));
+    aggregatingBreadcrumbHandler.handle(breadcrumb("otherDestination", 3, 1, 2));
+
+    aggregatingBreadcrumbHandler.flush();
+
+    assertThat(shippedBreadcrumbs.size(), is(2));
+
+    for (final Breadcrumb breadcrumb : shippedBreadcrumbs) {
+      if (breadcrumb.getDestination().equals("destination")) {
+        assertThat(breadcrumb.getCount(), is(401L));
+        assertThat(breadcrumb.getByteCount(), is(40 * 10 * 20L));
+        assertThat(breadcrumb.getMinPayloadSize(), is(5L));
+        assertThat(breadcrumb.getMaxPayloadSize(), is(20L));
+      } else {
+        assertThat(breadcrumb.getCount(), is(3L));
+      }
+    }
+
+    aggregatingBreadcrumbHandler.flush();
+
+    assertThat(shippedBreadcrumbs.size(), is(2));
+  }
+
+  @Test
+  public void test_whenTheFinalDispatchFlushesAll_mergedBreadcrumbsAreShippedDespiteTheShipmentInterval() {
+
+    final List<Breadcrumb> shippedBreadcrumbs = Lists.newArrayList();
+
+    final AggregatingBreadcrumbHandler aggregatingBreadcrumbHandler =
+            new AggregatingBreadcrumbHandler(new BreadcrumbHandler() {
+              @Override
+              public void handle(final Breadcrumb breadcrumb) {
+                shippedBreadcrumbs.add(breadcrumb);
+              }
+            }, Duration.standardHours(1));
+
+    final BucketBasedBreadcrumbDispatcher<Long> breadcrumbDispatcher =
+            new BucketBasedBreadcrumbDispatcher<>(Duration.standardMinutes(1),
+                                                  new DatumType.TimestampMillisExtractor<Long>() {
+                                                    @Override
+                                                    public long extractDatumTimestampMillis(final Long timestamp) {
+                                                      return timestamp;
+                                                    }
+                                                  },
+                                                  new StartTimeWithDurationBreadcrumbBaker("source",
+                                                                                           "destination",
+                                                                                           "tier",
+                                                                                           "dc",
+                                                                                           "app",
+                                                                                           "type"),
+                                                  aggregatingBreadcrumbHandler,
+                                                  Duration.standardDays(1));
+
+    breadcrumbDispatcher.report(BUCKET_START.getMillis());
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(shippedBreadcrumbs.size(), is(0));
+
+    breadcrumbDispatcher.report(BUCKET_START.getMillis());
+    breadcrumbDispatcher.dispatchAllBreadcrumbs();
+
+    assertThat(shippedBreadcrumbs.size(), is(1));
+    assertThat(shippedBreadcrumbs.get(0).getCount(), is(2L));
+  }
+}
@@ -0,0 +1,99 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.datum.serialization.DatumTypeVersion;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.serialization.SerializedDatum;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BinaryBreadcrumbSerDeTest {
+
+  private final Breadcrumb breadcrumb = new Breadcrumb("type",
+                                                       "source",
+                                                       "destination",
+                                                       new Instant(1000),
+                                                       new Instant(2000),
+                                                       new Instant(3000),
+                                                       42,
+                                                       "datacenter",
+                                                       "application",
+                                                       "tier",
+                                                       4200,
+                                                       10,
+                                                       500,
+                                                       new LatencySketch(new int[]{3, 40}, new long[]{5, 37}),
+                                                       null);
+
+  private final BinaryBreadcrumbSerDe binaryBreadcrumbSerDe = new BinaryBreadcrumbSerDe();
+
+  @Test
+  public void test_whenSerializingBinaryBreadcrumb_itIsSmallerThanJsonAndDeserializedBack() {
+
+    final SerializedDatum binaryBreadcrumb = binaryBreadcrumbSerDe.serializeDatum(breadcrumb);
+    final SerializedDatum jsonBreadcrumb = new JsonDatumSerDe<>(Breadcrumb.class).serializeDatum(breadcrumb);
+
+    assertThat(binaryBreadcrumb.getPayload().remaining() * 3 < jsonBreadcrumb.getPayload().remaining(), is(true));
+    assertThat(binaryBreadcrumbSerDe.deserializeDatum(binaryBreadcrumb), is(breadcrumb));
+  }
+
+  @Test
+  public void test_whenDeserializingJsonBreadcrumb_itIsDeserialized() {
+
+    final SerializedDatum jsonBreadcrumb = new JsonDatumSerDe<>(Breadcrumb.class).serializeDatum(breadcrumb);
+
+    assertThat(binaryBreadcrumbSerDe.deserializeDatum(jsonBreadcrumb), is(breadcrumb));
+  }
+
+  @Test
+  public void test_whenDeserializingAPreviousVersion_itIsResolvedAgainstItsOwnSchema() throws Exception {
+
+    final Schema writerSchema;
+    try (final InputStream schemaStream = getClass().getResourceAsStream("breadcrumbs.v2.avsc")) {
+      writerSchema = new Schema.Parser().parse(schemaStream).getTypes().get(0);
+    }
+
+    final GenericRecord record = new GenericData.Record(writerSchema);
+    record.put("type", "type");
+    record.put("source", "source");
+    record.put("destination", "destination");
+    record.put("bucket_start_time", 1000L);
+    record.put("bucket_end_time", 2000L);
+    record.put("processing_timestamp", 3000L);
+    record.put("count", 42L);
+    record.put("datacenter", "datacenter");
+    record.put("application", "application");
+    record.put("tier", "tier");
+
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final BinaryEncoder binaryEncoder = EncoderFactory.get().directBinaryEncoder(byteStream, null);
+    new GenericDatumWriter<GenericRecord>(writerSchema).write(record, binaryEncoder);
+    binaryEncoder.flush();
+
+    final Breadcrumb deserialized = binaryBreadcrumbSerDe.deserializeDatum(
+            new SerializedDatum(ByteBuffer.wrap(byteStream.toByteArray()), new DatumTypeVersion("Breadcrumb", 2)));
+
+    assertThat(deserialized, is(new Breadcrumb("type",
+                                               "source",
+                                               "destination",
+                                               new Instant(1000),
+                                               new Instant(2000),
+                                               new Instant(3000),
+                                               42,
+                                               "datacenter",
+                                               "application",
+                                               "tier")));
+  }
+}
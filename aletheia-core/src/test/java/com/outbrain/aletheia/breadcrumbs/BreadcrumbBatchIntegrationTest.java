@@ -0,0 +1,103 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.datum.consumption.DatumConsumer;
+import com.outbrain.aletheia.datum.consumption.DatumConsumerBuilder;
+import com.outbrain.aletheia.datum.consumption.DatumConsumerConfig;
+import com.outbrain.aletheia.datum.consumption.ManualFeedConsumptionEndPoint;
+import com.outbrain.aletheia.datum.production.DatumProducer;
+import com.outbrain.aletheia.datum.production.DatumProducerBuilder;
+import com.outbrain.aletheia.datum.production.DatumProducerConfig;
+import com.outbrain.aletheia.datum.production.InMemoryProductionEndPoint;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BreadcrumbBatchIntegrationTest {
+
+  private static final int DATUM_COUNT = 10;
+
+  private static final BreadcrumbsConfig BATCHED_BREADCRUMBS_CONFIG =
+          new BreadcrumbsConfig(Duration.standardSeconds(1), Duration.millis(10), "app", "src", "tier", "dc")
+                  .withBatchedDelivery(true)
+                  .withSerializationFormat(BreadcrumbsConfig.SerializationFormat.Binary);
+
+  private List<Breadcrumb> consumeAll(final List<byte[]> breadcrumbBatches) {
+
+    final ManualFeedConsumptionEndPoint consumptionEndPoint = new ManualFeedConsumptionEndPoint(breadcrumbBatches);
+
+    final DatumConsumer<BreadcrumbBatch> breadcrumbBatchConsumer =
+            Iterables.getFirst(DatumConsumerBuilder
+                                       .forDomainClass(BreadcrumbBatch.class)
+                                       .consumeDataFrom(consumptionEndPoint,
+                                                        new BinaryBreadcrumbBatchSerDe())
+                                       .build(new DatumConsumerConfig(0, "hostname"))
+                                       .get(consumptionEndPoint),
+                               null);
+
+    final FluentIterable<BreadcrumbBatch> batches =
+            FluentIterable.from(breadcrumbBatchConsumer.datums()).limit(breadcrumbBatches.size());
+
+    return Lists.newArrayList(new UnbatchingBreadcrumbConsumer(new DatumConsumer<BreadcrumbBatch>() {
+      @Override
+      public Iterable<BreadcrumbBatch> datums() {
+        return batches;
+      }
+    }).datums());
+  }
+
+  private long totalCount(final List<Breadcrumb> breadcrumbs) {
+    long totalCount = 0;
+    for (final Breadcrumb breadcrumb : breadcrumbs) {
+      totalCount += breadcrumb.getCount();
+    }
+    return totalCount;
+  }
+
+  @Test
+  public void test_whenDeliveringBreadcrumbsInBatches_allBreadcrumbsAreUnbatched() throws Exception {
+
+    final InMemoryProductionEndPoint breadcrumbProductionEndPoint =
+            new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope);
+
+    final DatumProducer<SampleDomainClass> datumProducer =
+            DatumProducerBuilder
+                    .forDomainClass(SampleDomainClass.class)
+                    .deliverBreadcrumbsTo(breadcrumbProductionEndPoint, BATCHED_BREADCRUMBS_CONFIG)
+                    .deliverDataTo(new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope),
+                                   new JsonDatumSerDe<>(SampleDomainClass.class))
+                    .build(new DatumProducerConfig(0, "hostname"));
+
+    final Instant now = Instant.now();
+
+    for (int i = 0; i < DATUM_COUNT; i++) {
+      datumProducer.deliver(new SampleDomainClass(i, i, "", now.minus(Duration.standardSeconds(i)), true));
+    }
+
+    List<Breadcrumb> breadcrumbs = Lists.newArrayList();
+
+    // wait for the breadcrumbs to be flushed.
+    for (int attempts = 1; attempts < 20 && totalCount(breadcrumbs) < DATUM_COUNT; attempts++) {
+      Thread.sleep(100);
+      breadcrumbs = consumeAll(Lists.newArrayList(Iterables.concat(breadcrumbProductionEndPoint
+                                                                           .getDataAsKey2ByteArrays()
+                                                                           .values())));
+    }
+
+    assertThat(totalCount(breadcrumbs), is((long) DATUM_COUNT));
+
+    for (final Breadcrumb breadcrumb : breadcrumbs) {
+      assertThat(breadcrumb.getType(), is(DatumUtils.getDatumTypeId(SampleDomainClass.class)));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.datum.consumption.DatumConsumer;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BreadcrumbReconcilerTest {
+
+  private static final Duration BUCKET_DURATION = Duration.standardMinutes(1);
+  private static final Instant BUCKET_START = new Instant(BUCKET_DURATION.getMillis() * 1000);
+  private static final Instant BUCKET_END = BUCKET_START.plus(BUCKET_DURATION);
+
+  private Breadcrumb breadcrumb(final String destination,
+                                final Instant bucketStart,
+                                final Duration bucketDuration,
+                                final Duration emittedAfterBucketEnd,
+                                final long count) {
+    return new Breadcrumb("type",
+                          "source",
+                          destination,
+                          bucketStart,
+                          bucketStart.plus(bucketDuration),
+                          BUCKET_END.plus(emittedAfterBucketEnd),
+                          count,
+                          "",
+                          "",
+                          "");
+  }
+
+  @Test
+  public void test_whenReconcilingPartialBreadcrumbs_lossDuplicationAndCompletionAreReported() {
+
+    final DatumConsumer<Breadcrumb> breadcrumbConsumer = new DatumConsumer<Breadcrumb>() {
+      @Override
+      public Iterable<Breadcrumb> datums() {
+        return Arrays.asList(
+                breadcrumb("producer", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 60),
+                breadcrumb("consumer", BUCKET_START, Duration.standardSeconds(30), Duration.standardSeconds(5), 30),
+                breadcrumb("replicator", BUCKET_START, BUCKET_DURATION, Duration.standardSeconds(7), 70),
+                breadcrumb("producer", BUCKET_START, BUCKET_DURATION, Duration.standardSeconds(8), 10),
+                breadcrumb("consumer",
+                           BUCKET_START.plus(Duration.standardSeconds(30)),
+                           Duration.standardSeconds(30),
+                           Duration.standardSeconds(10),
+                           40),
+                breadcrumb("consumer", BUCKET_START, BUCKET_DURATION.plus(1), Duration.ZERO, 1000));
+      }
+    };
+
+    final BreadcrumbReconciler breadcrumbReconciler = new BreadcrumbReconciler(breadcrumbConsumer,
+                                                                               "producer",
+                                                                               BUCKET_DURATION,
+                                                                               Duration.standardDays(1),
+                                                                               100,
+                                                                               MetricsFactory.NULL);
+    breadcrumbReconciler.run();
+
+    final HopReconciliation consumer = breadcrumbReconciler.reconciliation("type", "consumer", BUCKET_START).get();
+
+    assertThat(consumer.getCount(), is(70L));
+    assertThat(consumer.getReferenceCount(), is(70L));
+    assertThat(consumer.getLossRatio(), is(0.0));
+    assertThat(consumer.getCompletionLatency().get(), is(Duration.standardSeconds(10)));
+
+    final HopReconciliation replicator = breadcrumbReconciler.reconciliation("type", "replicator", BUCKET_START).get();
+
+    // the reference count has grown after the replicator completed, but not beyond its count.
+    assertThat(replicator.getCount(), is(70L));
+    assertThat(replicator.getCompletionLatency().get(), is(Duration.standardSeconds(7)));
+
+    assertThat(breadcrumbReconciler.reconciliations(BUCKET_START).size(), is(3));
+    assertThat(breadcrumbReconciler.reconciliations(BUCKET_END).size(), is(0));
+  }
+
+  @Test
+  public void test_whenReferenceHopReportsMoreHits_lossIsReported() {
+
+    final DatumConsumer<Breadcrumb> breadcrumbConsumer = new DatumConsumer<Breadcrumb>() {
+      @Override
+      public Iterable<Breadcrumb> datums() {
+        return Arrays.asList(breadcrumb("producer", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 100),
+                             breadcrumb("consumer", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 75),
+                             breadcrumb("mirror", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 150));
+      }
+    };
+
+    final BreadcrumbReconciler breadcrumbReconciler = new BreadcrumbReconciler(breadcrumbConsumer,
+                                                                               "producer",
+                                                                               BUCKET_DURATION,
+                                                                               Duration.standardHours(1),
+                                                                               100,
+                                                                               MetricsFactory.NULL);
+    breadcrumbReconciler.run();
+
+    final HopReconciliation consumer = breadcrumbReconciler.reconciliation("type", "consumer", BUCKET_START).get();
+    final HopReconciliation mirror = breadcrumbReconciler.reconciliation("type", "mirror", BUCKET_START).get();
+
+    assertThat(consumer.getLossRatio(), is(0.25));
+    assertThat(consumer.isComplete(), is(false));
+    assertThat(mirror.getDuplicationRatio(), is(0.5));
+    assertThat(mirror.isComplete(), is(true));
+  }
+
+  @Test
+  public void test_whenBreadcrumbsAreOutOfRange_theyAreRejected() {
+
+    final DatumConsumer<Breadcrumb> breadcrumbConsumer = new DatumConsumer<Breadcrumb>() {
+      @Override
+      public Iterable<Breadcrumb> datums() {
+        return Arrays.asList(breadcrumb("producer", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 100),
+                             breadcrumb("consumer", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 100),
+                             breadcrumb("mirror", BUCKET_START, BUCKET_DURATION, Duration.ZERO, 100),
+                             breadcrumb("producer",
+                                        new Instant(-BUCKET_DURATION.getMillis()),
+                                        BUCKET_DURATION,
+                                        Duration.ZERO,
+                                        100));
+      }
+    };
+
+    final BreadcrumbReconciler breadcrumbReconciler = new BreadcrumbReconciler(breadcrumbConsumer,
+                                                                               "producer",
+                                                                               BUCKET_DURATION,
+                                                                               Duration.standardHours(1),
+                                                                               2,
+                                                                               MetricsFactory.NULL);
+    breadcrumbReconciler.run();
+
+    assertThat(breadcrumbReconciler.reconciliation("type", "consumer", BUCKET_START).isPresent(), is(true));
+    assertThat(breadcrumbReconciler.reconciliation("type", "mirror", BUCKET_START).isPresent(), is(false));
+    assertThat(breadcrumbReconciler.reconciliations(new Instant(-BUCKET_DURATION.getMillis())).size(), is(0));
+  }
+}
@@ -0,0 +1,449 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.outbrain.aletheia.datum.DatumUtils;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BucketBasedBreadcrumbDispatcherTest {
+
+  private static final int THREAD_COUNT = 8;
+  private static final int HITS_PER_THREAD = 200 * 1000;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicLong dispatchedHitCount = new AtomicLong(0);
+
+  private final AtomicLong dispatchedBreadcrumbCount = new AtomicLong(0);
+
+  private final BreadcrumbHandler hitCountUpdater = new BreadcrumbHandler() {
+    @Override
+    public void handle(final Breadcrumb breadcrumb) {
+      dispatchedBreadcrumbCount.incrementAndGet();
+      dispatchedHitCount.getAndAdd(breadcrumb.getCount());
+    }
+  };
+
+  private BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher() {
+    return breadcrumbDispatcher(BucketFinalizationPolicy.EVERY_DISPATCH);
+  }
+
+  private BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher(final BucketFinalizationPolicy bucketFinalizationPolicy) {
+    return breadcrumbDispatcher(bucketFinalizationPolicy, BreadcrumbCheckpoint.NULL);
+  }
+
+  private BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher(final BucketFinalizationPolicy bucketFinalizationPolicy,
+                                                                                  final BreadcrumbCheckpoint breadcrumbCheckpoint) {
+    return new BucketBasedBreadcrumbDispatcher<>(Collections.singletonList(Duration.standardSeconds(1)),
+                                                 DatumUtils.getDatumTimestampMillisExtractor(SampleDomainClass.class),
+                                                 new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                                                 hitCountUpdater,
+                                                 Duration.standardMinutes(1),
+                                                 bucketFinalizationPolicy,
+                                                 breadcrumbCheckpoint,
+                                                 false,
+                                                 MetricsFactory.NULL);
+  }
+
+  private SampleDomainClass datum(final Instant timestamp) {
+    return new SampleDomainClass(1, 1, "", timestamp, true);
+  }
+
+  @Test
+  public void test_whenReportingConcurrentlyWithDispatching_allHitsAreDispatchedExactlyOnce() throws Exception {
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher = breadcrumbDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    final List<Future<?>> reporters = new LinkedList<>();
+    final AtomicBoolean reporting = new AtomicBoolean(true);
+
+    for (int i = 0; i < THREAD_COUNT; i++) {
+      reporters.add(executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          final SampleDomainClass datum = new SampleDomainClass(1, 1, "", Instant.now(), true);
+          for (int hit = 0; hit < HITS_PER_THREAD; hit++) {
+            breadcrumbDispatcher.report(datum);
+          }
+        }
+      }));
+    }
+
+    final Future<?> dispatcher = executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        while (reporting.get()) {
+          breadcrumbDispatcher.dispatchBreadcrumbs();
+        }
+      }
+    });
+
+    for (final Future<?> reporter : reporters) {
+      reporter.get();
+    }
+
+    reporting.set(false);
+    dispatcher.get();
+    executorService.shutdown();
+
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(dispatchedHitCount.get(), is((long) THREAD_COUNT * HITS_PER_THREAD));
+  }
+
+  @Test
+  public void test_whenUsingADateTimeTimestampExtractor_hitsAreBucketedByItsTimestamps() throws Exception {
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            new BucketBasedBreadcrumbDispatcher<>(Duration.standardSeconds(1),
+                                                  DatumUtils.getDatumTimestampExtractor(SampleDomainClass.class),
+                                                  new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                                                  hitCountUpdater,
+                                                  Duration.standardMinutes(1));
+    final Instant now = Instant.now();
+
+    breadcrumbDispatcher.report(datum(now));
+    breadcrumbDispatcher.report(datum(now.minus(Duration.standardSeconds(5))));
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(dispatchedBreadcrumbCount.get(), is(2L));
+    assertThat(dispatchedHitCount.get(), is(2L));
+  }
+
+  @Test
+  public void test_whenReportingCollidingIntervals_allHitsAreDispatched() throws Exception {
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher = breadcrumbDispatcher();
+    final Instant now = Instant.now();
+
+    // hits a minute apart map to the same bucket id, given a pre-allocated interval of a minute.
+    for (int minutesAgo = 0; minutesAgo < 10; minutesAgo++) {
+      breadcrumbDispatcher.report(new SampleDomainClass(1,
+                                                        1,
+                                                        "",
+                                                        now.minus(Duration.standardMinutes(minutesAgo)),
+                                                        true));
+    }
+
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(dispatchedHitCount.get(), is(10L));
+  }
+
+  @Test
+  public void test_whenHoldingBucketsOpen_eachBucketIsDispatchedOnceAfterTheWatermark() throws Exception {
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            breadcrumbDispatcher(BucketFinalizationPolicy.afterLateness(Duration.standardMinutes(10), true));
+    final Instant now = Instant.now();
+
+    for (int i = 0; i < 5; i++) {
+      breadcrumbDispatcher.report(datum(now));
+      breadcrumbDispatcher.dispatchBreadcrumbs();
+    }
+
+    assertThat(dispatchedBreadcrumbCount.get(), is(0L));
+
+    // an hour old bucket is past the watermark, a hit arriving after it was dispatched is a late correction.
+    breadcrumbDispatcher.report(datum(now.minus(Duration.standardHours(1))));
+    breadcrumbDispatcher.report(datum(now.minus(Duration.standardHours(1))));
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+    breadcrumbDispatcher.report(datum(now.minus(Duration.standardHours(1))));
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(dispatchedBreadcrumbCount.get(), is(2L));
+    assertThat(dispatchedHitCount.get(), is(3L));
+
+    breadcrumbDispatcher.dispatchAllBreadcrumbs();
+
+    assertThat(dispatchedBreadcrumbCount.get(), is(3L));
+    assertThat(dispatchedHitCount.get(), is(8L));
+  }
+
+  @Test
+  public void test_whenEmittingLateCorrections_theySumUpWithTheBucketsBreadcrumb() throws Exception {
+
+    final List<Breadcrumb> breadcrumbs = new LinkedList<>();
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            new BucketBasedBreadcrumbDispatcher<>(Collections.singletonList(Duration.standardSeconds(1)),
+                                                  DatumUtils.getDatumTimestampMillisExtractor(SampleDomainClass.class),
+                                                  new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                                                  new BreadcrumbHandler() {
+                                                    @Override
+                                                    public void handle(final Breadcrumb breadcrumb) {
+                                                      breadcrumbs.add(breadcrumb);
+                                                    }
+                                                  },
+                                                  Duration.standardMinutes(1),
+                                                  BucketFinalizationPolicy.afterLateness(Duration.standardMinutes(10),
+                                                                                         true),
+                                                  BreadcrumbCheckpoint.NULL,
+                                                  false,
+                                                  MetricsFactory.NULL);
+
+    final Instant anHourAgo = Instant.now().minus(Duration.standardHours(1));
+
+    breadcrumbDispatcher.report(datum(anHourAgo));
+    breadcrumbDispatcher.report(datum(anHourAgo));
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+    breadcrumbDispatcher.report(datum(anHourAgo));
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(breadcrumbs.size(), is(2));
+
+    final Breadcrumb breadcrumb = breadcrumbs.get(0);
+    final Breadcrumb lateCorrection = breadcrumbs.get(1);
+
+    assertThat(lateCorrection.getCount(), is(1L));
+    assertThat(lateCorrection.getBucketStartTime(), is(breadcrumb.getBucketStartTime()));
+    assertThat(lateCorrection.getBucketEndTime(), is(breadcrumb.getBucketEndTime()));
+    assertThat(lateCorrection.getProcessingTimestamp().isBefore(breadcrumb.getProcessingTimestamp()), is(false));
+    assertThat(AggregatingBreadcrumbHandler.merge(breadcrumb, lateCorrection).getCount(), is(3L));
+  }
+
+  @Test
+  public void test_whenDroppingLateHits_hitsPastTheWatermarkAreNotDispatched() throws Exception {
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            breadcrumbDispatcher(BucketFinalizationPolicy.afterLateness(Duration.standardMinutes(10), false));
+
+    breadcrumbDispatcher.report(datum(Instant.now().minus(Duration.standardHours(1))));
+    breadcrumbDispatcher.dispatchAllBreadcrumbs();
+
+    assertThat(dispatchedHitCount.get(), is(0L));
+  }
+
+  @Test
+  public void test_whenCountingMultipleResolutions_coarserBreadcrumbsAreRolledUp() throws Exception {
+
+    final List<Breadcrumb> breadcrumbs = new LinkedList<>();
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            new BucketBasedBreadcrumbDispatcher<>(Arrays.asList(Duration.standardHours(1), Duration.standardSeconds(10)),
+                                                  DatumUtils.getDatumTimestampMillisExtractor(SampleDomainClass.class),
+                                                  new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                                                  new BreadcrumbHandler() {
+                                                    @Override
+                                                    public void handle(final Breadcrumb breadcrumb) {
+                                                      breadcrumbs.add(breadcrumb);
+                                                    }
+                                                  },
+                                                  Duration.standardHours(1),
+                                                  BucketFinalizationPolicy.EVERY_DISPATCH,
+                                                  BreadcrumbCheckpoint.NULL,
+                                                  false,
+                                                  MetricsFactory.NULL);
+
+    final Instant hourStart = new Instant(Duration.standardHours(1000).getMillis());
+
+    for (int i = 0; i < 6; i++) {
+      breadcrumbDispatcher.report(datum(hourStart.plus(Duration.standardSeconds(10 * i))));
+    }
+
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(breadcrumbs.size(), is(7));
+
+    final Breadcrumb hourlyBreadcrumb = breadcrumbs.get(6);
+
+    assertThat(hourlyBreadcrumb.getBucketStartTime(), is(hourStart));
+    assertThat(hourlyBreadcrumb.getBucketEndTime(), is(hourStart.plus(Duration.standardHours(1))));
+    assertThat(hourlyBreadcrumb.getCount(), is(6L));
+  }
+
+  @Test
+  public void test_whenRecoveringFromCheckpoint_pendingHitsAreDispatched() throws Exception {
+
+    final File checkpointFile = new File(temporaryFolder.getRoot(), "breadcrumbs.checkpoint");
+    final Instant now = Instant.now();
+
+    final MappedBreadcrumbCheckpoint crashingCheckpoint = new MappedBreadcrumbCheckpoint(checkpointFile, 16);
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> crashingDispatcher =
+            breadcrumbDispatcher(BucketFinalizationPolicy.EVERY_DISPATCH, crashingCheckpoint);
+
+    for (int i = 0; i < 5; i++) {
+      crashingDispatcher.report(datum(now));
+    }
+    crashingDispatcher.report(datum(now.minus(Duration.standardHours(1))));
+
+    crashingDispatcher.checkpoint();
+
+    // the file is released when the process dies.
+    crashingCheckpoint.close();
+
+    final MappedBreadcrumbCheckpoint recoveredCheckpoint = new MappedBreadcrumbCheckpoint(checkpointFile, 16);
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> recoveredDispatcher =
+            breadcrumbDispatcher(BucketFinalizationPolicy.EVERY_DISPATCH, recoveredCheckpoint);
+
+    recoveredDispatcher.dispatchBreadcrumbs();
+    recoveredCheckpoint.close();
+
+    assertThat(dispatchedHitCount.get(), is(6L));
+    assertThat(dispatchedBreadcrumbCount.get(), is(2L));
+    assertThat(new MappedBreadcrumbCheckpoint(checkpointFile, 16).read().isEmpty(), is(true));
+  }
+
+  @Test
+  public void test_whenCheckpointFileIsInAPreviousFormat_itIsDiscarded() throws Exception {
+
+    final File checkpointFile = new File(temporaryFolder.getRoot(), "breadcrumbs.checkpoint");
+
+    // a slot of the unversioned format, holding a sequence number, an entry count and 3 long entries.
+    final ByteBuffer previousSlot = ByteBuffer.allocate(8 + 4 + 3 * 8);
+    previousSlot.putLong(1).putInt(1).putLong(1000).putLong(0).putLong(5);
+    final CRC32 crc32 = new CRC32();
+    crc32.update(previousSlot.array());
+
+    try (final RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile, "rw")) {
+      randomAccessFile.write(previousSlot.array());
+      randomAccessFile.writeLong(crc32.getValue());
+    }
+
+    try (final MappedBreadcrumbCheckpoint checkpoint = new MappedBreadcrumbCheckpoint(checkpointFile, 16)) {
+      assertThat(checkpoint.read().isEmpty(), is(true));
+      checkpoint.write(Collections.singletonList(new BreadcrumbCheckpoint.PendingHits(1000, 0, 7, 0, 0, 0)));
+    }
+
+    try (final MappedBreadcrumbCheckpoint checkpoint = new MappedBreadcrumbCheckpoint(checkpointFile, 16)) {
+      assertThat(checkpoint.read().get(0).getHitCount(), is(7L));
+    }
+  }
+
+  @Test
+  public void test_whenCheckpointsShareANamePrefix_eachMapsAFileOfItsOwn() throws Exception {
+
+    final MappedBreadcrumbCheckpoint checkpoint =
+            MappedBreadcrumbCheckpoint.openUnused(temporaryFolder.getRoot(), "breadcrumbs", 16);
+    final MappedBreadcrumbCheckpoint otherCheckpoint =
+            MappedBreadcrumbCheckpoint.openUnused(temporaryFolder.getRoot(), "breadcrumbs", 16);
+
+    checkpoint.write(Collections.singletonList(new BreadcrumbCheckpoint.PendingHits(1000, 0, 5, 0, 0, 0)));
+    otherCheckpoint.write(Collections.singletonList(new BreadcrumbCheckpoint.PendingHits(1000, 0, 7, 0, 0, 0)));
+
+    assertThat(checkpoint.read().get(0).getHitCount(), is(5L));
+    assertThat(otherCheckpoint.read().get(0).getHitCount(), is(7L));
+    assertThat(new File(temporaryFolder.getRoot(), "breadcrumbs.0.checkpoint").exists(), is(true));
+    assertThat(new File(temporaryFolder.getRoot(), "breadcrumbs.1.checkpoint").exists(), is(true));
+  }
+
+  @Test
+  public void test_whenCheckpointCapacityChanges_theFileIsResizedAndItsHitsKept() throws Exception {
+
+    final File file = temporaryFolder.newFile("breadcrumbs.checkpoint");
+
+    final MappedBreadcrumbCheckpoint previousCheckpoint = new MappedBreadcrumbCheckpoint(file, 16);
+    previousCheckpoint.write(Arrays.asList(new BreadcrumbCheckpoint.PendingHits(1000, 0, 5, 0, 0, 0),
+                                           new BreadcrumbCheckpoint.PendingHits(1000, 1000, 7, 0, 0, 0)));
+    previousCheckpoint.close();
+    final long previousFileLength = file.length();
+
+    final MappedBreadcrumbCheckpoint checkpoint = new MappedBreadcrumbCheckpoint(file, 4);
+
+    assertThat(file.length() < previousFileLength, is(true));
+    assertThat(checkpoint.read().size(), is(2));
+    assertThat(checkpoint.read().get(1).getHitCount(), is(7L));
+
+    checkpoint.close();
+  }
+
+  @Test
+  public void test_whenAPreviousRunHadMoreCheckpoints_theirHitsAreMergedAndTheirFilesDeleted() throws Exception {
+
+    for (int index = 0; index < 3; index++) {
+      final File file = new File(temporaryFolder.getRoot(), "breadcrumbs." + index + ".checkpoint");
+      final MappedBreadcrumbCheckpoint previousCheckpoint = new MappedBreadcrumbCheckpoint(file, 16);
+      previousCheckpoint.write(Collections.singletonList(new BreadcrumbCheckpoint.PendingHits(1000,
+                                                                                              index * 1000,
+                                                                                              index + 1,
+                                                                                              0,
+                                                                                              0,
+                                                                                              0)));
+      previousCheckpoint.close();
+    }
+
+    final MappedBreadcrumbCheckpoint checkpoint =
+            MappedBreadcrumbCheckpoint.openUnused(temporaryFolder.getRoot(), "breadcrumbs", 16);
+
+    long recoveredHitCount = 0;
+    for (final BreadcrumbCheckpoint.PendingHits pendingHits : checkpoint.read()) {
+      recoveredHitCount += pendingHits.getHitCount();
+    }
+
+    assertThat(recoveredHitCount, is(6L));
+    assertThat(new File(temporaryFolder.getRoot(), "breadcrumbs.0.checkpoint").exists(), is(true));
+    assertThat(new File(temporaryFolder.getRoot(), "breadcrumbs.1.checkpoint").exists(), is(false));
+    assertThat(new File(temporaryFolder.getRoot(), "breadcrumbs.2.checkpoint").exists(), is(false));
+
+    checkpoint.close();
+  }
+
+  @Test
+  public void test_whenReportingPayloadSizes_byteCountAndPayloadSizeRangeAreRolledUp() throws Exception {
+
+    final List<Breadcrumb> breadcrumbs = new LinkedList<>();
+
+    final BucketBasedBreadcrumbDispatcher<SampleDomainClass> breadcrumbDispatcher =
+            new BucketBasedBreadcrumbDispatcher<>(Arrays.asList(Duration.standardHours(1), Duration.standardSeconds(10)),
+                                                  DatumUtils.getDatumTimestampMillisExtractor(SampleDomainClass.class),
+                                                  new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                                                  new BreadcrumbHandler() {
+                                                    @Override
+                                                    public void handle(final Breadcrumb breadcrumb) {
+                                                      breadcrumbs.add(breadcrumb);
+                                                    }
+                                                  },
+                                                  Duration.standardHours(1),
+                                                  BucketFinalizationPolicy.EVERY_DISPATCH,
+                                                  BreadcrumbCheckpoint.NULL,
+                                                  false,
+                                                  MetricsFactory.NULL);
+
+    final Instant hourStart = new Instant(Duration.standardHours(1000).getMillis());
+
+    breadcrumbDispatcher.report(datum(hourStart), 100);
+    breadcrumbDispatcher.report(datum(hourStart), 20);
+    breadcrumbDispatcher.report(datum(hourStart.plus(Duration.standardSeconds(10))), 300);
+
+    breadcrumbDispatcher.dispatchBreadcrumbs();
+
+    assertThat(breadcrumbs.size(), is(3));
+
+    final Breadcrumb firstBreadcrumb = breadcrumbs.get(0).getBucketStartTime().equals(hourStart) ?
+                                       breadcrumbs.get(0) :
+                                       breadcrumbs.get(1);
+
+    assertThat(firstBreadcrumb.getByteCount(), is(120L));
+    assertThat(firstBreadcrumb.getMinPayloadSize(), is(20L));
+    assertThat(firstBreadcrumb.getMaxPayloadSize(), is(100L));
+
+    final Breadcrumb hourlyBreadcrumb = breadcrumbs.get(2);
+
+    assertThat(hourlyBreadcrumb.getCount(), is(3L));
+    assertThat(hourlyBreadcrumb.getByteCount(), is(420L));
+    assertThat(hourlyBreadcrumb.getMinPayloadSize(), is(20L));
+    assertThat(hourlyBreadcrumb.getMaxPayloadSize(), is(300L));
+  }
+}
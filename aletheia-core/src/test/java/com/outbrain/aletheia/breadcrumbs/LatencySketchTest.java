@@ -0,0 +1,72 @@
+package com.outbrain.aletheia.breadcrumbs;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencySketchTest {
+
+  private static void assertWithinRelativeError(final long estimate, final long expected) {
+    assertThat(Math.abs(estimate - expected) <= expected / LatencySketch.SUB_BUCKET_COUNT, is(true));
+  }
+
+  @Test
+  public void test_whenMergingSketches_quantilesAreWithinRelativeErrorOfTheCombinedDistribution() {
+
+    final LatencyRecorder firstHost = new LatencyRecorder();
+    final LatencyRecorder secondHost = new LatencyRecorder();
+
+    for (int latencyMillis = 1; latencyMillis <= 10000; latencyMillis++) {
+      (latencyMillis % 2 == 0 ? firstHost : secondHost).record(latencyMillis);
+    }
+
+    final LatencySketch mergedSketch = firstHost.drain().merge(secondHost.drain());
+
+    assertThat(mergedSketch.count(), is(10000L));
+    assertWithinRelativeError(mergedSketch.quantileMillis(0.5), 5000);
+    assertWithinRelativeError(mergedSketch.quantileMillis(0.99), 9900);
+    assertThat(firstHost.drain(), is(LatencySketch.EMPTY));
+  }
+
+  @Test
+  public void test_whenRecordingConcurrentlyIntoAFreshRecorder_noLatencyIsLost() throws Exception {
+
+    final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    assertThat(latencyRecorder.drain(), is(LatencySketch.EMPTY));
+
+    final List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int latencyMillis = 0; latencyMillis < 1000; latencyMillis++) {
+            latencyRecorder.record(latencyMillis);
+          }
+        }
+      }));
+    }
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(latencyRecorder.drain().count(), is(8000L));
+  }
+
+  @Test
+  public void test_whenMappingLatencies_bucketBoundsContainThem() {
+    for (long latencyMillis = 0; latencyMillis < 1L << 42; latencyMillis = latencyMillis * 3 + 1) {
+      final int bucketIndex = LatencySketch.bucketIndex(latencyMillis);
+      assertThat(LatencySketch.bucketLowerBoundMillis(bucketIndex) <= latencyMillis, is(true));
+      assertThat(bucketIndex == LatencySketch.BUCKET_COUNT - 1 ||
+                 latencyMillis < LatencySketch.bucketLowerBoundMillis(bucketIndex + 1), is(true));
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.outbrain.aletheia.datum;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.breadcrumbs.Breadcrumb;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbCheckpoint;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbHandler;
+import com.outbrain.aletheia.breadcrumbs.BucketFinalizationPolicy;
+import com.outbrain.aletheia.breadcrumbs.StartTimeWithDurationBreadcrumbBaker;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DatumAuditorSchedulerTest {
+
+  private static class RecordingScheduledExecutor extends ScheduledThreadPoolExecutor {
+
+    private final List<Long> initialDelays = Collections.synchronizedList(Lists.<Long>newArrayList());
+
+    private RecordingScheduledExecutor() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command,
+                                                     final long initialDelay,
+                                                     final long delay,
+                                                     final TimeUnit unit) {
+      initialDelays.add(unit.toMillis(initialDelay));
+      return super.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+  }
+
+  private final RecordingScheduledExecutor scheduledExecutor = new RecordingScheduledExecutor();
+  private final DatumAuditorScheduler datumAuditorScheduler = new DatumAuditorScheduler(scheduledExecutor);
+  private final AtomicLong dispatchedHitCount = new AtomicLong();
+
+  private final BreadcrumbHandler hitCountUpdater = new BreadcrumbHandler() {
+    @Override
+    public void handle(final Breadcrumb breadcrumb) {
+      dispatchedHitCount.addAndGet(breadcrumb.getCount());
+    }
+  };
+
+  @After
+  public void tearDown() {
+    scheduledExecutor.shutdownNow();
+  }
+
+  private DatumAuditor<SampleDomainClass> datumAuditor(final BreadcrumbHandler breadcrumbHandler,
+                                                       final Duration durationBetweenFlushes,
+                                                       final BucketFinalizationPolicy bucketFinalizationPolicy) {
+    return new DatumAuditor<>(Collections.singletonList(Duration.standardSeconds(1)),
+                              DatumUtils.getDatumTimestampMillisExtractor(SampleDomainClass.class),
+                              new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                              breadcrumbHandler,
+                              datumAuditorScheduler,
+                              durationBetweenFlushes,
+                              Duration.standardMinutes(1),
+                              bucketFinalizationPolicy,
+                              BreadcrumbCheckpoint.NULL,
+                              Duration.standardMinutes(1),
+                              false,
+                              MetricsFactory.NULL);
+  }
+
+  private DatumAuditor<SampleDomainClass> heldOpenDatumAuditor() {
+    return datumAuditor(hitCountUpdater,
+                        Duration.millis(10),
+                        BucketFinalizationPolicy.afterLateness(Duration.standardHours(1), true));
+  }
+
+  private static SampleDomainClass datum() {
+    return new SampleDomainClass(1, 1, "", Instant.now(), true);
+  }
+
+  @Test
+  public void test_whenRegisteringAuditors_theirFirstFlushIsJitteredWithinTheInterval() {
+
+    for (int i = 0; i < 10; i++) {
+      datumAuditor(hitCountUpdater, Duration.standardHours(1), BucketFinalizationPolicy.EVERY_DISPATCH);
+    }
+
+    assertThat(scheduledExecutor.initialDelays.size(), is(10));
+
+    for (final long initialDelay : scheduledExecutor.initialDelays) {
+      assertThat(0 <= initialDelay && initialDelay < Duration.standardHours(1).getMillis(), is(true));
+    }
+
+    assertThat(Collections.min(scheduledExecutor.initialDelays) < Collections.max(scheduledExecutor.initialDelays),
+               is(true));
+  }
+
+  @Test
+  public void test_whenUnregistering_bucketsHeldOpenAreFlushedAndFlushingStops() throws Exception {
+
+    final DatumAuditor<SampleDomainClass> datumAuditor = heldOpenDatumAuditor();
+
+    for (int i = 0; i < 3; i++) {
+      datumAuditor.report(datum());
+    }
+
+    Thread.sleep(50);
+    assertThat(dispatchedHitCount.get(), is(0L));
+
+    datumAuditorScheduler.unregister(datumAuditor);
+    assertThat(dispatchedHitCount.get(), is(3L));
+
+    datumAuditor.report(datum());
+    Thread.sleep(50);
+    assertThat(dispatchedHitCount.get(), is(3L));
+  }
+
+  @Test
+  public void test_whenShuttingDown_allLiveAuditorsAreFlushed() {
+
+    final DatumAuditor<SampleDomainClass> datumAuditor = heldOpenDatumAuditor();
+    final DatumAuditor<SampleDomainClass> otherDatumAuditor = heldOpenDatumAuditor();
+
+    datumAuditor.report(datum());
+    otherDatumAuditor.report(datum());
+    otherDatumAuditor.report(datum());
+
+    datumAuditorScheduler.shutdown();
+
+    assertThat(dispatchedHitCount.get(), is(3L));
+    assertThat(scheduledExecutor.isShutdown(), is(true));
+  }
+
+  @Test
+  public void test_whenUsingTheSingleBucketDurationConstructor_theGivenExecutorFlushes() {
+
+    final DatumAuditor<SampleDomainClass> datumAuditor =
+            new DatumAuditor<>(Duration.standardSeconds(1),
+                               DatumUtils.getDatumTimestampExtractor(SampleDomainClass.class),
+                               new StartTimeWithDurationBreadcrumbBaker("", "", "", "", "", ""),
+                               hitCountUpdater,
+                               scheduledExecutor,
+                               Duration.standardHours(1),
+                               Duration.standardMinutes(1));
+
+    datumAuditor.report(datum());
+    datumAuditor.report(datum());
+    datumAuditor.close();
+
+    assertThat(scheduledExecutor.initialDelays.size(), is(1));
+    assertThat(dispatchedHitCount.get(), is(2L));
+  }
+
+  @Test(timeout = 10000)
+  public void test_whenUnregisteringDuringAPeriodicFlush_theFinalFlushWaitsForIt() throws Exception {
+
+    final CountDownLatch flushStarted = new CountDownLatch(1);
+    final CountDownLatch flushReleased = new CountDownLatch(1);
+
+    final BreadcrumbHandler stallingHandler = new BreadcrumbHandler() {
+      @Override
+      public void handle(final Breadcrumb breadcrumb) {
+        flushStarted.countDown();
+        try {
+          flushReleased.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        dispatchedHitCount.addAndGet(breadcrumb.getCount());
+      }
+    };
+
+    final DatumAuditor<SampleDomainClass> datumAuditor =
+            datumAuditor(stallingHandler, Duration.millis(10), BucketFinalizationPolicy.EVERY_DISPATCH);
+
+    datumAuditor.report(datum());
+    flushStarted.await();
+    datumAuditor.report(datum());
+
+    final Thread unregistering = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        datumAuditorScheduler.unregister(datumAuditor);
+      }
+    });
+    unregistering.start();
+
+    while (unregistering.getState() != Thread.State.BLOCKED) {
+      Thread.sleep(10);
+    }
+
+    flushReleased.countDown();
+    unregistering.join();
+
+    assertThat(dispatchedHitCount.get(), is(2L));
+  }
+}
@@ -0,0 +1,78 @@
+package com.outbrain.aletheia.datum;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DatumUtilsTest {
+
+  private static final long TIMESTAMP_MILLIS = 1234567890123L;
+
+  public static class DateTimeExtractor implements DatumType.TimestampExtractor<DateTimeDatum> {
+    @Override
+    public DateTime extractDatumDateTime(final DateTimeDatum domainObject) {
+      return new DateTime(TIMESTAMP_MILLIS);
+    }
+  }
+
+  public static class MillisExtractor implements DatumType.TimestampMillisExtractor<MillisDatum> {
+    @Override
+    public long extractDatumTimestampMillis(final MillisDatum domainObject) {
+      return TIMESTAMP_MILLIS;
+    }
+  }
+
+  @DatumType(datumTypeId = "date_time_datum", timestampExtractor = DateTimeExtractor.class)
+  public static class DateTimeDatum {
+  }
+
+  @DatumType(datumTypeId = "millis_datum", timestampMillisExtractor = MillisExtractor.class)
+  public static class MillisDatum {
+  }
+
+  @DatumType(datumTypeId = "both_extractors_datum",
+             timestampExtractor = DateTimeExtractor.class,
+             timestampMillisExtractor = MillisExtractor.class)
+  public static class BothExtractorsDatum {
+  }
+
+  @DatumType(datumTypeId = "no_extractor_datum")
+  public static class NoExtractorDatum {
+  }
+
+  @Test
+  public void test_whenOnlyADateTimeExtractorIsSpecified_itIsAdaptedToMillis() {
+    assertThat(DatumUtils.getDatumTimestampMillisExtractor(DateTimeDatum.class)
+                         .extractDatumTimestampMillis(new DateTimeDatum()),
+               is(TIMESTAMP_MILLIS));
+  }
+
+  @Test
+  public void test_whenOnlyAMillisExtractorIsSpecified_itIsAdaptedToDateTime() {
+    assertThat(DatumUtils.getDatumTimestampExtractor(MillisDatum.class).extractDatumDateTime(new MillisDatum()),
+               is(new DateTime(TIMESTAMP_MILLIS)));
+  }
+
+  @Test
+  public void test_whenTheSpecifiedExtractorIsRequested_itIsReturnedAsIs() {
+    assertThat(DatumUtils.getDatumTimestampExtractor(DateTimeDatum.class) instanceof DateTimeExtractor, is(true));
+    assertThat(DatumUtils.getDatumTimestampMillisExtractor(MillisDatum.class) instanceof MillisExtractor, is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_whenBothExtractorsAreSpecified_gettingAMillisExtractorThrows() {
+    DatumUtils.getDatumTimestampMillisExtractor(BothExtractorsDatum.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_whenBothExtractorsAreSpecified_gettingADateTimeExtractorThrows() {
+    DatumUtils.getDatumTimestampExtractor(BothExtractorsDatum.class);
+  }
+
+  @Test(expected = UnknownDatumTypeException.class)
+  public void test_whenNoExtractorIsSpecified_gettingAMillisExtractorThrows() {
+    DatumUtils.getDatumTimestampMillisExtractor(NoExtractorDatum.class);
+  }
+}
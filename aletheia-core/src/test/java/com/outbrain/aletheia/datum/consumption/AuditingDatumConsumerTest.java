@@ -0,0 +1,139 @@
+package com.outbrain.aletheia.datum.consumption;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
+import com.outbrain.aletheia.datum.DatumKeySelector;
+import com.outbrain.aletheia.datum.envelope.AvroDatumEnvelopeSerDe;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeBuilder;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.serialization.SerializedDatum;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AuditingDatumConsumerTest {
+
+  private static class CountingJsonDatumSerDe extends JsonDatumSerDe<SampleDomainClass> {
+
+    private int deserializeCount = 0;
+
+    private CountingJsonDatumSerDe() {
+      super(SampleDomainClass.class);
+    }
+
+    @Override
+    public SampleDomainClass deserializeDatum(final SerializedDatum serializedDatum) {
+      deserializeCount++;
+      return super.deserializeDatum(serializedDatum);
+    }
+  }
+
+  private static class CountingEnvelopeAuditor implements BreadcrumbDispatcher<DatumEnvelope> {
+
+    private final List<Long> logicalTimestamps = Lists.newArrayList();
+
+    @Override
+    public void report(final DatumEnvelope datumEnvelope) {
+      logicalTimestamps.add(datumEnvelope.getLogicalTimestamp());
+    }
+
+    @Override
+    public void report(final DatumEnvelope datumEnvelope, final int payloadSizeBytes) {
+      report(datumEnvelope);
+    }
+
+    @Override
+    public void report(final DatumEnvelope datumEnvelope,
+                       final int payloadSizeBytes,
+                       final long logicalTimestampLatencyMillis,
+                       final long creationTimestampLatencyMillis) {
+      report(datumEnvelope);
+    }
+
+    @Override
+    public void dispatchBreadcrumbs() {
+
+    }
+  }
+
+  private static DatumEnvelopeFetcher datumEnvelopeFetcher(final JsonDatumSerDe<SampleDomainClass> datumSerDe) {
+
+    final AvroDatumEnvelopeSerDe avroDatumEnvelopeSerDe = new AvroDatumEnvelopeSerDe();
+    final List<DatumEnvelope> datumEnvelopes = Lists.newArrayList();
+
+    for (int i = 0; i < 10; i++) {
+      final DatumEnvelopeBuilder<SampleDomainClass> datumEnvelopeBuilder =
+              new DatumEnvelopeBuilder<>(SampleDomainClass.class, datumSerDe, DatumKeySelector.NULL, i % 2, "hostname");
+      final DatumEnvelope datumEnvelope =
+              datumEnvelopeBuilder.buildEnvelope(new SampleDomainClass(i, i, "", Instant.now(), true));
+      datumEnvelopes.add(avroDatumEnvelopeSerDe.deserializeDatumEnvelopeLazily(
+              avroDatumEnvelopeSerDe.serializeDatumEnvelope(datumEnvelope)));
+    }
+
+    final Iterator<DatumEnvelope> datumEnvelopeIterator = datumEnvelopes.iterator();
+    return new DatumEnvelopeFetcher() {
+      @Override
+      public Iterable<DatumEnvelope> datumEnvelopes() {
+        return new Iterable<DatumEnvelope>() {
+          @Override
+          public Iterator<DatumEnvelope> iterator() {
+            return datumEnvelopeIterator;
+          }
+        };
+      }
+    };
+  }
+
+  @Test
+  public void test_whenEnvelopesAreFiltered_theirDatumsAreNotDeserialized() {
+
+    final CountingJsonDatumSerDe datumSerDe = new CountingJsonDatumSerDe();
+
+    final AuditingDatumConsumer<SampleDomainClass> datumConsumer =
+            new AuditingDatumConsumer<>(datumEnvelopeFetcher(datumSerDe),
+                                        new DatumEnvelopeOpener<>(BreadcrumbDispatcher.NULL,
+                                                                  datumSerDe,
+                                                                  MetricsFactory.NULL),
+                                        DatumEnvelopePredicates.incarnationIs(1),
+                                        Predicates.<SampleDomainClass>alwaysTrue(),
+                                        MetricsFactory.NULL);
+
+    final List<SampleDomainClass> datums = FluentIterable.from(datumConsumer.datums()).limit(5).toList();
+
+    assertThat(datums.size(), is(5));
+    assertThat(datums.get(0).getId(), is(1));
+    assertThat(datumSerDe.deserializeCount, is(5));
+  }
+
+  @Test
+  public void test_whenEnvelopesAreFiltered_theyAreReportedToTheEnvelopeFilteredAuditor() {
+
+    final JsonDatumSerDe<SampleDomainClass> datumSerDe = new JsonDatumSerDe<>(SampleDomainClass.class);
+    final CountingEnvelopeAuditor envelopeFilteredAuditor = new CountingEnvelopeAuditor();
+
+    final AuditingDatumConsumer<SampleDomainClass> datumConsumer =
+            new AuditingDatumConsumer<>(datumEnvelopeFetcher(datumSerDe),
+                                        new DatumEnvelopeOpener<>(BreadcrumbDispatcher.NULL,
+                                                                  datumSerDe,
+                                                                  MetricsFactory.NULL),
+                                        DatumEnvelopePredicates.incarnationIs(1),
+                                        envelopeFilteredAuditor,
+                                        Predicates.<SampleDomainClass>alwaysTrue(),
+                                        MetricsFactory.NULL);
+
+    final List<SampleDomainClass> datums = FluentIterable.from(datumConsumer.datums()).limit(5).toList();
+
+    assertThat(datums.size(), is(5));
+    assertThat(envelopeFilteredAuditor.logicalTimestamps.size(), is(5));
+  }
+}
@@ -0,0 +1,76 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.apache.avro.specific.SpecificData;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AvroDatumEnvelopeSerDeTest {
+
+  private DatumEnvelope datumEnvelope(final String datumKey) {
+    return new DatumEnvelope("type",
+                             1,
+                             1000L,
+                             3,
+                             "some.long.hostname.example.com",
+                             2000L,
+                             ByteBuffer.wrap("datum".getBytes()),
+                             "JsonDatumSerDe",
+                             datumKey);
+  }
+
+  private static boolean sameEnvelope(final DatumEnvelope envelope, final DatumEnvelope other) {
+    return SpecificData.get().compare(envelope, other, DatumEnvelope.getClassSchema()) == 0;
+  }
+
+  @Test
+  public void test_whenFormatsAreMixed_eachEnvelopeIsDecodedAccordingToItsFormat() {
+
+    final DatumEnvelopeHeaderRegistry producerRegistry = new DatumEnvelopeHeaderRegistry();
+    final AvroDatumEnvelopeSerDe standardSerDe = new AvroDatumEnvelopeSerDe();
+    final AvroDatumEnvelopeSerDe compactSerDe = new AvroDatumEnvelopeSerDe(DatumEnvelopeFormat.Compact,
+                                                                           producerRegistry);
+
+    for (final String datumKey : new String[]{"key", null}) {
+
+      final ByteBuffer standardEnvelope = standardSerDe.serializeDatumEnvelope(datumEnvelope(datumKey));
+      final ByteBuffer compactEnvelope = compactSerDe.serializeDatumEnvelope(datumEnvelope(datumKey));
+
+      assertThat(DatumEnvelopeFormat.of(standardEnvelope), is(DatumEnvelopeFormat.Standard));
+      assertThat(DatumEnvelopeFormat.of(compactEnvelope), is(DatumEnvelopeFormat.Compact));
+      assertThat(compactEnvelope.remaining() < standardEnvelope.remaining(), is(true));
+
+      for (final ByteBuffer binaryEnvelope : new ByteBuffer[]{standardEnvelope, compactEnvelope}) {
+        assertThat(sameEnvelope(compactSerDe.deserializeDatumEnvelopeLazily(binaryEnvelope.duplicate()),
+                                datumEnvelope(datumKey)),
+                   is(true));
+        assertThat(sameEnvelope(compactSerDe.deserializeDatumEnvelope(binaryEnvelope.duplicate()),
+                                datumEnvelope(datumKey)),
+                   is(true));
+      }
+    }
+  }
+
+  @Test
+  public void test_whenHeaderValuesAreNotRegistered_theyAreResolvedToTheirFingerprints() {
+
+    final ByteBuffer compactEnvelope =
+            new AvroDatumEnvelopeSerDe(DatumEnvelopeFormat.Compact, new DatumEnvelopeHeaderRegistry())
+                    .serializeDatumEnvelope(datumEnvelope("key"));
+
+    final DatumEnvelopeHeaderRegistry consumerRegistry = new DatumEnvelopeHeaderRegistry();
+    consumerRegistry.register("type");
+
+    final DatumEnvelope datumEnvelope =
+            new AvroDatumEnvelopeSerDe(DatumEnvelopeFormat.Standard, consumerRegistry)
+                    .deserializeDatumEnvelopeLazily(compactEnvelope);
+
+    assertThat(datumEnvelope.getDatumTypeId().toString(), is("type"));
+    assertThat(datumEnvelope.getSourceHost().toString().startsWith("#"), is(true));
+    assertThat(datumEnvelope.getDatumKey().toString(), is("key"));
+  }
+}
@@ -0,0 +1,75 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DatumEnvelopeCodecTest {
+
+  private DatumEnvelope datumEnvelope(final String datumKey) {
+    return new DatumEnvelope("type",
+                             1,
+                             1000L,
+                             0,
+                             "hostname",
+                             2000L,
+                             ByteBuffer.wrap("datum".getBytes()),
+                             "serDe",
+                             datumKey);
+  }
+
+  private byte[] avroEncode(final DatumEnvelope datumEnvelope) throws Exception {
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(byteStream, null);
+    new SpecificDatumWriter<>(DatumEnvelope.getClassSchema()).write(datumEnvelope, encoder);
+    encoder.flush();
+    return byteStream.toByteArray();
+  }
+
+  @Test
+  public void test_whenEncodingIntoDirectBuffers_bytesAreWireCompatible() throws Exception {
+
+    final DatumEnvelopeCodec datumEnvelopeCodec = new DatumEnvelopeCodec();
+    final ByteBuffer directBuffer = ByteBuffer.allocateDirect(1024);
+
+    for (final String datumKey : new String[]{"key", null}) {
+
+      directBuffer.clear();
+      final int encodedSize = datumEnvelopeCodec.encode(datumEnvelope(datumKey), directBuffer);
+      directBuffer.flip();
+
+      final byte[] encoded = new byte[encodedSize];
+      directBuffer.duplicate().get(encoded);
+
+      assertThat(encoded, is(avroEncode(datumEnvelope(datumKey))));
+      assertThat(datumEnvelopeCodec.encode(datumEnvelope(datumKey)).array(), is(encoded));
+      assertThat(datumEnvelopeCodec.decode(directBuffer, null), is(datumEnvelope(datumKey)));
+      assertThat(directBuffer.hasRemaining(), is(false));
+    }
+  }
+
+  @Test
+  public void test_whenDecodingWithReuse_theReusedEnvelopeIsReturned() throws Exception {
+
+    final DatumEnvelopeCodec datumEnvelopeCodec = new DatumEnvelopeCodec();
+    final DatumEnvelope reuse = new DatumEnvelope();
+
+    final DatumEnvelope decoded = datumEnvelopeCodec.decode(ByteBuffer.wrap(avroEncode(datumEnvelope("key"))), reuse);
+
+    assertThat(decoded == reuse, is(true));
+    assertThat(decoded, is(datumEnvelope("key")));
+  }
+
+  @Test(expected = java.nio.BufferOverflowException.class)
+  public void test_whenTargetBufferIsTooSmall_overflowIsReported() throws Exception {
+    new DatumEnvelopeCodec().encode(datumEnvelope("key"), ByteBuffer.allocate(4));
+  }
+}
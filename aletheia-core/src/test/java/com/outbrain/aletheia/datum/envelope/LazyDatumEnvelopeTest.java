@@ -0,0 +1,84 @@
+package com.outbrain.aletheia.datum.envelope;
+
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LazyDatumEnvelopeTest {
+
+  private DatumEnvelope datumEnvelope(final String datumKey) {
+    return new DatumEnvelope("type",
+                             1,
+                             1000L,
+                             3,
+                             "hostname",
+                             2000L,
+                             ByteBuffer.wrap("datum".getBytes()),
+                             "serDe",
+                             datumKey);
+  }
+
+  private byte[] avroEncode(final DatumEnvelope datumEnvelope) throws Exception {
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(byteStream, null);
+    new SpecificDatumWriter<>(DatumEnvelope.getClassSchema()).write(datumEnvelope, encoder);
+    encoder.flush();
+    return byteStream.toByteArray();
+  }
+
+  @Test
+  public void test_whenReencoded_bytesAreIdenticalToTheOriginalMessage() throws Exception {
+    for (final String datumKey : new String[]{"key", null}) {
+      final byte[] message = avroEncode(datumEnvelope(datumKey));
+      assertThat(avroEncode(new LazyDatumEnvelope(ByteBuffer.wrap(message))), is(message));
+    }
+  }
+
+  @Test
+  public void test_whenAccessingFields_theyMatchTheEncodedEnvelope() throws Exception {
+
+    final byte[] message = avroEncode(datumEnvelope("key"));
+    final DatumEnvelope lazyDatumEnvelope = new LazyDatumEnvelope(ByteBuffer.wrap(message));
+
+    assertThat(lazyDatumEnvelope.getLogicalTimestamp(), is(1000L));
+    assertThat(lazyDatumEnvelope.getDatumTypeId().toString(), is("type"));
+    assertThat(lazyDatumEnvelope.getDatumSchemaVersion(), is(1));
+    assertThat(lazyDatumEnvelope.getIncarnation(), is(3));
+    assertThat(lazyDatumEnvelope.getDatumKey().toString(), is("key"));
+    assertThat(lazyDatumEnvelope.getSerDeType().toString(), is("serDe"));
+    assertThat(lazyDatumEnvelope.getCreationTime(), is(2000L));
+
+    final ByteBuffer datumBytes = lazyDatumEnvelope.getDatumBytes();
+    final byte[] datum = new byte[datumBytes.remaining()];
+    datumBytes.duplicate().get(datum);
+
+    assertThat(new String(datum), is("datum"));
+    assertThat(datumBytes.array() == message, is(true));
+  }
+
+  @Test
+  public void test_whenMessageIsTruncated_onlyFieldsPastTheTruncationFail() throws Exception {
+
+    final byte[] message = avroEncode(datumEnvelope("key"));
+    final DatumEnvelope lazyDatumEnvelope = new LazyDatumEnvelope(ByteBuffer.wrap(Arrays.copyOf(message, 12)));
+
+    assertThat(lazyDatumEnvelope.getIncarnation(), is(3));
+
+    try {
+      lazyDatumEnvelope.getDatumBytes();
+      throw new AssertionError("Truncated datum bytes were decoded.");
+    } catch (final AvroRuntimeException e) {
+      // expected.
+    }
+  }
+}
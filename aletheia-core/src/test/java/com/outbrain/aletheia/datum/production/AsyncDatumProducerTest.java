@@ -0,0 +1,141 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AsyncDatumProducerTest {
+
+  @Test
+  public void test_whenQueueIsFullAndDroppingOldest_newestDatumsAreDelivered() throws Exception {
+
+    final LatchedDatumProducer latchedDatumProducer = new LatchedDatumProducer();
+
+    final AsyncDatumProducer<Integer> asyncDatumProducer =
+            new AsyncDatumProducer<>(latchedDatumProducer,
+                                     new AsyncDeliveryConfig(2, 1, AsyncDeliveryConfig.FullQueuePolicy.DropOldest),
+                                     "test",
+                                     MetricsFactory.NULL);
+
+    asyncDatumProducer.deliver(0);
+    latchedDatumProducer.started.await();
+
+    for (int i = 1; i <= 5; i++) {
+      asyncDatumProducer.deliver(i);
+    }
+
+    latchedDatumProducer.released.countDown();
+    asyncDatumProducer.flush();
+
+    assertThat(latchedDatumProducer.delivered, is((List<Integer>) Lists.newArrayList(0, 4, 5)));
+
+    asyncDatumProducer.close();
+    asyncDatumProducer.deliver(6);
+
+    assertThat(latchedDatumProducer.delivered.size(), is(4));
+  }
+
+  @Test
+  public void test_whenQueueIsFullAndCallerRuns_allDatumsAreDelivered() throws Exception {
+
+    final LatchedDatumProducer latchedDatumProducer = new LatchedDatumProducer();
+    latchedDatumProducer.released.countDown();
+
+    final AsyncDatumProducer<Integer> asyncDatumProducer =
+            new AsyncDatumProducer<>(latchedDatumProducer,
+                                     new AsyncDeliveryConfig(1, 2, AsyncDeliveryConfig.FullQueuePolicy.CallerRuns),
+                                     "test",
+                                     MetricsFactory.NULL);
+
+    for (int i = 0; i < 1000; i++) {
+      asyncDatumProducer.deliver(i);
+    }
+
+    asyncDatumProducer.close();
+
+    assertThat(latchedDatumProducer.delivered.size(), is(1000));
+  }
+
+  @Test(timeout = 10000)
+  public void test_whenClosingWhileACallerIsBlocked_itsDatumIsDeliveredAndFlushReturns() throws Exception {
+
+    final LatchedDatumProducer latchedDatumProducer = new LatchedDatumProducer();
+
+    final AsyncDatumProducer<Integer> asyncDatumProducer =
+            new AsyncDatumProducer<>(latchedDatumProducer,
+                                     new AsyncDeliveryConfig(1, 1, AsyncDeliveryConfig.FullQueuePolicy.Block),
+                                     "test",
+                                     MetricsFactory.NULL);
+
+    asyncDatumProducer.deliver(0);
+    latchedDatumProducer.started.await();
+    asyncDatumProducer.deliver(1);
+
+    final Thread blockedCaller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        asyncDatumProducer.deliver(2);
+      }
+    });
+    blockedCaller.start();
+
+    while (blockedCaller.getState() != Thread.State.TIMED_WAITING) {
+      Thread.sleep(10);
+    }
+
+    final Thread closer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        asyncDatumProducer.close();
+      }
+    });
+    closer.start();
+
+    latchedDatumProducer.released.countDown();
+    blockedCaller.join();
+    closer.join();
+    asyncDatumProducer.flush();
+
+    assertThat(latchedDatumProducer.delivered, is((List<Integer>) Lists.newArrayList(0, 1, 2)));
+  }
+
+  @Test(timeout = 10000)
+  public void test_whenSenderThreadsFail_flushDeliversOnTheCallingThread() throws Exception {
+
+    final LatchedDatumProducer latchedDatumProducer = new LatchedDatumProducer() {
+
+      private boolean failed = false;
+
+      @Override
+      public void deliverAll(final Collection<Integer> datums) {
+        if (!failed) {
+          failed = true;
+          throw new AssertionError("simulated sender thread failure");
+        }
+        super.deliverAll(datums);
+      }
+    };
+    latchedDatumProducer.released.countDown();
+
+    final AsyncDatumProducer<Integer> asyncDatumProducer =
+            new AsyncDatumProducer<>(latchedDatumProducer,
+                                     new AsyncDeliveryConfig(10, 1, AsyncDeliveryConfig.FullQueuePolicy.Block),
+                                     "test",
+                                     MetricsFactory.NULL);
+
+    asyncDatumProducer.deliver(0);
+    asyncDatumProducer.flush();
+    asyncDatumProducer.deliver(1);
+    asyncDatumProducer.flush();
+
+    assertThat(latchedDatumProducer.delivered, is((List<Integer>) Lists.newArrayList(1)));
+
+    asyncDatumProducer.close();
+  }
+}
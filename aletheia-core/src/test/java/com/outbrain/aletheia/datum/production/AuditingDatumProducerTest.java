@@ -0,0 +1,251 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.breadcrumbs.BreadcrumbDispatcher;
+import com.outbrain.aletheia.datum.DatumKeySelector;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeBuilder;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AuditingDatumProducerTest {
+
+  private static final DatumKeySelector<SampleDomainClass> NO_DATUM_KEY = new DatumKeySelector<SampleDomainClass>() {
+    @Override
+    public String getDatumKey(final SampleDomainClass domainObject) {
+      return null;
+    }
+  };
+
+  private static class CountingBreadcrumbDispatcher implements BreadcrumbDispatcher<SampleDomainClass> {
+
+    private int hitCount = 0;
+    private long payloadByteCount = 0;
+
+    @Override
+    public void report(final SampleDomainClass element) {
+      hitCount++;
+    }
+
+    @Override
+    public void report(final SampleDomainClass element, final int payloadSizeBytes) {
+      hitCount++;
+      payloadByteCount += payloadSizeBytes;
+    }
+
+    @Override
+    public void report(final SampleDomainClass element,
+                       final int payloadSizeBytes,
+                       final long logicalTimestampLatencyMillis,
+                       final long creationTimestampLatencyMillis) {
+      hitCount++;
+    }
+
+    @Override
+    public void dispatchBreadcrumbs() {
+
+    }
+  }
+
+  private static DatumEnvelopeBuilder<SampleDomainClass> datumEnvelopeBuilder() {
+    return new DatumEnvelopeBuilder<>(SampleDomainClass.class,
+                                      new JsonDatumSerDe<>(SampleDomainClass.class),
+                                      NO_DATUM_KEY,
+                                      0,
+                                      "hostname");
+  }
+
+  private static Map<DeliveryOutcome, CountingBreadcrumbDispatcher> countingDispatchers() {
+    final Map<DeliveryOutcome, CountingBreadcrumbDispatcher> outcome2dispatcher = new EnumMap<>(DeliveryOutcome.class);
+    for (final DeliveryOutcome deliveryOutcome : DeliveryOutcome.values()) {
+      outcome2dispatcher.put(deliveryOutcome, new CountingBreadcrumbDispatcher());
+    }
+    return outcome2dispatcher;
+  }
+
+  private static Map<DeliveryOutcome, BreadcrumbDispatcher<SampleDomainClass>> datumAuditors(
+          final Map<DeliveryOutcome, CountingBreadcrumbDispatcher> outcome2dispatcher) {
+    final Map<DeliveryOutcome, BreadcrumbDispatcher<SampleDomainClass>> outcome2datumAuditor =
+            new EnumMap<>(DeliveryOutcome.class);
+    outcome2datumAuditor.putAll(outcome2dispatcher);
+    return outcome2datumAuditor;
+  }
+
+  @Test
+  public void test_whenDatumsAreFilteredOrFailTransport_eachOutcomeIsAuditedSeparately() {
+
+    final Map<DeliveryOutcome, CountingBreadcrumbDispatcher> outcome2dispatcher = countingDispatchers();
+
+    final Sender<DatumEnvelope> sender = new Sender<DatumEnvelope>() {
+
+      private int sendCount = 0;
+
+      @Override
+      public void send(final DatumEnvelope data) throws SilentSenderException {
+        if (++sendCount % 2 == 0) {
+          throw new SilentSenderException(new IllegalStateException("Transport is down."));
+        }
+      }
+    };
+
+    final AuditingDatumProducer<SampleDomainClass> datumProducer =
+            new AuditingDatumProducer<>(datumEnvelopeBuilder(),
+                                        sender,
+                                        new Predicate<SampleDomainClass>() {
+                                          @Override
+                                          public boolean apply(final SampleDomainClass datum) {
+                                            return datum.getId() < 6;
+                                          }
+                                        },
+                                        datumAuditors(outcome2dispatcher),
+                                        MetricsFactory.NULL);
+
+    for (int i = 0; i < 10; i++) {
+      datumProducer.deliver(new SampleDomainClass(i, i, "", Instant.now(), true));
+    }
+
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.Delivered).hitCount, is(3));
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.TransportFailed).hitCount, is(3));
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.Filtered).hitCount, is(4));
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.SerializationFailed).hitCount, is(0));
+  }
+
+  @Test
+  public void test_whenTheFilterFails_theDatumIsAuditedAsFilterFailed() {
+
+    final Map<DeliveryOutcome, CountingBreadcrumbDispatcher> outcome2dispatcher = countingDispatchers();
+
+    final Sender<DatumEnvelope> sender = new Sender<DatumEnvelope>() {
+      @Override
+      public void send(final DatumEnvelope data) throws SilentSenderException {
+      }
+    };
+
+    final AuditingDatumProducer<SampleDomainClass> datumProducer =
+            new AuditingDatumProducer<>(datumEnvelopeBuilder(),
+                                        sender,
+                                        new Predicate<SampleDomainClass>() {
+                                          @Override
+                                          public boolean apply(final SampleDomainClass datum) {
+                                            if (datum.getId() % 2 == 0) {
+                                              throw new IllegalStateException("Filter is broken.");
+                                            }
+                                            return true;
+                                          }
+                                        },
+                                        datumAuditors(outcome2dispatcher),
+                                        MetricsFactory.NULL);
+
+    final List<SampleDomainClass> datums = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      final SampleDomainClass datum = new SampleDomainClass(i, i, "", Instant.now(), true);
+      datumProducer.deliver(datum);
+      datums.add(datum);
+    }
+    datumProducer.deliverAll(datums);
+
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.Delivered).hitCount, is(4));
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.FilterFailed).hitCount, is(4));
+    assertThat(outcome2dispatcher.get(DeliveryOutcome.SerializationFailed).hitCount, is(0));
+  }
+
+  @Test
+  public void test_breadcrumbTypeIds() {
+    assertThat(DeliveryOutcome.Delivered.breadcrumbTypeId("datum"), is("datum"));
+    assertThat(DeliveryOutcome.TransportFailed.breadcrumbTypeId("datum"), is("datum.TransportFailed"));
+  }
+
+  @Test
+  public void test_whenDeliveringABatch_itIsSentInASingleCall() {
+
+    final CountingBreadcrumbDispatcher datumAuditor = new CountingBreadcrumbDispatcher();
+    final List<List<DatumEnvelope>> sentBatches = Lists.newArrayList();
+
+    final BatchSender<DatumEnvelope> batchSender = new BatchSender<DatumEnvelope>() {
+      @Override
+      public void sendAll(final List<DatumEnvelope> data) throws SilentSenderException {
+        sentBatches.add(data);
+      }
+
+      @Override
+      public void send(final DatumEnvelope data) throws SilentSenderException {
+        sentBatches.add(Collections.singletonList(data));
+      }
+    };
+
+    final AuditingDatumProducer<SampleDomainClass> datumProducer =
+            new AuditingDatumProducer<>(datumEnvelopeBuilder(),
+                                        batchSender,
+                                        Predicates.<SampleDomainClass>alwaysTrue(),
+                                        datumAuditor,
+                                        MetricsFactory.NULL);
+
+    final List<SampleDomainClass> datums = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      datums.add(new SampleDomainClass(i, i, "", Instant.now(), true));
+    }
+
+    datumProducer.deliverAll(datums);
+
+    assertThat(sentBatches.size(), is(1));
+    assertThat(sentBatches.get(0).size(), is(10));
+    assertThat(datumAuditor.hitCount, is(10));
+  }
+
+  @Test
+  public void test_whenABatchSenderConsumesTheEnvelopes_payloadSizesAreStillAudited() {
+
+    final CountingBreadcrumbDispatcher datumAuditor = new CountingBreadcrumbDispatcher();
+    final List<Integer> sentPayloadSizes = Lists.newArrayList();
+
+    final BatchSender<DatumEnvelope> consumingBatchSender = new BatchSender<DatumEnvelope>() {
+      @Override
+      public void sendAll(final List<DatumEnvelope> data) throws SilentSenderException {
+        for (final DatumEnvelope datumEnvelope : data) {
+          send(datumEnvelope);
+        }
+      }
+
+      @Override
+      public void send(final DatumEnvelope data) throws SilentSenderException {
+        sentPayloadSizes.add(data.getDatumBytes().remaining());
+        data.getDatumBytes().position(data.getDatumBytes().limit());
+      }
+    };
+
+    final AuditingDatumProducer<SampleDomainClass> datumProducer =
+            new AuditingDatumProducer<>(datumEnvelopeBuilder(),
+                                        consumingBatchSender,
+                                        Predicates.<SampleDomainClass>alwaysTrue(),
+                                        datumAuditor,
+                                        MetricsFactory.NULL);
+
+    final List<SampleDomainClass> datums = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      datums.add(new SampleDomainClass(i, i, "", Instant.now(), true));
+    }
+
+    datumProducer.deliverAll(datums);
+
+    long sentPayloadByteCount = 0;
+    for (final int sentPayloadSize : sentPayloadSizes) {
+      sentPayloadByteCount += sentPayloadSize;
+    }
+
+    assertThat(sentPayloadByteCount > 0, is(true));
+    assertThat(datumAuditor.payloadByteCount, is(sentPayloadByteCount));
+  }
+}
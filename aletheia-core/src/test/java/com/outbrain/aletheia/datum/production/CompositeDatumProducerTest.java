@@ -0,0 +1,92 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CompositeDatumProducerTest {
+
+  @Test
+  public void test_whenOneEndPointStalls_otherEndPointsKeepDeliveringInOrder() throws Exception {
+
+    final LatchedDatumProducer stalledDatumProducer = new LatchedDatumProducer();
+    final LatchedDatumProducer datumProducer = new LatchedDatumProducer();
+    datumProducer.released.countDown();
+
+    final AsyncDeliveryConfig asyncDeliveryConfig =
+            new AsyncDeliveryConfig(100, 1, AsyncDeliveryConfig.FullQueuePolicy.Block);
+
+    final CompositeDatumProducer<Integer> compositeDatumProducer =
+            new CompositeDatumProducer<Integer>(
+                    new AsyncDatumProducer<>(stalledDatumProducer, asyncDeliveryConfig, "stalled", MetricsFactory.NULL),
+                    new AsyncDatumProducer<>(datumProducer, asyncDeliveryConfig, "test", MetricsFactory.NULL));
+
+    final List<Integer> datums = Lists.newArrayList();
+    for (int i = 0; i < 50; i++) {
+      compositeDatumProducer.deliver(i);
+      datums.add(i);
+    }
+
+    while (datumProducer.delivered.size() < datums.size()) {
+      Thread.sleep(10);
+    }
+
+    assertThat(datumProducer.delivered, is(datums));
+    assertThat(stalledDatumProducer.delivered.size(), is(0));
+
+    stalledDatumProducer.released.countDown();
+    compositeDatumProducer.close();
+
+    assertThat(stalledDatumProducer.delivered, is(datums));
+  }
+
+  @Test(timeout = 10000)
+  public void test_whenAStalledEndPointOverflows_otherEndPointsKeepDeliveringAll() throws Exception {
+
+    final LatchedDatumProducer stalledDatumProducer = new LatchedDatumProducer();
+    final LatchedDatumProducer datumProducer = new LatchedDatumProducer();
+    datumProducer.released.countDown();
+
+    final CompositeDatumProducer<Integer> compositeDatumProducer =
+            new CompositeDatumProducer<Integer>(
+                    new AsyncDatumProducer<>(stalledDatumProducer,
+                                             new AsyncDeliveryConfig(10,
+                                                                     1,
+                                                                     AsyncDeliveryConfig.FullQueuePolicy.DropNewest),
+                                             "stalled",
+                                             MetricsFactory.NULL),
+                    new AsyncDatumProducer<>(datumProducer,
+                                             new AsyncDeliveryConfig(100,
+                                                                     1,
+                                                                     AsyncDeliveryConfig.FullQueuePolicy.DropNewest),
+                                             "test",
+                                             MetricsFactory.NULL));
+
+    final List<Integer> datums = Lists.newArrayList(0);
+    compositeDatumProducer.deliver(0);
+    stalledDatumProducer.started.await();
+
+    for (int i = 1; i < 50; i++) {
+      compositeDatumProducer.deliver(i);
+      datums.add(i);
+    }
+
+    while (datumProducer.delivered.size() < datums.size()) {
+      Thread.sleep(10);
+    }
+
+    assertThat(datumProducer.delivered, is(datums));
+    assertThat(stalledDatumProducer.delivered.size(), is(0));
+
+    stalledDatumProducer.released.countDown();
+    compositeDatumProducer.close();
+
+    // the datum in flight, and the 10 buffered ones.
+    assertThat(stalledDatumProducer.delivered, is(datums.subList(0, 11)));
+  }
+}
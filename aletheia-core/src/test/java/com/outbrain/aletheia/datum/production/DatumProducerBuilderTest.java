@@ -0,0 +1,103 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.collect.Iterables;
+import com.outbrain.aletheia.datum.DatumKeySelector;
+import com.outbrain.aletheia.datum.envelope.DatumEnvelopeBuilder;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.serialization.SerializedDatum;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class DatumProducerBuilderTest {
+
+  private static class CountingDatumSerDe extends JsonDatumSerDe<SampleDomainClass> {
+
+    private int serializationCount = 0;
+
+    private CountingDatumSerDe() {
+      super(SampleDomainClass.class);
+    }
+
+    @Override
+    public SerializedDatum serializeDatum(final SampleDomainClass domainObject) {
+      serializationCount++;
+      return super.serializeDatum(domainObject);
+    }
+  }
+
+  @Test
+  public void test_whenEndPointsShareADatumSerDe_dataAreSerializedOnce() {
+
+    final CountingDatumSerDe datumSerDe = new CountingDatumSerDe();
+    final InMemoryProductionEndPoint endPoint =
+            new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope);
+    final InMemoryProductionEndPoint otherEndPoint =
+            new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope);
+
+    final DatumProducer<SampleDomainClass> datumProducer =
+            DatumProducerBuilder
+                    .forDomainClass(SampleDomainClass.class)
+                    .deliverDataTo(endPoint, datumSerDe)
+                    .deliverDataTo(otherEndPoint, datumSerDe)
+                    .build(new DatumProducerConfig(0, "hostname"));
+
+    final SampleDomainClass datum = new SampleDomainClass(1, 1, "", Instant.now(), true);
+
+    datumProducer.deliver(datum);
+    datumProducer.deliver(datum);
+
+    assertThat(datumSerDe.serializationCount, is(2));
+
+    final List<byte[]> data = Iterables.getOnlyElement(endPoint.getDataAsKey2ByteArrays().values());
+    final List<byte[]> otherData = Iterables.getOnlyElement(otherEndPoint.getDataAsKey2ByteArrays().values());
+
+    assertThat(data.size(), is(2));
+    assertThat(data.get(0) == otherData.get(0), is(true));
+    assertThat(data.get(1) == otherData.get(1), is(true));
+  }
+
+  @Test
+  public void test_whenAnEnvelopeIsResentAfterBeingModified_itIsEncodedAnew() throws Exception {
+
+    final InMemoryProductionEndPoint endPoint =
+            new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope);
+    final NamedSender<DatumEnvelope> datumEnvelopeSender =
+            new InMemoryDatumEnvelopeSenderFactory().buildDatumEnvelopeSender(endPoint, MetricsFactory.NULL);
+
+    final DatumEnvelope datumEnvelope =
+            new DatumEnvelopeBuilder<>(SampleDomainClass.class,
+                                       new JsonDatumSerDe<>(SampleDomainClass.class),
+                                       DatumKeySelector.NULL,
+                                       0,
+                                       "hostname")
+                    .buildEnvelope(new SampleDomainClass(1, 1, "", Instant.now(), true));
+
+    datumEnvelopeSender.send(datumEnvelope);
+    datumEnvelope.setIncarnation(1);
+    datumEnvelopeSender.send(datumEnvelope);
+
+    final List<byte[]> data = Iterables.getOnlyElement(endPoint.getDataAsKey2ByteArrays().values());
+
+    assertThat(data.size(), is(2));
+    assertThat(Arrays.equals(data.get(0), data.get(1)), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_whenBuildingParallelWithABlockingPolicy_itIsRejected() {
+    DatumProducerBuilder
+            .forDomainClass(SampleDomainClass.class)
+            .deliverDataTo(new InMemoryProductionEndPoint(InMemoryProductionEndPoint.EndPointType.RawDatumEnvelope),
+                           new JsonDatumSerDe<>(SampleDomainClass.class))
+            .buildParallel(new DatumProducerConfig(0, "hostname"),
+                           new AsyncDeliveryConfig(10, 1, AsyncDeliveryConfig.FullQueuePolicy.Block));
+  }
+}
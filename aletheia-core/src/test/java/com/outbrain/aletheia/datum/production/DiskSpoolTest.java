@@ -0,0 +1,70 @@
+package com.outbrain.aletheia.datum.production;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DiskSpoolTest {
+
+  private static final int SEGMENT_SIZE = 64;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void test_whenReopened_messagesNotRemovedAreReplayedInOrder() throws Exception {
+
+    final File spoolDirectory = temporaryFolder.newFolder("spool");
+
+    final DiskSpool diskSpool = new DiskSpool(spoolDirectory, SEGMENT_SIZE, 10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(diskSpool.append(i % 2 == 0 ? "key" + i : null, ("message" + i).getBytes()), is(true));
+    }
+    diskSpool.peek();
+    diskSpool.remove();
+    diskSpool.close();
+
+    final DiskSpool reopenedDiskSpool = new DiskSpool(spoolDirectory, SEGMENT_SIZE, 10);
+    assertThat(reopenedDiskSpool.getDepth(), is(9));
+
+    for (int i = 1; i < 10; i++) {
+      final DiskSpool.Message message = reopenedDiskSpool.peek();
+      assertThat(new String(message.getPayload()), is("message" + i));
+      assertThat(message.getKey(), is(i % 2 == 0 ? "key" + i : null));
+      reopenedDiskSpool.remove();
+    }
+
+    assertThat(reopenedDiskSpool.peek(), is(nullValue()));
+    assertThat(reopenedDiskSpool.getDepth(), is(0));
+    reopenedDiskSpool.close();
+  }
+
+  @Test
+  public void test_whenAllSegmentsAreFull_appendsAreRejectedUntilMessagesAreRemoved() throws Exception {
+
+    final DiskSpool diskSpool = new DiskSpool(temporaryFolder.newFolder("spool"), SEGMENT_SIZE, 2);
+
+    int appendedCount = 0;
+    while (diskSpool.append("key", "message".getBytes())) {
+      appendedCount++;
+    }
+
+    assertThat(diskSpool.getDepth(), is(appendedCount));
+    assertThat(diskSpool.append("key", new byte[SEGMENT_SIZE]), is(false));
+
+    // frees the first segment.
+    for (int i = 0; i < appendedCount / 2; i++) {
+      diskSpool.peek();
+      diskSpool.remove();
+    }
+
+    assertThat(diskSpool.append("key", "message".getBytes()), is(true));
+    diskSpool.close();
+  }
+}
@@ -0,0 +1,36 @@
+package com.outbrain.aletheia.datum.production;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A {@code DatumProducer} whose deliveries wait until it is released.
+ */
+class LatchedDatumProducer implements BatchDatumProducer<Integer> {
+
+  final CountDownLatch started = new CountDownLatch(1);
+  final CountDownLatch released = new CountDownLatch(1);
+  final List<Integer> delivered = Collections.synchronizedList(Lists.<Integer>newArrayList());
+
+  @Override
+  public void deliver(final Integer datum) {
+    started.countDown();
+    try {
+      released.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    delivered.add(datum);
+  }
+
+  @Override
+  public void deliverAll(final Collection<Integer> datums) {
+    for (final Integer datum : datums) {
+      deliver(datum);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package com.outbrain.aletheia.datum.consumption.kafka;
+
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.datum.consumption.DatumEnvelopeFetcher;
+import com.outbrain.aletheia.datum.consumption.DatumEnvelopeFetcherFactory;
+import com.outbrain.aletheia.datum.envelope.AvroDatumEnvelopeSerDe;
+import com.outbrain.aletheia.datum.envelope.avro.DatumEnvelope;
+import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@code DatumEnvelopeFetcherFactory} for building {@code DatumEnvelopeFetcher}s capable of
+ * consuming data from endpoints of type {@code KafkaTopicConsumptionEndPoint}.
+ * <p/>
+ * Each fetcher owns a {@code KafkaConsumer} of its own, all of which are members of the endpoint's consumer group, so
+ * that the topic's partitions are divided among them. Since a {@code KafkaConsumer} is not thread safe, a fetcher
+ * must only be iterated by a single thread.
+ * <p/>
+ * A fetcher can be closed from any thread, typically by closing the {@code DatumConsumer} it feeds. A poll in
+ * progress is woken up, and the iterating thread closes the {@code KafkaConsumer}, leaving its group, and ends the
+ * iteration once the records already polled are exhausted. If no poll is in progress, the closing thread closes the
+ * {@code KafkaConsumer} itself.
+ */
+public class KafkaDatumEnvelopeFetcherFactory implements DatumEnvelopeFetcherFactory<KafkaTopicConsumptionEndPoint> {
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private static class KafkaConsumerDatumEnvelopeFetcher implements DatumEnvelopeFetcher, Closeable {
+
+    private final Iterable<DatumEnvelope> datumEnvelopeIterable =
+            new Iterable<DatumEnvelope>() {
+              @Override
+              public Iterator<DatumEnvelope> iterator() {
+                return new Iterator<DatumEnvelope>() {
+                  @Override
+                  public boolean hasNext() {
+                    pollLock.lock();
+                    try {
+                      while (!records.hasNext()) {
+                        if (closed) {
+                          closeConsumer();
+                          return false;
+                        }
+                        try {
+                          records = kafkaConsumer.poll(POLL_TIMEOUT_MILLIS).iterator();
+                        } catch (final WakeupException e) {
+                          // woken up by close(), checked upon the next round.
+                        }
+                      }
+                      return true;
+                    } finally {
+                      pollLock.unlock();
+                    }
+                  }
+
+                  @Override
+                  public DatumEnvelope next() {
+                    if (!hasNext()) {
+                      throw new NoSuchElementException();
+                    }
+                    final byte[] message = records.next().value();
+                    receiveCount.inc();
+                    return avroDatumEnvelopeSerDe.deserializeDatumEnvelopeLazily(ByteBuffer.wrap(message));
+                  }
+
+                  @Override
+                  public void remove() {
+
+                  }
+                };
+              }
+            };
+
+    private final KafkaConsumer<byte[], byte[]> kafkaConsumer;
+    private final Counter receiveCount;
+    private final AvroDatumEnvelopeSerDe avroDatumEnvelopeSerDe = new AvroDatumEnvelopeSerDe();
+    private final ReentrantLock pollLock = new ReentrantLock();
+    private Iterator<ConsumerRecord<byte[], byte[]>> records = Collections.emptyIterator();
+    private volatile boolean closed = false;
+    private boolean consumerClosed = false;
+
+    public KafkaConsumerDatumEnvelopeFetcher(final KafkaConsumer<byte[], byte[]> kafkaConsumer,
+                                             final MetricsFactory metricFactory) {
+      this.kafkaConsumer = kafkaConsumer;
+      this.receiveCount = metricFactory.createCounter("Receive.Attempts", "Success");
+    }
+
+    @Override
+    public Iterable<DatumEnvelope> datumEnvelopes() {
+      return datumEnvelopeIterable;
+    }
+
+    // guarded by pollLock.
+    private void closeConsumer() {
+      if (!consumerClosed) {
+        consumerClosed = true;
+        kafkaConsumer.close();
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      kafkaConsumer.wakeup();
+      if (pollLock.tryLock()) {
+        try {
+          closeConsumer();
+        } finally {
+          pollLock.unlock();
+        }
+      }
+    }
+  }
+
+  private Properties createConsumerConfig(final String bootstrapServers,
+                                          final String groupId,
+                                          final Properties properties) {
+
+    final Properties consumerConfig = (Properties) properties.clone();
+
+    consumerConfig.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    consumerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+
+    return consumerConfig;
+  }
+
+  @Override
+  public List<DatumEnvelopeFetcher> buildDatumEnvelopeFetcher(final KafkaTopicConsumptionEndPoint consumptionEndPoint,
+                                                              final MetricsFactory metricFactory) {
+
+    final Properties consumerConfig = createConsumerConfig(consumptionEndPoint.getBootstrapServers(),
+                                                           consumptionEndPoint.getGroupId(),
+                                                           consumptionEndPoint.getProperties());
+
+    final List<DatumEnvelopeFetcher> fetchers = Lists.newArrayList();
+
+    for (int i = 0; i < consumptionEndPoint.getConcurrencyLevel(); i++) {
+      final KafkaConsumer<byte[], byte[]> kafkaConsumer =
+              new KafkaConsumer<>(consumerConfig, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+      kafkaConsumer.subscribe(Collections.singletonList(consumptionEndPoint.getTopicName()));
+      fetchers.add(new KafkaConsumerDatumEnvelopeFetcher(kafkaConsumer, metricFactory));
+    }
+
+    return fetchers;
+  }
+}
@@ -0,0 +1,60 @@
+package com.outbrain.aletheia.datum.consumption.kafka;
+
+import com.outbrain.aletheia.datum.consumption.ConsumptionEndPoint;
+
+import java.util.Properties;
+
+/**
+ * A consumption endpoint for consuming data from a Kafka topic, using the Kafka consumer client.
+ * <p/>
+ * The properties are passed on to the {@code KafkaConsumer}, and can be used to tune fetching (fetch.min.bytes,
+ * fetch.max.wait.ms, max.poll.records), offset commits (enable.auto.commit) and so forth.
+ */
+public class KafkaTopicConsumptionEndPoint extends ConsumptionEndPoint {
+
+  private final String bootstrapServers;
+  private final String topicName;
+  private final String groupId;
+  private final int concurrencyLevel;
+  private final Properties properties;
+  private final String endPointName;
+
+  public KafkaTopicConsumptionEndPoint(final String bootstrapServers,
+                                       final String topicName,
+                                       final String groupId,
+                                       final String endPointName,
+                                       final int concurrencyLevel,
+                                       final Properties properties) {
+    this.bootstrapServers = bootstrapServers;
+    this.topicName = topicName;
+    this.groupId = groupId;
+    this.concurrencyLevel = concurrencyLevel;
+    this.properties = properties;
+    this.endPointName = endPointName;
+  }
+
+  public String getBootstrapServers() {
+    return bootstrapServers;
+  }
+
+  public String getTopicName() {
+    return topicName;
+  }
+
+  public Properties getProperties() {
+    return properties;
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public int getConcurrencyLevel() {
+    return concurrencyLevel;
+  }
+
+  @Override
+  public String getName() {
+    return endPointName;
+  }
+}
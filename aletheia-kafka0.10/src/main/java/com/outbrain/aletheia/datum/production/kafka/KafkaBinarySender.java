@@ -0,0 +1,30 @@
+package com.outbrain.aletheia.datum.production.kafka;
+
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+
+public class KafkaBinarySender extends KafkaSender<ByteBuffer, byte[]> {
+
+  public KafkaBinarySender(final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint,
+                           final MetricsFactory metricFactory) {
+    super(kafkaTopicDeliveryEndPoint, metricFactory);
+  }
+
+  @Override
+  protected Serializer<byte[]> getPayloadSerializer() {
+    return new ByteArraySerializer();
+  }
+
+  @Override
+  protected byte[] convertInputToSendingFormat(final ByteBuffer byteBuffer) {
+    return byteBuffer.array();
+  }
+
+  @Override
+  protected int getPayloadSize(final byte[] payload) {
+    return payload.length;
+  }
+}
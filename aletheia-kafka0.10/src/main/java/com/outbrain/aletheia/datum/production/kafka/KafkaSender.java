@@ -0,0 +1,161 @@
+package com.outbrain.aletheia.datum.production.kafka;
+
+import com.outbrain.aletheia.datum.production.BatchKeyAwareSender;
+import com.outbrain.aletheia.datum.production.NamedKeyAwareSender;
+import com.outbrain.aletheia.datum.production.NamedSender;
+import com.outbrain.aletheia.datum.production.SilentSenderException;
+import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.Histogram;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A base class for senders producing records to a Kafka topic using the Kafka producer client.
+ * <p/>
+ * Records are sent asynchronously, and batched, lingered and compressed by the producer according to the endpoint's
+ * properties, which default to a short linger and lz4 compression. A send only fails synchronously if the record
+ * could not be handed to the producer, e.g., if its buffer stays full for longer than max.block.ms. Whether a record
+ * was eventually acknowledged is reported by a completion callback, which feeds the success and failure metrics.
+ * Since the callback runs after the send has returned, its failures do not reach the delivery outcome audit, where
+ * every record the producer accepted counts as delivered.
+ */
+public abstract class KafkaSender<TInput, TPayload>
+        implements NamedKeyAwareSender<TInput>, NamedSender<TInput>, BatchKeyAwareSender<TInput>, Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(KafkaSender.class);
+
+  private static final String DEFAULT_LINGER_MILLIS = "5";
+  private static final String DEFAULT_COMPRESSION_TYPE = "lz4";
+
+  private final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint;
+  private final MetricsFactory metricFactory;
+  private final KafkaProducer<String, TPayload> producer;
+
+  private final Counter sendCount;
+  private final Counter sendDuration;
+  private final Counter failureDuration;
+  private final Counter messageLengthCounter;
+  private final Histogram messageSizeHistogram;
+
+  public KafkaSender(final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint,
+                     final MetricsFactory metricFactory) {
+
+    this.kafkaTopicDeliveryEndPoint = kafkaTopicDeliveryEndPoint;
+    this.metricFactory = metricFactory;
+
+    logger.info("Creating kafka sender for endpoint:" + kafkaTopicDeliveryEndPoint.toString());
+
+    sendCount = metricFactory.createCounter("Send.Attempts", "Success");
+    sendDuration = metricFactory.createCounter("Send.Attempts", "Duration");
+    failureDuration = metricFactory.createCounter("Send.Attempts.Failures", "Duration");
+    messageLengthCounter = metricFactory.createCounter("Message", "Length");
+    messageSizeHistogram = metricFactory.createHistogram("Message", "Size", false);
+
+    producer = new KafkaProducer<>(getProducerConfig(), new StringSerializer(), getPayloadSerializer());
+  }
+
+  protected Properties getProducerConfig() {
+
+    final Properties producerProperties = new Properties();
+
+    producerProperties.setProperty(ProducerConfig.LINGER_MS_CONFIG, DEFAULT_LINGER_MILLIS);
+    producerProperties.setProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG, DEFAULT_COMPRESSION_TYPE);
+    producerProperties.putAll(kafkaTopicDeliveryEndPoint.getProperties());
+    producerProperties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
+                                   kafkaTopicDeliveryEndPoint.getBootstrapServers());
+
+    return producerProperties;
+  }
+
+  protected abstract Serializer<TPayload> getPayloadSerializer();
+
+  protected abstract TPayload convertInputToSendingFormat(TInput input);
+
+  protected abstract int getPayloadSize(TPayload payload);
+
+  private Callback completionCallback(final int size, final long startTime) {
+    return new Callback() {
+      @Override
+      public void onCompletion(final RecordMetadata metadata, final Exception exception) {
+        final long duration = System.currentTimeMillis() - startTime;
+        if (exception == null) {
+          sendCount.inc();
+          sendDuration.inc(duration);
+          messageLengthCounter.inc(size);
+        } else {
+          failureDuration.inc(duration);
+          metricFactory.createCounter("Send.Attempts.Failures", exception.getClass().getSimpleName()).inc();
+          logger.error("Error while sending message to kafka.", exception);
+        }
+      }
+    };
+  }
+
+  private void internalSend(final List<TInput> data, final List<String> keys) throws SilentSenderException {
+    try {
+      for (int i = 0; i < data.size(); i++) {
+        final TPayload transportPayload = convertInputToSendingFormat(data.get(i));
+        final int size = getPayloadSize(transportPayload);
+        messageSizeHistogram.update(size);
+        producer.send(new ProducerRecord<>(kafkaTopicDeliveryEndPoint.getTopicName(), keys.get(i), transportPayload),
+                      completionCallback(size, System.currentTimeMillis()));
+      }
+    } catch (final Exception e) {
+      metricFactory.createCounter("Send.Attempts.Failures", e.getClass().getSimpleName()).inc();
+      logger.error("Error while handing message to kafka producer.", e);
+      throw new SilentSenderException(e);
+    }
+  }
+
+  @Override
+  public void send(final TInput data) throws SilentSenderException {
+    internalSend(Collections.singletonList(data), Collections.<String>singletonList(null));
+  }
+
+  @Override
+  public void send(final TInput data, final String key) throws SilentSenderException {
+    internalSend(Collections.singletonList(data), Collections.singletonList(key));
+  }
+
+  /**
+   * Hands the whole batch to the producer, which batches records per partition by itself.
+   */
+  @Override
+  public void sendAll(final List<TInput> data, final List<String> keys) throws SilentSenderException {
+    internalSend(data, keys);
+  }
+
+  @Override
+  public String getName() {
+    return kafkaTopicDeliveryEndPoint.getName();
+  }
+
+  /**
+   * Blocks until all records sent so far have completed.
+   */
+  public void flush() {
+    producer.flush();
+  }
+
+  @Override
+  public void close() {
+    try {
+      producer.close();
+    } catch (final Exception e) {
+      logger.info("Could not close producer. Continuing", e);
+    }
+  }
+}
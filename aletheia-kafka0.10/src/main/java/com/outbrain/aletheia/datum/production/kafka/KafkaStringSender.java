@@ -0,0 +1,28 @@
+package com.outbrain.aletheia.datum.production.kafka;
+
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+public class KafkaStringSender extends KafkaSender<String, String> {
+
+  public KafkaStringSender(final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint,
+                           final MetricsFactory metricFactory) {
+    super(kafkaTopicDeliveryEndPoint, metricFactory);
+  }
+
+  @Override
+  protected Serializer<String> getPayloadSerializer() {
+    return new StringSerializer();
+  }
+
+  @Override
+  protected String convertInputToSendingFormat(final String s) {
+    return s;
+  }
+
+  @Override
+  protected int getPayloadSize(final String s) {
+    return s.length();
+  }
+}
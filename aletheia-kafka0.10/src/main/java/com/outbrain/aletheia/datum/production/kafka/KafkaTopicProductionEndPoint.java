@@ -0,0 +1,59 @@
+package com.outbrain.aletheia.datum.production.kafka;
+
+import com.outbrain.aletheia.datum.production.ProductionEndPoint;
+
+import java.util.Properties;
+
+/**
+ * A production endpoint for producing data to a Kafka topic, using the Kafka producer client.
+ * <p/>
+ * The properties are passed on to the {@code KafkaProducer}, and can be used to tune batching (batch.size),
+ * lingering (linger.ms), compression (compression.type), acknowledgements (acks) and so forth.
+ * <p/>
+ * Records are sent asynchronously, so datums are audited as delivered once the producer has accepted them. Records
+ * the broker rejects later on are not audited as {@code TransportFailed}, they are only counted by the
+ * {@code Send.Attempts.Failures} metrics.
+ */
+public class KafkaTopicProductionEndPoint extends ProductionEndPoint {
+
+  public enum EndPointType {RawDatumEnvelope, String}
+
+  private final String bootstrapServers;
+  private final String topicName;
+  private final EndPointType endPointType;
+  private final String endPointName;
+  private final Properties properties;
+
+  public KafkaTopicProductionEndPoint(final String bootstrapServers,
+                                      final String topicName,
+                                      final EndPointType endPointType,
+                                      final String endPointName,
+                                      final Properties properties) {
+    this.bootstrapServers = bootstrapServers;
+    this.topicName = topicName;
+    this.endPointType = endPointType;
+    this.endPointName = endPointName;
+    this.properties = properties;
+  }
+
+  public String getBootstrapServers() {
+    return bootstrapServers;
+  }
+
+  public String getTopicName() {
+    return topicName;
+  }
+
+  public EndPointType getEndPointType() {
+    return endPointType;
+  }
+
+  public Properties getProperties() {
+    return properties;
+  }
+
+  @Override
+  public String getName() {
+    return endPointName;
+  }
+}
@@ -0,0 +1,174 @@
+package com.outbrain.aletheia.datum.kafka;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.datum.consumption.ConsumptionEndPoint;
+import com.outbrain.aletheia.datum.consumption.DatumConsumer;
+import com.outbrain.aletheia.datum.consumption.DatumConsumerBuilder;
+import com.outbrain.aletheia.datum.consumption.DatumConsumerConfig;
+import com.outbrain.aletheia.datum.consumption.kafka.KafkaDatumEnvelopeFetcherFactory;
+import com.outbrain.aletheia.datum.consumption.kafka.KafkaTopicConsumptionEndPoint;
+import com.outbrain.aletheia.datum.production.DatumProducer;
+import com.outbrain.aletheia.datum.production.DatumProducerBuilder;
+import com.outbrain.aletheia.datum.production.DatumProducerConfig;
+import com.outbrain.aletheia.datum.production.kafka.KafkaDatumEnvelopeSenderFactory;
+import com.outbrain.aletheia.datum.production.kafka.KafkaTopicProductionEndPoint;
+import com.outbrain.aletheia.datum.serialization.Json.JsonDatumSerDe;
+import com.outbrain.aletheia.datum.type.SampleDomainClass;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.joda.time.Instant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class KafkaTransportIntegrationTest {
+
+  private static final String TOPIC_NAME = "test_domain_class";
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private NIOServerCnxnFactory zooKeeperConnectionFactory;
+  private KafkaServerStartable kafkaServer;
+  private String bootstrapServers;
+
+  private static int freePort() throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(0)) {
+      return serverSocket.getLocalPort();
+    }
+  }
+
+  @Before
+  public void startBroker() throws Exception {
+
+    final ZooKeeperServer zooKeeperServer = new ZooKeeperServer(temporaryFolder.newFolder("zookeeper"),
+                                                                temporaryFolder.newFolder("zookeeper-log"),
+                                                                ZooKeeperServer.DEFAULT_TICK_TIME);
+    zooKeeperConnectionFactory = new NIOServerCnxnFactory();
+    zooKeeperConnectionFactory.configure(new InetSocketAddress("localhost", 0), 10);
+    zooKeeperConnectionFactory.startup(zooKeeperServer);
+
+    final int brokerPort = freePort();
+    bootstrapServers = "localhost:" + brokerPort;
+
+    final Properties brokerProperties = new Properties();
+    brokerProperties.setProperty("broker.id", "0");
+    brokerProperties.setProperty("zookeeper.connect", "localhost:" + zooKeeperConnectionFactory.getLocalPort());
+    brokerProperties.setProperty("listeners", "PLAINTEXT://" + bootstrapServers);
+    brokerProperties.setProperty("log.dirs", temporaryFolder.newFolder("kafka").getAbsolutePath());
+    brokerProperties.setProperty("offsets.topic.replication.factor", "1");
+    brokerProperties.setProperty("offsets.topic.num.partitions", "1");
+    brokerProperties.setProperty("num.partitions", "2");
+
+    kafkaServer = new KafkaServerStartable(KafkaConfig.fromProps(brokerProperties));
+    kafkaServer.startup();
+  }
+
+  @After
+  public void stopBroker() {
+    kafkaServer.shutdown();
+    kafkaServer.awaitShutdown();
+    zooKeeperConnectionFactory.shutdown();
+  }
+
+  @Test
+  public void test_whenDatumsAreProducedToKafka_theyAreConsumedBack() throws Exception {
+
+    final JsonDatumSerDe<SampleDomainClass> datumSerDe = new JsonDatumSerDe<>(SampleDomainClass.class);
+
+    final KafkaTopicProductionEndPoint productionEndPoint =
+            new KafkaTopicProductionEndPoint(bootstrapServers,
+                                             TOPIC_NAME,
+                                             KafkaTopicProductionEndPoint.EndPointType.RawDatumEnvelope,
+                                             "kafka_producer",
+                                             new Properties());
+
+    final DatumProducer<SampleDomainClass> datumProducer =
+            DatumProducerBuilder
+                    .forDomainClass(SampleDomainClass.class)
+                    .registerProductionEndPointType(KafkaTopicProductionEndPoint.class,
+                                                    new KafkaDatumEnvelopeSenderFactory())
+                    .deliverDataTo(productionEndPoint, datumSerDe)
+                    .build(new DatumProducerConfig(0, "hostname"));
+
+    final List<SampleDomainClass> sentDatums = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      final SampleDomainClass datum = new SampleDomainClass(i, i, "datum" + i, Instant.now(), false);
+      sentDatums.add(datum);
+      datumProducer.deliver(datum);
+    }
+
+    final Properties consumerProperties = new Properties();
+    consumerProperties.setProperty("auto.offset.reset", "earliest");
+
+    final KafkaTopicConsumptionEndPoint consumptionEndPoint =
+            new KafkaTopicConsumptionEndPoint(bootstrapServers,
+                                              TOPIC_NAME,
+                                              "test_group",
+                                              "kafka_consumer",
+                                              1,
+                                              consumerProperties);
+
+    final Map<ConsumptionEndPoint, List<? extends DatumConsumer<SampleDomainClass>>> endPoint2datumConsumers =
+            DatumConsumerBuilder
+                    .forDomainClass(SampleDomainClass.class)
+                    .registerConsumptionEndPointType(KafkaTopicConsumptionEndPoint.class,
+                                                     new KafkaDatumEnvelopeFetcherFactory())
+                    .consumeDataFrom(consumptionEndPoint, datumSerDe)
+                    .build(new DatumConsumerConfig(0, "hostname"));
+
+    final DatumConsumer<SampleDomainClass> datumConsumer =
+            Iterables.getOnlyElement(endPoint2datumConsumers.get(consumptionEndPoint));
+
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    try {
+      final List<SampleDomainClass> receivedDatums =
+              Collections.synchronizedList(Lists.<SampleDomainClass>newArrayList());
+
+      // consumes until the consumer is closed.
+      final Future<?> consuming = executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (final SampleDomainClass datum : datumConsumer.datums()) {
+            receivedDatums.add(datum);
+          }
+        }
+      });
+
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+      while (receivedDatums.size() < sentDatums.size() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      ((Closeable) datumConsumer).close();
+      consuming.get(30, TimeUnit.SECONDS);
+
+      // partitions are consumed in no particular order relative to one another.
+      assertThat(receivedDatums.containsAll(sentDatums), is(true));
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -173,10 +173,10 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
 
   }
 
-  private void internalSend(final TInput data, final String key) {
+  private void internalSend(final TInput data, final String key) throws SilentSenderException {
     if (!connected) {
       failureDueToUnconnected.inc();
-      return;
+      throw new SilentSenderException(new IllegalStateException("Not connected to kafka."));
     }
     final long startTime = System.currentTimeMillis();
     try {
@@ -211,6 +211,7 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
         metricFactory.createCounter("Send.Attempts.Failures", e.getClass().getSimpleName()).inc();
         logger.error("Error while sending message to kafka.", e);
       }
+      throw new SilentSenderException(e);
     }
   }
 
@@ -42,7 +42,7 @@ public class KafkaDatumEnvelopeFetcherFactory implements DatumEnvelopeFetcherFac
                   @Override
                   public DatumEnvelope next() {
                     final byte[] message = kafkaMessageStream.iterator().next().message();
-                    return avroDatumEnvelopeSerDe.deserializeDatumEnvelope(ByteBuffer.wrap(message));
+                    return avroDatumEnvelopeSerDe.deserializeDatumEnvelopeLazily(ByteBuffer.wrap(message));
                   }
 
                   @Override
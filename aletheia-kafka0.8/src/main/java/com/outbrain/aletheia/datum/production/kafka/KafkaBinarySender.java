@@ -25,6 +25,16 @@ public class KafkaBinarySender extends KafkaSender<ByteBuffer, byte[]> {
     return byteBuffer.array();
   }
 
+  @Override
+  protected byte[] toSpoolFormat(final byte[] payload) {
+    return payload;
+  }
+
+  @Override
+  protected byte[] fromSpoolFormat(final byte[] spooledPayload) {
+    return spooledPayload;
+  }
+
   @Override
   protected int getPayloadSize(final byte[] payload) {
     return payload.length;
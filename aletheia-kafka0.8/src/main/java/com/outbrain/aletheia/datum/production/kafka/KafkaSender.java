@@ -1,9 +1,13 @@
 package com.outbrain.aletheia.datum.production.kafka;
 
+import com.outbrain.aletheia.datum.production.BatchKeyAwareSender;
+import com.outbrain.aletheia.datum.production.DiskSpool;
 import com.outbrain.aletheia.datum.production.NamedKeyAwareSender;
 import com.outbrain.aletheia.datum.production.NamedSender;
 import com.outbrain.aletheia.datum.production.SilentSenderException;
+import com.outbrain.aletheia.datum.production.SpoolConfig;
 import com.outbrain.aletheia.metrics.common.Counter;
+import com.outbrain.aletheia.metrics.common.Gauge;
 import com.outbrain.aletheia.metrics.common.Histogram;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import kafka.common.QueueFullException;
@@ -13,20 +17,38 @@ import kafka.producer.ProducerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
 
-public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSender<TInput>, NamedSender<TInput> {
+/**
+ * A base class for senders producing messages to a Kafka topic.
+ * <p/>
+ * If the endpoint has a {@code SpoolConfig}, messages that could not be sent, whether because there is no connection
+ * to Kafka yet or because sending them failed, are appended to a {@code DiskSpool}, and count as sent. Spooled
+ * messages are replayed in the background, at the configured rate, once connected, in the order they were spooled
+ * but not in order with messages sent live in the meantime.
+ * <p/>
+ * Since the producer may accept part of a batch before failing, e.g., when its queue fills up midway, messages are
+ * handed to it one at a time when a spool is configured, so that only the messages it has not accepted are spooled.
+ */
+public abstract class KafkaSender<TInput, TPayload>
+        implements NamedKeyAwareSender<TInput>, NamedSender<TInput>, BatchKeyAwareSender<TInput> {
 
   private static final Logger logger = LoggerFactory.getLogger(KafkaSender.class);
 
-  private Producer<String, TPayload> producer;
+  private volatile Producer<String, TPayload> producer;
   private final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint;
   private final MetricsFactory metricFactory;
   private final int connectionAttempts = 0;
-  private boolean connected = false;
+  private volatile boolean connected = false;
   private static final int TEN_SECONDS = 10000;
+  private static final int REPLAY_INTERVAL_MILLIS = 100;
 
 
   private final Timer connectionTimer = new Timer("KafkaBinaryTransporter-kafkaInitialConnectionTimer");
@@ -36,7 +58,16 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
   private Counter failureDuration;
   private Counter messageLengthCounter;
   private Histogram messageSizeHistogram;
+  private Counter spooledCount;
+  private Counter spoolOverflowCount;
+  private Counter replayedCount;
   private final ProducerConfig customConfiguration;
+  private final DiskSpool spool;
+  private final Timer spoolReplayTimer;
+  private final Object spoolReplayLock = new Object();
+  private boolean closed = false;
+  // accessed by the spool replay timer thread only.
+  private double replayAllowance = 0;
 
 
   public KafkaSender(final KafkaTopicProductionEndPoint kafkaTopicDeliveryEndPoint,
@@ -56,10 +87,109 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
     }
 
     customConfiguration = customizeConfig(getProducerConfig());
+    spool = openSpool(kafkaTopicDeliveryEndPoint.getSpoolConfig());
     initMetrics(metricFactory);
+    spoolReplayTimer = spool != null ? startSpoolReplay(kafkaTopicDeliveryEndPoint.getSpoolConfig()) : null;
     connectToKafka();
   }
 
+  private DiskSpool openSpool(final SpoolConfig spoolConfig) {
+
+    if (spoolConfig == null) {
+      return null;
+    }
+
+    final File spoolDirectory = new File(spoolConfig.getDirectory(), kafkaTopicDeliveryEndPoint.getName());
+
+    try {
+      return new DiskSpool(spoolDirectory, spoolConfig.getSegmentSizeBytes(), spoolConfig.getMaxSegmentCount());
+    } catch (final Exception e) {
+      logger.error("Could not open spool " + spoolDirectory + ", messages that cannot be sent will be dropped.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Replays spooled messages every {@code REPLAY_INTERVAL_MILLIS}, accumulating the allowed number of replays across
+   * intervals, so that rates lower than one message per interval are honored as well. The allowance is capped at a
+   * single interval's worth (or a single message), so that replays do not burst after the spool has been empty.
+   */
+  private Timer startSpoolReplay(final SpoolConfig spoolConfig) {
+
+    final double replaysPerInterval = spoolConfig.getReplayRatePerSecond() * REPLAY_INTERVAL_MILLIS / 1000.0;
+    final double maxReplayAllowance = Math.max(1, replaysPerInterval);
+    final Timer timer = new Timer("KafkaSender-spoolReplayTimer-" + kafkaTopicDeliveryEndPoint.getName(), true);
+
+    timer.scheduleAtFixedRate(new TimerTask() {
+      @Override
+      public void run() {
+        replayAllowance = Math.min(replayAllowance + replaysPerInterval, maxReplayAllowance);
+        replayAllowance -= replaySpooled((int) replayAllowance);
+      }
+    }, REPLAY_INTERVAL_MILLIS, REPLAY_INTERVAL_MILLIS);
+
+    return timer;
+  }
+
+  /**
+   * @return the number of messages replayed.
+   */
+  private int replaySpooled(final int maxReplays) {
+
+    // excludes closing the spool and the producer while a replay is in flight.
+    synchronized (spoolReplayLock) {
+
+      int replays = 0;
+
+      while (replays < maxReplays && connected && !closed) {
+        final DiskSpool.Message message = spool.peek();
+        if (message == null) {
+          break;
+        }
+        try {
+          producer.send(keyedMessage(fromSpoolFormat(message.getPayload()), message.getKey()));
+          spool.remove();
+          replayedCount.inc();
+          replays++;
+        } catch (final Exception e) {
+          logger.warn("Could not replay a spooled message to kafka, will retry.", e);
+          break;
+        }
+      }
+
+      return replays;
+    }
+  }
+
+  /**
+   * @return true if all payloads were spooled.
+   */
+  private boolean spool(final List<TPayload> payloads, final List<String> keys) {
+
+    if (spool == null) {
+      return false;
+    }
+
+    boolean spooledAll = true;
+
+    for (int i = 0; i < payloads.size(); i++) {
+      try {
+        if (spool.append(keys.get(i), toSpoolFormat(payloads.get(i)))) {
+          spooledCount.inc();
+        } else {
+          spoolOverflowCount.inc();
+          spooledAll = false;
+        }
+      } catch (final IOException e) {
+        logger.error("Could not spool message.", e);
+        spoolOverflowCount.inc();
+        spooledAll = false;
+      }
+    }
+
+    return spooledAll;
+  }
+
   private void initMetrics(final MetricsFactory metricFactory) {
     sendCount = metricFactory.createCounter("Send.Attempts", "Success");
     sendDuration = metricFactory.createCounter("Send.Attempts", "Success");
@@ -67,11 +197,29 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
     messageLengthCounter = metricFactory.createCounter("Message", "Length");
     messageSizeHistogram = metricFactory.createHistogram("Message", "Size", false);
     failureDueToUnconnected = metricFactory.createCounter("Send.Attempts.Failures", "UnableToConnect");
+    spooledCount = metricFactory.createCounter("Spool.Appends", "Success");
+    spoolOverflowCount = metricFactory.createCounter("Spool.Appends", "Overflow");
+    replayedCount = metricFactory.createCounter("Spool.Replays", "Success");
+    if (spool != null) {
+      metricFactory.createGauge("Spool", "Depth", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return spool.getDepth();
+        }
+      });
+    }
+  }
+
+  /**
+   * Creates the underlying producer, may be overridden for testing purposes.
+   */
+  protected Producer<String, TPayload> createProducer(final ProducerConfig config) {
+    return new Producer<>(config);
   }
 
   private boolean singleConnect(final ProducerConfig config) {
     try {
-      producer = new Producer<>(config);
+      producer = createProducer(config);
       connected = true;
       logger.info("Connected to kafka. for destination " + this.kafkaTopicDeliveryEndPoint.getName());
       return true;
@@ -126,54 +274,101 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
 
   protected abstract int getPayloadSize(TPayload payload);
 
+  protected abstract byte[] toSpoolFormat(TPayload payload);
+
+  protected abstract TPayload fromSpoolFormat(byte[] spooledPayload);
+
   protected void validateConfiguration(final ProducerConfig config) {
 
   }
 
-  private void internalSend(final TInput data, final String key) throws SilentSenderException {
+  private KeyedMessage<String, TPayload> keyedMessage(final TPayload transportPayload, final String key) {
+    return key != null ?
+           new KeyedMessage<>(kafkaTopicDeliveryEndPoint.getTopicName(), key, transportPayload) :
+           new KeyedMessage<String, TPayload>(kafkaTopicDeliveryEndPoint.getTopicName(), transportPayload);
+  }
+
+  private void internalSend(final List<TInput> data, final List<String> keys) throws SilentSenderException {
+
+    final List<TPayload> payloads = new ArrayList<>(data.size());
+    try {
+      for (final TInput input : data) {
+        payloads.add(convertInputToSendingFormat(input));
+      }
+    } catch (final Exception e) {
+      metricFactory.createCounter("Send.Attempts.Failures", e.getClass().getSimpleName()).inc();
+      logger.error("Error while converting message for kafka.", e);
+      throw new SilentSenderException(e);
+    }
+
     if (!connected) {
-      failureDueToUnconnected.inc();
-      return;
+      failureDueToUnconnected.inc(payloads.size());
+      if (spool(payloads, keys)) {
+        return;
+      }
+      throw new SilentSenderException(new IllegalStateException("Not connected to kafka."));
     }
     final long startTime = System.currentTimeMillis();
+    int acceptedCount = 0;
     try {
-      final TPayload transportPayload = convertInputToSendingFormat(data);
+      final List<KeyedMessage<String, TPayload>> messages = new ArrayList<>(data.size());
+      long totalSize = 0;
+
+      for (int i = 0; i < payloads.size(); i++) {
+        final TPayload transportPayload = payloads.get(i);
+        final int size = getPayloadSize(transportPayload);
+        messages.add(keyedMessage(transportPayload, keys.get(i)));
+        messageSizeHistogram.update(size);
+        totalSize += size;
+      }
 
-      if (key != null) {
-        producer.send(new KeyedMessage<>(kafkaTopicDeliveryEndPoint.getTopicName(),
-                                         key,
-                                         transportPayload));
+      if (messages.size() == 1 || spool != null) {
+        for (final KeyedMessage<String, TPayload> message : messages) {
+          producer.send(message);
+          acceptedCount++;
+        }
       } else {
-        producer.send(new KeyedMessage<String, TPayload>(kafkaTopicDeliveryEndPoint.getTopicName(), transportPayload));
+        producer.send(messages);
+        acceptedCount = messages.size();
       }
 
-      final int size = getPayloadSize(transportPayload);
-
       final long duration = System.currentTimeMillis() - startTime;
-      messageLengthCounter.inc(size);
-      messageSizeHistogram.update(size);
-      sendCount.inc();
+      messageLengthCounter.inc(totalSize);
+      sendCount.inc(messages.size());
       sendDuration.inc(duration);
     } catch (final Exception e) {
       final long duration = System.currentTimeMillis() - startTime;
       failureDuration.inc(duration);
+      sendCount.inc(acceptedCount);
       if ((e instanceof QueueFullException)) {
         metricFactory.createCounter("Send.Attempts.Failures", QueueFullException.class.getSimpleName()).inc();
       } else {
         metricFactory.createCounter("Send.Attempts.Failures", e.getClass().getSimpleName()).inc();
         logger.error("Error while sending message to kafka.", e);
       }
+      if (spool(payloads.subList(acceptedCount, payloads.size()), keys.subList(acceptedCount, keys.size()))) {
+        return;
+      }
+      throw new SilentSenderException(e);
     }
   }
 
   @Override
   public void send(final TInput data) throws SilentSenderException {
-    internalSend(data, null);
+    internalSend(Collections.singletonList(data), Collections.<String>singletonList(null));
   }
 
   @Override
   public void send(final TInput data, final String key) throws SilentSenderException {
-    internalSend(data, key);
+    internalSend(Collections.singletonList(data), Collections.singletonList(key));
+  }
+
+  /**
+   * Sends the whole batch to the underlying producer in a single call, unless a spool is configured.
+   */
+  @Override
+  public void sendAll(final List<TInput> data, final List<String> keys) throws SilentSenderException {
+    internalSend(data, keys);
   }
 
   @Override
@@ -182,6 +377,20 @@ public abstract class KafkaSender<TInput, TPayload> implements NamedKeyAwareSend
   }
 
   public void close() {
+    if (spoolReplayTimer != null) {
+      spoolReplayTimer.cancel();
+    }
+    // waits for an in flight replay, if any, to complete.
+    synchronized (spoolReplayLock) {
+      closed = true;
+    }
+    if (spool != null) {
+      try {
+        spool.close();
+      } catch (final IOException e) {
+        logger.info("Could not close spool. Continuing", e);
+      }
+    }
     if (connected) {
       if (producer != null) {
         try {
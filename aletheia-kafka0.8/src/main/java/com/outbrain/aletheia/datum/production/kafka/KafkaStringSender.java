@@ -1,5 +1,6 @@
 package com.outbrain.aletheia.datum.production.kafka;
 
+import com.google.common.base.Charsets;
 import com.outbrain.aletheia.metrics.common.MetricsFactory;
 import kafka.producer.ProducerConfig;
 
@@ -24,6 +25,16 @@ public class KafkaStringSender extends KafkaSender<String, String> {
     return s;
   }
 
+  @Override
+  protected byte[] toSpoolFormat(final String payload) {
+    return payload.getBytes(Charsets.UTF_8);
+  }
+
+  @Override
+  protected String fromSpoolFormat(final byte[] spooledPayload) {
+    return new String(spooledPayload, Charsets.UTF_8);
+  }
+
   @Override
   protected int getPayloadSize(final String s) {
     return s.length();
@@ -1,6 +1,7 @@
 package com.outbrain.aletheia.datum.production.kafka;
 
 import com.outbrain.aletheia.datum.production.ProductionEndPoint;
+import com.outbrain.aletheia.datum.production.SpoolConfig;
 
 import java.util.Properties;
 
@@ -18,6 +19,7 @@ public class KafkaTopicProductionEndPoint extends ProductionEndPoint {
   private final String endPointName;
   private boolean addShutdownHook;
   private final String brokerList;
+  private final SpoolConfig spoolConfig;
 
   public KafkaTopicProductionEndPoint(final String brokerList,
                                       final String topicName,
@@ -25,6 +27,21 @@ public class KafkaTopicProductionEndPoint extends ProductionEndPoint {
                                       final int batchSize,
                                       final String endPointName,
                                       final Properties properties) {
+    this(brokerList, topicName, endPointType, batchSize, endPointName, properties, null);
+  }
+
+  /**
+   * @param spoolConfig where and how to spool messages that could not be sent to Kafka until they can be replayed,
+   *                    or null to drop them.
+   */
+  public KafkaTopicProductionEndPoint(final String brokerList,
+                                      final String topicName,
+                                      final EndPointType endPointType,
+                                      final int batchSize,
+                                      final String endPointName,
+                                      final Properties properties,
+                                      final SpoolConfig spoolConfig) {
+    this.spoolConfig = spoolConfig;
     this.batchSize = batchSize;
     this.brokerList = brokerList;
     this.properties = properties;
@@ -53,6 +70,10 @@ public class KafkaTopicProductionEndPoint extends ProductionEndPoint {
     return addShutdownHook;
   }
 
+  public SpoolConfig getSpoolConfig() {
+    return spoolConfig;
+  }
+
   public EndPointType getEndPointType() {
     return endPointType;
   }
@@ -0,0 +1,160 @@
+package com.outbrain.aletheia.datum.production.kafka;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.outbrain.aletheia.datum.production.SpoolConfig;
+import com.outbrain.aletheia.metrics.common.MetricsFactory;
+import kafka.common.QueueFullException;
+import kafka.javaapi.producer.Producer;
+import kafka.producer.KeyedMessage;
+import kafka.producer.ProducerConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class KafkaSenderSpoolTest {
+
+  /**
+   * Accepts a limited number of messages, and throws a {@code QueueFullException} once they have been used up, the
+   * way the async producer does when its queue is full.
+   */
+  private static class FlakyProducer extends Producer<String, byte[]> {
+
+    private final List<String> sentMessages = Collections.synchronizedList(Lists.<String>newArrayList());
+    private volatile int remainingCapacity;
+
+    private FlakyProducer(final int capacity) {
+      super((kafka.producer.Producer<String, byte[]>) null);
+      remainingCapacity = capacity;
+    }
+
+    @Override
+    public void send(final KeyedMessage<String, byte[]> message) {
+      if (remainingCapacity == 0) {
+        throw new QueueFullException("Queue is full.");
+      }
+      remainingCapacity--;
+      sentMessages.add(new String(message.message(), Charsets.UTF_8));
+    }
+
+    @Override
+    public void send(final List<KeyedMessage<String, byte[]>> messages) {
+      for (final KeyedMessage<String, byte[]> message : messages) {
+        send(message);
+      }
+    }
+
+    @Override
+    public void close() {
+
+    }
+  }
+
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private KafkaBinarySender kafkaSender(final FlakyProducer producer, final int replayRatePerSecond) {
+
+    final KafkaTopicProductionEndPoint productionEndPoint =
+            new KafkaTopicProductionEndPoint("localhost:9092",
+                                             "topic",
+                                             KafkaTopicProductionEndPoint.EndPointType.RawDatumEnvelope,
+                                             100,
+                                             "endpoint",
+                                             new Properties(),
+                                             new SpoolConfig(temporaryFolder.getRoot(), 64 * 1024, 4,
+                                                             replayRatePerSecond));
+
+    return new KafkaBinarySender(productionEndPoint, MetricsFactory.NULL) {
+      @Override
+      protected Producer<String, byte[]> createProducer(final ProducerConfig config) {
+        return producer;
+      }
+    };
+  }
+
+  private static List<ByteBuffer> messages(final int count) {
+    final List<ByteBuffer> messages = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      messages.add(ByteBuffer.wrap(("message" + i).getBytes(Charsets.UTF_8)));
+    }
+    return messages;
+  }
+
+  private static void awaitSentMessageCount(final FlakyProducer producer, final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (producer.sentMessages.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void test_whenABatchIsPartiallyAccepted_onlyTheRestIsSpooledAndReplayed() throws Exception {
+
+    final FlakyProducer producer = new FlakyProducer(2);
+    final KafkaBinarySender kafkaSender = kafkaSender(producer, 1000);
+
+    try {
+      kafkaSender.sendAll(messages(5), Collections.<String>nCopies(5, null));
+
+      assertThat(producer.sentMessages.size(), is(2));
+
+      producer.remainingCapacity = Integer.MAX_VALUE;
+      awaitSentMessageCount(producer, 5);
+      Thread.sleep(200);
+
+      assertThat(producer.sentMessages,
+                 is((List<String>) Lists.newArrayList("message0", "message1", "message2", "message3", "message4")));
+    } finally {
+      kafkaSender.close();
+    }
+  }
+
+  @Test
+  public void test_whenTheReplayRateIsBelowOneMessagePerInterval_itIsHonored() throws Exception {
+
+    final FlakyProducer producer = new FlakyProducer(0);
+    final KafkaBinarySender kafkaSender = kafkaSender(producer, 2);
+
+    try {
+      kafkaSender.sendAll(messages(3), Collections.<String>nCopies(3, null));
+      producer.remainingCapacity = Integer.MAX_VALUE;
+
+      // at 2 messages per second, the first replay is due after 500ms, and the next one after 1000ms.
+      Thread.sleep(700);
+
+      assertThat(producer.sentMessages.size() < 3, is(true));
+
+      awaitSentMessageCount(producer, 3);
+
+      assertThat(producer.sentMessages.size(), is(3));
+    } finally {
+      kafkaSender.close();
+    }
+  }
+
+  @Test
+  public void test_whenClosed_spooledMessagesAreNotReplayed() throws Exception {
+
+    final FlakyProducer producer = new FlakyProducer(0);
+    final KafkaBinarySender kafkaSender = kafkaSender(producer, 1000);
+
+    kafkaSender.sendAll(messages(3), Collections.<String>nCopies(3, null));
+    kafkaSender.close();
+    producer.remainingCapacity = Integer.MAX_VALUE;
+
+    Thread.sleep(300);
+
+    assertThat(producer.sentMessages.size(), is(0));
+  }
+}